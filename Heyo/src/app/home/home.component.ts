@@ -92,7 +92,7 @@ export class HomeComponent implements OnInit {
 
   loadPosts(): void {
     this.isLoading.set(true);
-    this.postService.getFeed().subscribe({
+    this.postService.getFeedSlice().subscribe({
       next: (response) => {
         this.posts.set(response.content);
         this.isLoading.set(false);
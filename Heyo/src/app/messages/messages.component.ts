@@ -6,7 +6,7 @@ import { MatProgressSpinnerModule } from '@angular/material/progress-spinner';
 import { MatSnackBar, MatSnackBarModule } from '@angular/material/snack-bar';
 import { ChatService } from '../services/chat.service';
 import { AuthService } from '../services/auth.service';
-import { Conversation, ChatMessage, User } from '../models';
+import { Conversation, ChatMessage, ChatError, ChatSync, User } from '../models';
 import { Subscription } from 'rxjs';
 
 @Component({
@@ -96,7 +96,7 @@ export class MessagesComponent implements OnInit, OnDestroy {
 
     // Subscribe to typing indicators
     this.subscriptions.add(
-      this.chatService.typing$.subscribe((data: { userId: number; username: string }) => {
+      this.chatService.typing$.subscribe((data: { userId: number; username: string; typing?: boolean }) => {
         console.log('[MessagesComponent] Typing indicator received');
         this.handleTypingIndicator(data);
       })
@@ -118,9 +118,17 @@ export class MessagesComponent implements OnInit, OnDestroy {
       })
     );
 
+    // Subscribe to changes missed while the connection was down
+    this.subscriptions.add(
+      this.chatService.synced$.subscribe((changes: ChatSync) => {
+        console.log('[MessagesComponent] Sync after reconnect received');
+        this.applySync(changes);
+      })
+    );
+
     // Subscribe to errors
     this.subscriptions.add(
-      this.chatService.error$.subscribe((error: { error: string; type: string }) => {
+      this.chatService.error$.subscribe((error: ChatError) => {
         console.error('[MessagesComponent] Error received:', error);
         this.handleError(error);
       })
@@ -132,7 +140,7 @@ export class MessagesComponent implements OnInit, OnDestroy {
   /**
    * Handle WebSocket errors
    */
-  private handleError(error: { error: string; type: string }): void {
+  private handleError(error: ChatError): void {
     let message = 'Wystąpił błąd';
     
     if (error.error.includes('only message your friends')) {
@@ -140,6 +148,18 @@ export class MessagesComponent implements OnInit, OnDestroy {
     } else {
       message = error.error;
     }
+
+    // A failed send can be sent again under the same clientMessageId
+    const clientMessageId = error.clientMessageId;
+    if (clientMessageId && this.chatService.canRetry(clientMessageId)) {
+      this.snackBar.open(message, 'Ponów', {
+        duration: 10000,
+        horizontalPosition: 'center',
+        verticalPosition: 'top',
+        panelClass: ['error-snackbar']
+      }).onAction().subscribe(() => this.chatService.retrySend(clientMessageId));
+      return;
+    }
     
     this.snackBar.open(message, 'Zamknij', {
       duration: 5000,
@@ -176,14 +196,59 @@ export class MessagesComponent implements OnInit, OnDestroy {
     this.updateConversationLastMessage(message);
   }
 
+  /**
+   * Merge changes missed while disconnected: replace the changed conversation summaries and
+   * append the missed messages of the open conversation. A conversation the server marked as
+   * truncated is reloaded, since the changes alone no longer cover its history.
+   */
+  private applySync(changes: ChatSync): void {
+    const changed = new Map(changes.conversations.map(c => [c.id, c]));
+    const merged = [
+      ...changes.conversations,
+      ...this.conversations().filter(c => !changed.has(c.id))
+    ].sort((a, b) => (b.lastMessageAt ?? '').localeCompare(a.lastMessageAt ?? ''));
+    this.conversations.set(merged);
+    if (this.searchQuery.trim()) {
+      this.filteredConversations.update(convos => convos.map(c => changed.get(c.id) ?? c));
+    } else {
+      this.filteredConversations.set(merged);
+    }
+
+    const selected = this.selectedConversation();
+    if (!selected) {
+      return;
+    }
+    this.selectedConversation.set(changed.get(selected.id) ?? selected);
+    if (changes.truncatedConversationIds.includes(selected.id)) {
+      this.loadMessages(selected.partnerId);
+      return;
+    }
+
+    const known = new Set(this.messages().map(m => m.id));
+    const missed = changes.messages.filter(m => !known.has(m.id) &&
+      (m.senderId === selected.partnerId || m.receiverId === selected.partnerId));
+    if (missed.length > 0) {
+      this.messages.update(msgs => [...msgs, ...missed]);
+      setTimeout(() => this.scrollToBottom(), 100);
+      if (missed.some(m => m.senderId === selected.partnerId)) {
+        this.chatService.markAsRead(selected.partnerId).subscribe();
+      }
+    }
+  }
+
   /**
    * Handle typing indicator
    */
-  private handleTypingIndicator(data: { userId: number; username: string }): void {
+  private handleTypingIndicator(data: { userId: number; username: string; typing?: boolean }): void {
     const isCurrentConversation = this.selectedConversation() && 
       data.userId === this.selectedConversation()!.partnerId;
 
-    if (isCurrentConversation) {
+    // Server sends typing=false once the partner stopped typing
+    if (isCurrentConversation && data.typing === false) {
+      clearTimeout(this.typingTimeout);
+      this.typingUserId.set(null);
+      this.typingUsername.set('');
+    } else if (isCurrentConversation) {
       this.typingUserId.set(data.userId);
       this.typingUsername.set(data.username);
 
@@ -283,7 +348,9 @@ export class MessagesComponent implements OnInit, OnDestroy {
 
     this.chatService.searchConversations(query).subscribe({
       next: (conversations) => {
-        this.filteredConversations.set(conversations);
+        // Search returns partners only; keep the loaded inbox entry (last message, unread) when there is one
+        const loaded = new Map(this.conversations().map(c => [c.partnerId, c]));
+        this.filteredConversations.set(conversations.map(c => loaded.get(c.partnerId) ?? c));
       },
       error: (error) => {
         console.error('Error searching conversations:', error);
@@ -304,8 +371,8 @@ export class MessagesComponent implements OnInit, OnDestroy {
   loadFriendsWithoutChat(): void {
     this.isLoadingFriends.set(true);
     this.chatService.getFriendsWithoutChat().subscribe({
-      next: (friends) => {
-        this.friendsWithoutChat.set(friends);
+      next: (page) => {
+        this.friendsWithoutChat.set(page.content);
         this.isLoadingFriends.set(false);
       },
       error: (error) => {
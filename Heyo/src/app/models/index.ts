@@ -139,10 +139,16 @@ export interface Conversation {
   lastMessage?: string;
   lastMessageAt?: string;
   unreadCount: number;
+  seq?: number;
+  lastReadId?: number;
+  partnerLastReadId?: number;
 }
 
 export interface ChatMessage {
   id: number;
+  // Set on messages sent over WebSocket: the id the sending client chose for the send
+  clientMessageId?: string;
+  seq?: number;
   senderId: number;
   senderUsername: string;
   senderAvatarUrl?: string;
@@ -153,6 +159,21 @@ export interface ChatMessage {
   createdAt: string;
 }
 
+// Error frame from /user/queue/errors; clientMessageId identifies the failed send, if any
+export interface ChatError {
+  error: string;
+  type: string;
+  clientMessageId?: string;
+}
+
+// Delta sync response - pass token back as ?since= on the next sync
+export interface ChatSync {
+  token: string;
+  conversations: Conversation[];
+  messages: ChatMessage[];
+  truncatedConversationIds: number[];
+}
+
 // Paginated response
 export interface Page<T> {
   content: T[];
@@ -164,6 +185,13 @@ export interface Page<T> {
   last: boolean;
 }
 
+// Keyset page of posts - pass nextCursor back as ?before= for the next one
+export interface PostSlice {
+  content: Post[];
+  hasNext: boolean;
+  nextCursor: string | null;
+}
+
 // API Error response
 export interface ApiError {
   timestamp: string;
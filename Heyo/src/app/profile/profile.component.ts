@@ -14,7 +14,7 @@ import { EventService } from '../services/event.service';
 import { UploadService } from '../services/upload.service';
 import { AuthService } from '../services/auth.service';
 import { WebSocketService } from '../services/websocket.service';
-import { ProfileDTO, Post, Event as EventModel, Page } from '../models';
+import { ProfileDTO, Post, Event as EventModel, Page, PostSlice } from '../models';
 import { firstValueFrom } from 'rxjs';
 import { environment } from '../../environments/environment';
 import { ActivatedRoute } from '@angular/router';
@@ -121,8 +121,8 @@ export class ProfileComponent implements OnInit {
   }
 
   private loadPostsForUser(userId: number): void {
-    this.postService.getUserPosts(userId, 0, 9).subscribe({
-      next: (response: Page<Post>) => {
+    this.postService.getUserPostsSlice(userId, null, 9).subscribe({
+      next: (response: PostSlice) => {
         this.posts.set(response.content);
       },
       error: (error) => {
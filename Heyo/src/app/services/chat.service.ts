@@ -1,8 +1,8 @@
 import { Injectable } from '@angular/core';
 import { HttpClient } from '@angular/common/http';
-import { Observable, Subject, BehaviorSubject } from 'rxjs';
+import { Observable, Subject, BehaviorSubject, Subscription } from 'rxjs';
 import { environment } from '../../environments/environment';
-import { Conversation, ChatMessage, User } from '../models';
+import { Conversation, ChatMessage, ChatError, ChatSync, Page, User } from '../models';
 import { WebSocketService, WebSocketConnectionState } from './websocket.service';
 
 @Injectable({
@@ -16,7 +16,7 @@ export class ChatService {
   public newMessage$ = this.newMessageSubject.asObservable();
   
   // Typing indicators
-  private typingSubject = new Subject<{ userId: number; username: string }>();
+  private typingSubject = new Subject<{ userId: number; username: string; typing?: boolean }>();
   public typing$ = this.typingSubject.asObservable();
   
   // Online status updates
@@ -28,9 +28,20 @@ export class ChatService {
   public conversationUpdate$ = this.conversationUpdateSubject.asObservable();
   
   // Error stream
-  private errorSubject = new Subject<{ error: string; type: string }>();
+  private errorSubject = new Subject<ChatError>();
   public error$ = this.errorSubject.asObservable();
 
+  // Changes missed while disconnected, fetched after every reconnect
+  private syncedSubject = new Subject<ChatSync>();
+  public synced$ = this.syncedSubject.asObservable();
+
+  // Position in the user's change log the client is current up to
+  private syncToken?: string;
+  private connectionSub?: Subscription;
+
+  // Sends not yet echoed back as stored messages, by clientMessageId, so a failed one can be retried
+  private pendingSends = new Map<string, { receiverId: number; content: string }>();
+
   constructor(
     private http: HttpClient,
     private wsService: WebSocketService
@@ -56,12 +67,15 @@ export class ChatService {
       // Subscribe to incoming messages - Spring STOMP auto-maps /user/queue/* to /user/{username}/queue/*
       this.wsService.subscribe(`/user/queue/messages`, (message: ChatMessage) => {
         console.log('[ChatService] ✓✓✓ New message received via WebSocket:', message);
+        if (message.clientMessageId) {
+          this.pendingSends.delete(message.clientMessageId);
+        }
         this.newMessageSubject.next(message);
         this.conversationUpdateSubject.next();
       });
 
       // Subscribe to typing indicators
-      this.wsService.subscribe(`/user/queue/typing`, (data: { userId: number; username: string }) => {
+      this.wsService.subscribe(`/user/queue/typing`, (data: { userId: number; username: string; typing?: boolean }) => {
         console.log('[ChatService] ✓ Typing indicator received:', data);
         this.typingSubject.next(data);
       });
@@ -73,7 +87,7 @@ export class ChatService {
       });
       
       // Subscribe to errors
-      this.wsService.subscribe(`/user/queue/errors`, (error: { error: string; type: string }) => {
+      this.wsService.subscribe(`/user/queue/errors`, (error: ChatError) => {
         console.error('[ChatService] ✗ Error received:', error);
         this.errorSubject.next(error);
       });
@@ -81,24 +95,57 @@ export class ChatService {
       console.log('[ChatService] ✓ All subscription callbacks registered');
     };
     
-    // Try immediately if connected, otherwise wait
-    if (this.wsService.isConnected()) {
-      setupSubscriptions();
-    } else {
-      // Wait for connection
-      const connectionSub = this.wsService.getConnectionState().subscribe(state => {
-        if (state === WebSocketConnectionState.CONNECTED) {
-          setTimeout(setupSubscriptions, 500); // Small delay for STOMP to be fully ready
-          connectionSub.unsubscribe();
-        }
-      });
-    }
+    // Baseline token, so a reconnect only replays what was missed since the initial load
+    this.sync().subscribe({
+      next: (changes) => this.syncToken = changes.token,
+      error: (error) => console.error('[ChatService] Initial sync failed:', error)
+    });
+
+    // Try immediately if connected, otherwise wait. STOMP subscriptions do not survive a
+    // reconnect, so every later connect subscribes again and syncs what was missed.
+    const connectedAtStart = this.wsService.isConnected();
+    let connectedBefore = false;
+    this.connectionSub?.unsubscribe();
+    this.connectionSub = this.wsService.getConnectionState().subscribe(state => {
+      if (state !== WebSocketConnectionState.CONNECTED) {
+        return;
+      }
+      if (!connectedBefore && connectedAtStart) {
+        setupSubscriptions();
+      } else {
+        setTimeout(setupSubscriptions, 500); // Small delay for STOMP to be fully ready
+      }
+      if (connectedBefore) {
+        this.syncAfterReconnect();
+      }
+      connectedBefore = true;
+    });
+  }
+
+  /**
+   * Fetch the changes since the stored token and publish them on synced$. Without a token
+   * every conversation is reported as truncated, so the client reloads instead of merging.
+   */
+  private syncAfterReconnect(): void {
+    const since = this.syncToken;
+    this.sync(since).subscribe({
+      next: (changes) => {
+        this.syncToken = changes.token;
+        this.syncedSubject.next(since
+          ? changes
+          : { ...changes, truncatedConversationIds: changes.conversations.map(c => c.id) });
+      },
+      error: (error) => console.error('[ChatService] Sync after reconnect failed:', error)
+    });
   }
 
   /**
    * Clean up WebSocket subscriptions
    */
   cleanupWebSocket(username: string): void {
+    this.connectionSub?.unsubscribe();
+    this.connectionSub = undefined;
+    this.syncToken = undefined;
     this.wsService.unsubscribe(`/user/queue/messages`);
     this.wsService.unsubscribe(`/user/queue/typing`);
     this.wsService.unsubscribe(`/user/queue/status`);
@@ -116,10 +163,48 @@ export class ChatService {
   }
 
   /**
-   * Send message via WebSocket for real-time delivery
+   * Full-text search over message content, optionally within one conversation
+   */
+  searchMessages(query: string, partnerId?: number): Observable<ChatMessage[]> {
+    const params: Record<string, string> = partnerId ? { query, partnerId: String(partnerId) } : { query };
+    return this.http.get<ChatMessage[]>(`${this.apiUrl}/search`, { params });
+  }
+
+  /**
+   * Changes since the last sync token (new messages, read watermarks, summaries).
+   * Use after a reconnect instead of refetching every conversation.
+   */
+  sync(since?: string): Observable<ChatSync> {
+    const params: Record<string, string> = since ? { since } : {};
+    return this.http.get<ChatSync>(`${this.apiUrl}/sync`, { params });
+  }
+
+  /**
+   * Send message via WebSocket for real-time delivery.
+   * Returns the clientMessageId the stored message or an error frame will carry.
    */
-  sendMessage(receiverId: number, content: string): void {
-    this.wsService.sendChatMessage(receiverId, content);
+  sendMessage(receiverId: number, content: string): string {
+    const clientMessageId = crypto.randomUUID();
+    this.pendingSends.set(clientMessageId, { receiverId, content });
+    this.wsService.sendChatMessage(receiverId, content, clientMessageId);
+    return clientMessageId;
+  }
+
+  /**
+   * Whether a failed send can still be retried with retrySend
+   */
+  canRetry(clientMessageId?: string): boolean {
+    return !!clientMessageId && this.pendingSends.has(clientMessageId);
+  }
+
+  /**
+   * Send a message again after an error frame reported its clientMessageId
+   */
+  retrySend(clientMessageId: string): void {
+    const pending = this.pendingSends.get(clientMessageId);
+    if (pending) {
+      this.wsService.sendChatMessage(pending.receiverId, pending.content, clientMessageId);
+    }
   }
 
   /**
@@ -147,7 +232,7 @@ export class ChatService {
     return this.http.post<Conversation>(`${this.apiUrl}/conversations/create/${friendId}`, {});
   }
 
-  getFriendsWithoutChat(): Observable<User[]> {
-    return this.http.get<User[]>(`${this.apiUrl}/friends/without-chat`);
+  getFriendsWithoutChat(page: number = 0, size: number = 50): Observable<Page<User>> {
+    return this.http.get<Page<User>>(`${this.apiUrl}/friends/without-chat`, { params: { page, size } });
   }
 }
@@ -2,7 +2,7 @@ import { Injectable } from '@angular/core';
 import { HttpClient, HttpParams } from '@angular/common/http';
 import { Observable } from 'rxjs';
 import { environment } from '../../environments/environment';
-import { Post, PostCreateRequest, Comment, Page } from '../models';
+import { Post, PostCreateRequest, Comment, Page, PostSlice } from '../models';
 
 @Injectable({
   providedIn: 'root'
@@ -20,6 +20,10 @@ export class PostService {
     return this.http.get<Page<Post>>(this.apiUrl, { params });
   }
 
+  getFeedSlice(before: string | null = null, limit: number = 20): Observable<PostSlice> {
+    return this.http.get<PostSlice>(this.apiUrl, { params: this.sliceParams(before, limit) });
+  }
+
   getUserPosts(userId: number, page: number = 0, size: number = 20): Observable<Page<Post>> {
     const params = new HttpParams()
       .set('page', page.toString())
@@ -28,6 +32,10 @@ export class PostService {
     return this.http.get<Page<Post>>(`${this.apiUrl}/user/${userId}`, { params });
   }
 
+  getUserPostsSlice(userId: number, before: string | null = null, limit: number = 20): Observable<PostSlice> {
+    return this.http.get<PostSlice>(`${this.apiUrl}/user/${userId}`, { params: this.sliceParams(before, limit) });
+  }
+
   getPost(id: number): Observable<Post> {
     return this.http.get<Post>(`${this.apiUrl}/${id}`);
   }
@@ -51,4 +59,12 @@ export class PostService {
   deletePost(id: number): Observable<void> {
     return this.http.delete<void>(`${this.apiUrl}/${id}`);
   }
+
+  private sliceParams(before: string | null, limit: number): HttpParams {
+    let params = new HttpParams().set('limit', limit.toString());
+    if (before) {
+      params = params.set('before', before);
+    }
+    return params;
+  }
 }
@@ -1,5 +1,5 @@
 import { Injectable } from '@angular/core';
-import { Client, IMessage, StompSubscription } from '@stomp/stompjs';
+import { Client, IMessage, IStompSocket, StompSubscription } from '@stomp/stompjs';
 import SockJS from 'sockjs-client';
 import { BehaviorSubject, Observable, Subject } from 'rxjs';
 import { filter } from 'rxjs/operators';
@@ -25,6 +25,9 @@ export class WebSocketService {
   private reconnectAttempts = 0;
   private maxReconnectAttempts = 5;
   private reconnectDelay = 3000;
+  // Set once the plain WebSocket endpoint failed to connect; later attempts go through SockJS
+  private useSockJs = false;
+  private nativeConnected = false;
 
   constructor() {}
 
@@ -54,7 +57,7 @@ export class WebSocketService {
         
         // Create STOMP client
         this.stompClient = new Client({
-          webSocketFactory: () => new SockJS(`${environment.apiUrl.replace('/api', '')}/ws`),
+          webSocketFactory: () => this.createSocket(),
           connectHeaders: {
             Authorization: `Bearer ${token}`
           },
@@ -69,6 +72,7 @@ export class WebSocketService {
             console.log('[WebSocket] Frame headers:', frame.headers);
             this.connectionState$.next(WebSocketConnectionState.CONNECTED);
             this.reconnectAttempts = 0;
+            this.nativeConnected = this.nativeConnected || !this.useSockJs;
             
             // Test: subscribe to all messages to see what's coming through
             this.stompClient!.subscribe('/**', (msg) => {
@@ -86,6 +90,10 @@ export class WebSocketService {
           },
           onWebSocketClose: (event) => {
             console.log('[WebSocket] Connection closed', event);
+            if (!this.useSockJs && !this.nativeConnected) {
+              console.warn('[WebSocket] Plain WebSocket unavailable, falling back to SockJS');
+              this.useSockJs = true;
+            }
             this.connectionState$.next(WebSocketConnectionState.DISCONNECTED);
             // Don't auto-reconnect on close - let the application handle it
             // this.handleReconnect(token);
@@ -106,6 +114,17 @@ export class WebSocketService {
     });
   }
 
+  /**
+   * Plain WebSocket on /ws-native, or SockJS on /ws where the upgrade does not get through
+   */
+  private createSocket(): IStompSocket {
+    const baseUrl = environment.apiUrl.replace('/api', '');
+    if (this.useSockJs || typeof WebSocket === 'undefined') {
+      return new SockJS(`${baseUrl}/ws`);
+    }
+    return new WebSocket(`${baseUrl.replace(/^http/, 'ws')}/ws-native`);
+  }
+
   /**
    * Disconnect from WebSocket server
    */
@@ -321,9 +340,9 @@ export class WebSocketService {
   /**
    * Send chat message via WebSocket
    */
-  sendChatMessage(receiverId: number, content: string): void {
+  sendChatMessage(receiverId: number, content: string, clientMessageId: string): void {
     if (!this.isConnected()) return;
 
-    this.send('/app/chat.send', { receiverId, content });
+    this.send('/app/chat.send', { receiverId, content, clientMessageId });
   }
 }
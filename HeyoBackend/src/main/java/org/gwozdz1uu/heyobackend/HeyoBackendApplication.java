@@ -2,8 +2,10 @@ package org.gwozdz1uu.heyobackend;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class HeyoBackendApplication {
 
     public static void main(String[] args) {
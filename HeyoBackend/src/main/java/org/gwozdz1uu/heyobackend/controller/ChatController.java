@@ -2,9 +2,14 @@ package org.gwozdz1uu.heyobackend.controller;
 
 import lombok.RequiredArgsConstructor;
 import org.gwozdz1uu.heyobackend.dto.ChatMessageDTO;
+import org.gwozdz1uu.heyobackend.dto.ChatSyncDTO;
 import org.gwozdz1uu.heyobackend.dto.ConversationDTO;
 import org.gwozdz1uu.heyobackend.model.User;
+import org.gwozdz1uu.heyobackend.service.ChatSearchIndex;
 import org.gwozdz1uu.heyobackend.service.ChatService;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.web.PageableDefault;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
@@ -18,17 +23,38 @@ import java.util.Map;
 public class ChatController {
 
     private final ChatService chatService;
+    private final ChatSearchIndex chatSearchIndex;
 
     @GetMapping("/conversations")
     public ResponseEntity<List<ConversationDTO>> getConversations(@AuthenticationPrincipal User user) {
         return ResponseEntity.ok(chatService.getConversations(user));
     }
 
+    /**
+     * Without paging parameters returns the whole history (legacy clients).
+     * With ?before={messageId}&limit={n} returns one keyset page, oldest first.
+     */
     @GetMapping("/conversations/{partnerId}")
     public ResponseEntity<List<ChatMessageDTO>> getConversation(
             @PathVariable Long partnerId,
+            @RequestParam(required = false) Long before,
+            @RequestParam(required = false) Integer limit,
             @AuthenticationPrincipal User user) {
-        return ResponseEntity.ok(chatService.getConversation(user, partnerId));
+        if (before == null && limit == null) {
+            return ResponseEntity.ok(chatService.getConversation(user, partnerId));
+        }
+        return ResponseEntity.ok(chatService.getConversationPage(user, partnerId, before, limit));
+    }
+
+    /**
+     * Delta sync for reconnecting clients: pass the token from the previous response as ?since=.
+     * Without it only conversation summaries and a fresh token are returned.
+     */
+    @GetMapping("/sync")
+    public ResponseEntity<ChatSyncDTO> sync(
+            @RequestParam(required = false) String since,
+            @AuthenticationPrincipal User user) {
+        return ResponseEntity.ok(chatService.sync(user, since));
     }
 
     @PostMapping("/send")
@@ -53,6 +79,34 @@ public class ChatController {
         return ResponseEntity.ok(Map.of("count", chatService.getUnreadCount(user)));
     }
 
+    /**
+     * Full-text search over message content, optionally within the conversation with ?partnerId=
+     */
+    @GetMapping("/search")
+    public ResponseEntity<List<ChatMessageDTO>> searchMessages(
+            @RequestParam String query,
+            @RequestParam(required = false) Long partnerId,
+            @RequestParam(required = false) Integer limit,
+            @AuthenticationPrincipal User user) {
+        return ResponseEntity.ok(chatService.searchMessages(user, query, partnerId, limit));
+    }
+
+    /**
+     * Index size, pending documents, indexing lag and dropped documents (admins only)
+     */
+    @GetMapping("/search/status")
+    public ResponseEntity<Map<String, Object>> getSearchStatus() {
+        return ResponseEntity.ok(chatSearchIndex.getStatus());
+    }
+
+    /**
+     * Re-index all messages from the database in the background (admins only)
+     */
+    @PostMapping("/search/rebuild")
+    public ResponseEntity<Map<String, Boolean>> rebuildSearchIndex() {
+        return ResponseEntity.accepted().body(Map.of("started", chatSearchIndex.rebuildAsync()));
+    }
+
     @GetMapping("/conversations/search")
     public ResponseEntity<List<ConversationDTO>> searchConversations(
             @RequestParam String query,
@@ -68,8 +122,9 @@ public class ChatController {
     }
 
     @GetMapping("/friends/without-chat")
-    public ResponseEntity<List<org.gwozdz1uu.heyobackend.dto.UserDTO>> getFriendsWithoutChat(
-            @AuthenticationPrincipal User user) {
-        return ResponseEntity.ok(chatService.getFriendsWithoutChat(user));
+    public ResponseEntity<Page<org.gwozdz1uu.heyobackend.dto.UserDTO>> getFriendsWithoutChat(
+            @AuthenticationPrincipal User user,
+            @PageableDefault(size = 50) Pageable pageable) {
+        return ResponseEntity.ok(chatService.getFriendsWithoutChat(user, pageable));
     }
 }
@@ -0,0 +1,36 @@
+package org.gwozdz1uu.heyobackend.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.gwozdz1uu.heyobackend.websocket.config.ChannelExecutors;
+import org.gwozdz1uu.heyobackend.websocket.config.OutboundBackpressure;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.socket.config.WebSocketMessageBrokerStats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/websocket")
+@RequiredArgsConstructor
+public class WebSocketStatsController {
+
+    private final ChannelExecutors channelExecutors;
+    private final OutboundBackpressure outboundBackpressure;
+    private final WebSocketMessageBrokerStats webSocketMessageBrokerStats;
+
+    /**
+     * Session counts, per-channel executor load (queue depth, queue wait, run time)
+     * and slow-consumer drops and disconnects (admins only)
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sessions", webSocketMessageBrokerStats.getWebSocketSessionStatsInfo());
+        stats.put("channels", channelExecutors.getStats());
+        stats.put("outbound", outboundBackpressure.getStats());
+        return ResponseEntity.ok(stats);
+    }
+}
@@ -12,9 +12,12 @@ public class ChatMessageDTO {
     private Long senderId;
     private String senderUsername;
     private String senderAvatarUrl;
+    private Long seq;
     private Long receiverId;
     private String receiverUsername;
     private String content;
     private boolean read;
     private LocalDateTime createdAt;
+    // Id the sending client chose for the WebSocket send, echoed so it can match the stored message
+    private String clientMessageId;
 }
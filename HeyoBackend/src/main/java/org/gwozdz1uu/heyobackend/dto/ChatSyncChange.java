@@ -0,0 +1,12 @@
+package org.gwozdz1uu.heyobackend.dto;
+
+import lombok.Value;
+
+/**
+ * A conversation that changed since a sync cursor, and the first conversation seq that changed
+ */
+@Value
+public class ChatSyncChange {
+    Long conversationId;
+    Long fromSeq;
+}
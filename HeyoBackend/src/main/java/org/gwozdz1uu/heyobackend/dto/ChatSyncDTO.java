@@ -0,0 +1,22 @@
+package org.gwozdz1uu.heyobackend.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Changes to a user's conversations since their last sync token.
+ * Messages are ordered oldest first within each conversation. For conversations in
+ * truncatedConversationIds more changed than fits one response, or the token was too old to
+ * replay: only the newest messages (if any) are included and the client should drop its
+ * cached history and page older ones.
+ */
+@Data
+@Builder
+public class ChatSyncDTO {
+    private String token;
+    private List<ConversationDTO> conversations;
+    private List<ChatMessageDTO> messages;
+    private List<Long> truncatedConversationIds;
+}
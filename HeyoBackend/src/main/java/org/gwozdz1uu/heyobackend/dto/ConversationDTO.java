@@ -16,4 +16,8 @@ public class ConversationDTO {
     private String lastMessage;
     private LocalDateTime lastMessageAt;
     private int unreadCount;
+    private long seq;
+    // Read watermarks: highest message id read by the current user / by the partner
+    private Long lastReadId;
+    private Long partnerLastReadId;
 }
@@ -0,0 +1,14 @@
+package org.gwozdz1uu.heyobackend.dto;
+
+import lombok.Value;
+
+/**
+ * The part of a chat message that goes into the full-text index
+ */
+@Value
+public class IndexedChatMessage {
+    Long id;
+    Long senderId;
+    Long receiverId;
+    String content;
+}
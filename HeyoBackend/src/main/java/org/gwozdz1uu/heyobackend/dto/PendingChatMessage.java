@@ -0,0 +1,25 @@
+package org.gwozdz1uu.heyobackend.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Chat message accepted over WebSocket, waiting in the write-behind queue to be persisted.
+ * It is delivered to both users only once its batch has been committed.
+ */
+@Data
+@Builder
+public class PendingChatMessage {
+    private String clientMessageId;
+    private Long conversationId;
+    private Long seq;
+    private Long senderId;
+    private String senderUsername;
+    private String senderAvatarUrl;
+    private Long receiverId;
+    private String receiverUsername;
+    private String content;
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,19 @@
+package org.gwozdz1uu.heyobackend.dto;
+
+import lombok.Value;
+import org.gwozdz1uu.heyobackend.model.User;
+
+/**
+ * Immutable view of the user fields the WebSocket handlers need for routing
+ * and building DTOs. Taken once at CONNECT, so frames do not reload the entity.
+ */
+@Value
+public class UserSnapshot {
+    Long id;
+    String username;
+    String avatarUrl;
+
+    public static UserSnapshot of(User user) {
+        return new UserSnapshot(user.getId(), user.getUsername(), user.getAvatarUrl());
+    }
+}
@@ -0,0 +1,18 @@
+package org.gwozdz1uu.heyobackend.dto;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Column projection of the user fields behind UserDTO, for list queries that should not
+ * load User entities (and their friend sets) into the persistence context.
+ */
+@Value
+public class UserSummary {
+    Long id;
+    String username;
+    String email;
+    String avatarUrl;
+    LocalDateTime lastSeen;
+}
@@ -17,6 +17,12 @@ public class ChatMessage {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "conversation_id")
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private Conversation conversation;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "sender_id", nullable = false)
     private User sender;
@@ -28,6 +34,10 @@ public class ChatMessage {
     @Column(columnDefinition = "TEXT", nullable = false)
     private String content;
 
+    // Position within the conversation, taken from Conversation.seq when the message is recorded
+    @Column(name = "seq")
+    private Long seq;
+
     @Column(name = "is_read")
     private boolean read = false;
 
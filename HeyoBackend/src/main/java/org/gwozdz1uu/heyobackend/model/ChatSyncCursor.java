@@ -0,0 +1,24 @@
+package org.gwozdz1uu.heyobackend.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Position of a user's chat change sequence. Bumped for every change to one of the user's
+ * conversations; the row lock orders the user's changes, so they become visible in seq order.
+ */
+@Entity
+@Table(name = "chat_sync_cursors")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ChatSyncCursor {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "seq", nullable = false)
+    private long seq;
+}
@@ -0,0 +1,42 @@
+package org.gwozdz1uu.heyobackend.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+
+/**
+ * One change a user's clients have to pick up on their next sync: the conversation that
+ * changed and the first conversation seq the change covers.
+ */
+@Entity
+@Table(name = "chat_sync_log")
+@IdClass(ChatSyncLogEntry.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ChatSyncLogEntry {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Id
+    @Column(name = "seq")
+    private Long seq;
+
+    @Column(name = "conversation_id", nullable = false)
+    private Long conversationId;
+
+    @Column(name = "conversation_seq", nullable = false)
+    private Long conversationSeq;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long userId;
+        private Long seq;
+    }
+}
@@ -0,0 +1,25 @@
+package org.gwozdz1uu.heyobackend.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Total number of unread chat messages for a user across all conversations.
+ * Kept in step with the per-conversation counters on Conversation so the
+ * unread badge is a primary key lookup.
+ */
+@Entity
+@Table(name = "chat_unread_counters")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ChatUnreadCounter {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "unread_count", nullable = false)
+    private int unreadCount;
+}
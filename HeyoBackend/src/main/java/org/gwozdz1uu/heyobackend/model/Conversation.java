@@ -4,9 +4,16 @@ import jakarta.persistence.*;
 import lombok.*;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
 
+/**
+ * Read model summarizing a chat between two users.
+ * Participants are stored in canonical order (user1 has the lower id), so every
+ * pair of users maps to exactly one row. The summary columns are maintained by
+ * ChatService on every send / mark-as-read, which lets the inbox be served
+ * without touching chat_messages.
+ * Read state is a watermark per participant: every message addressed to that user
+ * with an id up to userNLastReadId has been read.
+ */
 @Entity
 @Table(name = "conversations")
 @Data
@@ -21,25 +28,72 @@ public class Conversation {
 
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user1_id", nullable = false)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     private User user1;
 
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user2_id", nullable = false)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     private User user2;
 
-    @OneToMany(cascade = CascadeType.ALL, fetch = FetchType.LAZY)
-    @JoinColumn(name = "conversation_id")
-    private List<ChatMessage> messages = new ArrayList<>();
+    @Column(name = "last_message_id")
+    private Long lastMessageId;
+
+    @Column(name = "last_message_preview")
+    private String lastMessagePreview;
 
     @Column(name = "last_message_at")
     private LocalDateTime lastMessageAt;
 
+    @Column(name = "user1_unread_count", nullable = false)
+    private int user1UnreadCount;
+
+    @Column(name = "user2_unread_count", nullable = false)
+    private int user2UnreadCount;
+
+    @Column(name = "user1_last_read_id")
+    private Long user1LastReadId;
+
+    @Column(name = "user2_last_read_id")
+    private Long user2LastReadId;
+
+    /**
+     * Incremented on every change to the conversation; clients sync from the last value they saw
+     */
+    @Column(name = "seq", nullable = false)
+    private long seq;
+
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
-        lastMessageAt = LocalDateTime.now();
+    }
+
+    public boolean isUser1(Long userId) {
+        return user1.getId().equals(userId);
+    }
+
+    public User getPartner(Long userId) {
+        return isUser1(userId) ? user2 : user1;
+    }
+
+    public int getUnreadCountFor(Long userId) {
+        return isUser1(userId) ? user1UnreadCount : user2UnreadCount;
+    }
+
+    public Long getLastReadIdFor(Long userId) {
+        return isUser1(userId) ? user1LastReadId : user2LastReadId;
+    }
+
+    /**
+     * Whether the receiver has read the message, according to their watermark
+     */
+    public boolean isReadBy(Long receiverId, Long messageId) {
+        Long lastReadId = getLastReadIdFor(receiverId);
+        return lastReadId != null && messageId != null && messageId <= lastReadId;
     }
 }
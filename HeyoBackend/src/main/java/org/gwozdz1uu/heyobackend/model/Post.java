@@ -44,6 +44,13 @@ public class Post {
     @Builder.Default
     private List<Comment> comments = new ArrayList<>();
 
+    // Kept in step with post_likes and comments by PostRepository's atomic updates, never written from here
+    @Column(name = "likes_count", nullable = false, updatable = false)
+    private int likesCount;
+
+    @Column(name = "comments_count", nullable = false, updatable = false)
+    private int commentsCount;
+
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
@@ -60,12 +67,4 @@ public class Post {
     protected void onUpdate() {
         updatedAt = LocalDateTime.now();
     }
-
-    public int getLikesCount() {
-        return likes != null ? likes.size() : 0;
-    }
-
-    public int getCommentsCount() {
-        return comments != null ? comments.size() : 0;
-    }
 }
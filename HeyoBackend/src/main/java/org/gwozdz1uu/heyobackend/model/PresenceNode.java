@@ -0,0 +1,26 @@
+package org.gwozdz1uu.heyobackend.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * A backend node tracking WebSocket sessions. The heartbeat is refreshed periodically;
+ * a node that stops refreshing it is presumed dead and its users are marked offline.
+ */
+@Entity
+@Table(name = "presence_nodes")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PresenceNode {
+
+    @Id
+    @Column(name = "node_id", length = 64)
+    private String nodeId;
+
+    @Column(name = "heartbeat_at", nullable = false)
+    private LocalDateTime heartbeatAt;
+}
@@ -0,0 +1,39 @@
+package org.gwozdz1uu.heyobackend.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+
+/**
+ * A post in a user's home feed. Written for the author and their friends when the post is
+ * created, so a feed page is a range read on (user_id, post_id) instead of a sort over all posts.
+ */
+@Entity
+@Table(name = "timeline_entries")
+@IdClass(TimelineEntry.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TimelineEntry {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Id
+    @Column(name = "post_id")
+    private Long postId;
+
+    @Column(name = "author_id", nullable = false)
+    private Long authorId;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long userId;
+        private Long postId;
+    }
+}
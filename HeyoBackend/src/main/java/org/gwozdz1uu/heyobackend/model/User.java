@@ -66,6 +66,10 @@ public class User implements UserDetails {
     @Column(nullable = false)
     private Role role = Role.USER;
 
+    // Kept in step with user_friends by UserRepository's atomic updates, never written from here
+    @Column(name = "friends_count", nullable = false, updatable = false)
+    private int friendsCount;
+
     @OneToOne(mappedBy = "user", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     @JsonIgnore
     private Profile profile;
@@ -0,0 +1,36 @@
+package org.gwozdz1uu.heyobackend.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+
+/**
+ * A user with at least one open session on a node. users.is_online is kept true while
+ * any node lists the user, so a node only ever clears its own sessions.
+ */
+@Entity
+@Table(name = "user_presence_nodes")
+@IdClass(UserPresenceNode.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UserPresenceNode {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Id
+    @Column(name = "node_id", length = 64)
+    private String nodeId;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long userId;
+        private String nodeId;
+    }
+}
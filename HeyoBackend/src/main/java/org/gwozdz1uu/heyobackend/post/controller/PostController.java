@@ -5,6 +5,7 @@ import org.gwozdz1uu.heyobackend.dto.CommentDTO;
 import org.gwozdz1uu.heyobackend.model.User;
 import org.gwozdz1uu.heyobackend.post.dto.PostCreateRequest;
 import org.gwozdz1uu.heyobackend.post.dto.PostDTO;
+import org.gwozdz1uu.heyobackend.post.dto.PostSliceDTO;
 import org.gwozdz1uu.heyobackend.post.service.PostService;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -30,6 +31,18 @@ public class PostController {
         return ResponseEntity.ok(postService.getFeed(user, pageable));
     }
 
+    /**
+     * With ?limit={n}[&before={createdAt,id}] returns one keyset slice instead of a page;
+     * pass the slice's nextCursor as before to continue.
+     */
+    @GetMapping(params = "limit")
+    public ResponseEntity<PostSliceDTO> getFeedSlice(
+            @RequestParam(required = false) String before,
+            @RequestParam Integer limit,
+            @AuthenticationPrincipal User user) {
+        return ResponseEntity.ok(postService.getFeedSlice(user, before, limit));
+    }
+
     @GetMapping("/user/{userId}")
     public ResponseEntity<Page<PostDTO>> getUserPosts(
             @PathVariable Long userId,
@@ -38,6 +51,15 @@ public class PostController {
         return ResponseEntity.ok(postService.getUserPosts(userId, user, pageable));
     }
 
+    @GetMapping(value = "/user/{userId}", params = "limit")
+    public ResponseEntity<PostSliceDTO> getUserPostsSlice(
+            @PathVariable Long userId,
+            @RequestParam(required = false) String before,
+            @RequestParam Integer limit,
+            @AuthenticationPrincipal User user) {
+        return ResponseEntity.ok(postService.getUserPostsSlice(userId, user, before, limit));
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<PostDTO> getPost(
             @PathVariable Long id,
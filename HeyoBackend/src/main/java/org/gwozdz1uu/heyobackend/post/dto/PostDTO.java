@@ -1,12 +1,16 @@
 package org.gwozdz1uu.heyobackend.post.dto;
 
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
 
 @Data
 @Builder
+@NoArgsConstructor
+@AllArgsConstructor
 public class PostDTO {
     private Long id;
     private Long authorId;
@@ -0,0 +1,18 @@
+package org.gwozdz1uu.heyobackend.post.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * One keyset page of posts, newest first. Pass nextCursor as ?before= to get the next one;
+ * it is null when there are no older posts.
+ */
+@Data
+@Builder
+public class PostSliceDTO {
+    private List<PostDTO> content;
+    private boolean hasNext;
+    private String nextCursor;
+}
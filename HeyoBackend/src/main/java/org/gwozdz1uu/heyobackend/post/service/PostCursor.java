@@ -0,0 +1,27 @@
+package org.gwozdz1uu.heyobackend.post.service;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Keyset cursor for post lists: "createdAt,id" of the last post on the previous page, e.g.
+ * "2024-01-15T10:30:00,42". The next page holds the posts before it in (createdAt, id) order.
+ */
+record PostCursor(LocalDateTime createdAt, Long id) {
+
+    static PostCursor parse(String value) {
+        int comma = value.lastIndexOf(',');
+        if (comma < 0) {
+            throw new RuntimeException("Invalid cursor");
+        }
+        try {
+            return new PostCursor(LocalDateTime.parse(value.substring(0, comma)), Long.valueOf(value.substring(comma + 1)));
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new RuntimeException("Invalid cursor");
+        }
+    }
+
+    String format() {
+        return createdAt + "," + id;
+    }
+}
@@ -11,36 +11,81 @@ import org.gwozdz1uu.heyobackend.repository.CommentRepository;
 import org.gwozdz1uu.heyobackend.repository.PostRepository;
 import org.gwozdz1uu.heyobackend.post.dto.PostCreateRequest;
 import org.gwozdz1uu.heyobackend.post.dto.PostDTO;
+import org.gwozdz1uu.heyobackend.post.dto.PostSliceDTO;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class PostService {
 
+    private static final int DEFAULT_SLICE_SIZE = 20;
+    private static final int MAX_SLICE_SIZE = 50;
+
     private final PostRepository postRepository;
     private final CommentRepository commentRepository;
     private final NotificationService notificationService;
+    private final TimelineService timelineService;
 
+    /**
+     * The user's own and their friends' posts, newest first, read from their timeline
+     */
     public Page<PostDTO> getFeed(User currentUser, Pageable pageable) {
-        return postRepository.findAllByOrderByCreatedAtDesc(pageable)
-                .map(post -> toDTO(post, currentUser));
+        Page<Long> postIds = timelineService.postIds(currentUser.getId(), pageable);
+        return new PageImpl<>(withLikes(findInOrder(postIds.getContent()), currentUser), pageable, postIds.getTotalElements());
+    }
+
+    /**
+     * Keyset variant of getFeed: the posts before the cursor, without an offset or a count query.
+     * The timeline is ordered by post id, which follows createdAt, so only the cursor's id is used.
+     */
+    public PostSliceDTO getFeedSlice(User currentUser, String before, Integer limit) {
+        int size = sliceSize(limit);
+        Long beforeId = before == null ? null : PostCursor.parse(before).id();
+        List<Long> postIds = timelineService.postIds(currentUser.getId(), beforeId, size + 1);
+        boolean hasNext = postIds.size() > size;
+        return toSlice(withLikes(findInOrder(postIds.subList(0, Math.min(size, postIds.size()))), currentUser), hasNext);
     }
 
     public Page<PostDTO> getUserPosts(Long userId, User currentUser, Pageable pageable) {
-        return postRepository.findByAuthorIdOrderByCreatedAtDesc(userId, pageable)
-                .map(post -> toDTO(post, currentUser));
+        Page<PostDTO> posts = postRepository.findDTOsByAuthorId(userId, pageable);
+        withLikes(posts.getContent(), currentUser);
+        return posts;
+    }
+
+    /**
+     * Keyset variant of getUserPosts: the user's posts before the cursor, without an offset or a count query
+     */
+    public PostSliceDTO getUserPostsSlice(Long userId, User currentUser, String before, Integer limit) {
+        int size = sliceSize(limit);
+        Pageable page = PageRequest.of(0, size + 1);
+        List<PostDTO> posts;
+        if (before == null) {
+            posts = postRepository.findLatestDTOsByAuthorId(userId, page);
+        } else {
+            PostCursor cursor = PostCursor.parse(before);
+            posts = postRepository.findDTOsByAuthorIdBefore(userId, cursor.createdAt(), cursor.id(), page);
+        }
+        boolean hasNext = posts.size() > size;
+        return toSlice(withLikes(posts.subList(0, Math.min(size, posts.size())), currentUser), hasNext);
     }
 
     public PostDTO getPost(Long postId, User currentUser) {
-        Post post = postRepository.findById(postId)
+        PostDTO post = postRepository.findDTOById(postId)
                 .orElseThrow(() -> new RuntimeException("Post not found"));
-        return toDTO(post, currentUser);
+        return withLikes(List.of(post), currentUser).get(0);
     }
 
     @Transactional
@@ -52,7 +97,8 @@ public class PostService {
                 .build();
 
         post = postRepository.save(post);
-        return toDTO(post, author);
+        timelineService.fanOut(author.getId(), post.getId());
+        return toDTO(post, false);
     }
 
     @Transactional
@@ -60,12 +106,15 @@ public class PostService {
         Post post = postRepository.findById(postId)
                 .orElseThrow(() -> new RuntimeException("Post not found"));
 
-        boolean wasLiked = post.getLikes().contains(user);
-        if (wasLiked) {
-            post.getLikes().remove(user);
-        } else {
-            post.getLikes().add(user);
-            
+        // The counter moves only if the like row actually changed, so concurrent toggles cannot skew it
+        boolean liked = !postRepository.existsLike(postId, user.getId());
+        if (!liked) {
+            if (postRepository.removeLike(postId, user.getId()) > 0) {
+                postRepository.incrementLikesCount(postId, -1);
+            }
+        } else if (postRepository.addLike(postId, user.getId()) > 0) {
+            postRepository.incrementLikesCount(postId, 1);
+
             // Create notification only when liking (not unliking) and not for own posts
             if (!post.getAuthor().getId().equals(user.getId())) {
                 String message = user.getUsername() + " polubił Twój post";
@@ -79,8 +128,8 @@ public class PostService {
             }
         }
 
-        post = postRepository.save(post);
-        return toDTO(post, user);
+        post.setLikesCount(postRepository.findLikesCount(postId));
+        return toDTO(post, liked);
     }
 
     @Transactional
@@ -95,6 +144,7 @@ public class PostService {
                 .build();
 
         comment = commentRepository.save(comment);
+        postRepository.incrementCommentsCount(postId, 1);
         
         // Create notification for comment (not for own posts)
         if (!post.getAuthor().getId().equals(author.getId())) {
@@ -130,7 +180,53 @@ public class PostService {
         postRepository.delete(post);
     }
 
-    private PostDTO toDTO(Post post, User currentUser) {
+    private static int sliceSize(Integer limit) {
+        return limit == null ? DEFAULT_SLICE_SIZE : Math.max(1, Math.min(limit, MAX_SLICE_SIZE));
+    }
+
+    private static PostSliceDTO toSlice(List<PostDTO> posts, boolean hasNext) {
+        String nextCursor = null;
+        if (hasNext && !posts.isEmpty()) {
+            PostDTO last = posts.get(posts.size() - 1);
+            nextCursor = new PostCursor(last.getCreatedAt(), last.getId()).format();
+        }
+        return PostSliceDTO.builder()
+                .content(posts)
+                .hasNext(nextCursor != null)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    /**
+     * Reads the posts by id in one query and keeps the given order; deleted posts are skipped
+     */
+    private List<PostDTO> findInOrder(List<Long> postIds) {
+        if (postIds.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, PostDTO> posts = postRepository.findDTOsByIdIn(postIds).stream()
+                .collect(Collectors.toMap(PostDTO::getId, Function.identity()));
+        return postIds.stream()
+                .map(posts::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Resolves likedByCurrentUser for the whole list with one post_likes probe, so the cost
+     * does not depend on how many likes the posts have
+     */
+    private List<PostDTO> withLikes(List<PostDTO> posts, User currentUser) {
+        if (posts.isEmpty()) {
+            return posts;
+        }
+        List<Long> postIds = posts.stream().map(PostDTO::getId).collect(Collectors.toList());
+        Set<Long> liked = new HashSet<>(postRepository.findLikedPostIds(currentUser.getId(), postIds));
+        posts.forEach(post -> post.setLikedByCurrentUser(liked.contains(post.getId())));
+        return posts;
+    }
+
+    private PostDTO toDTO(Post post, boolean likedByCurrentUser) {
         return PostDTO.builder()
                 .id(post.getId())
                 .authorId(post.getAuthor().getId())
@@ -140,7 +236,7 @@ public class PostService {
                 .imageUrl(post.getImageUrl())
                 .likesCount(post.getLikesCount())
                 .commentsCount(post.getCommentsCount())
-                .likedByCurrentUser(post.getLikes() != null && post.getLikes().contains(currentUser))
+                .likedByCurrentUser(likedByCurrentUser)
                 .createdAt(post.getCreatedAt())
                 .build();
     }
@@ -0,0 +1,123 @@
+package org.gwozdz1uu.heyobackend.post.service;
+
+import lombok.RequiredArgsConstructor;
+import org.gwozdz1uu.heyobackend.repository.PostRepository;
+import org.gwozdz1uu.heyobackend.repository.TimelineEntryRepository;
+import org.gwozdz1uu.heyobackend.repository.UserRepository;
+import org.gwozdz1uu.heyobackend.service.FriendshipChangedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Home feed timelines: a timeline_entries row per (user, post) for the user's own posts and their
+ * friends' posts, read newest first by post id.
+ *
+ * Posts are fanned out on write, so a feed page is a primary key range read instead of a sort
+ * over every post. Authors with more than app.feed.fanout.max-friends friends are fanned out on
+ * read instead: their posts are merged in from the posts table when their friends read the feed.
+ * Friend counts come from the maintained users.friends_count column. Friendship changes keep the
+ * timelines current - a new friend's recent posts are copied in and an ex-friend's are removed, and
+ * an author who drops back to the limit has its recent posts copied into its friends' timelines.
+ */
+@Service
+@RequiredArgsConstructor
+public class TimelineService {
+
+    private final TimelineEntryRepository timelineEntryRepository;
+    private final PostRepository postRepository;
+    private final UserRepository userRepository;
+
+    @Value("${app.feed.fanout.max-friends:1000}")
+    private int maxFanOutFriends;
+
+    @Value("${app.feed.backfill-posts:50}")
+    private int backfillPosts;
+
+    /**
+     * Adds a new post to its author's timeline and, below the fan-out limit, to every friend's
+     */
+    @Transactional
+    public void fanOut(Long authorId, Long postId) {
+        if (userRepository.findFriendsCount(authorId) > maxFanOutFriends) {
+            timelineEntryRepository.insert(authorId, postId, authorId);
+        } else {
+            timelineEntryRepository.fanOut(postId);
+        }
+    }
+
+    /**
+     * Up to limit post ids from the user's feed, newest first, older than beforeId when given
+     */
+    public List<Long> postIds(Long userId, Long beforeId, int limit) {
+        return postIds(userId, fannedOutOnRead(userId), beforeId, limit);
+    }
+
+    /**
+     * A page of post ids from the user's feed, newest first
+     */
+    public Page<Long> postIds(Long userId, Pageable pageable) {
+        List<Long> authorIds = fannedOutOnRead(userId);
+        int offset = (int) pageable.getOffset();
+        List<Long> ids = postIds(userId, authorIds, null, offset + pageable.getPageSize());
+        List<Long> content = ids.subList(Math.min(offset, ids.size()), ids.size());
+        long total = authorIds.isEmpty()
+                ? timelineEntryRepository.countByUserId(userId)
+                : timelineEntryRepository.countByUserIdAndAuthorIdNotIn(userId, authorIds)
+                        + postRepository.countByAuthorIdIn(authorIds);
+        return new PageImpl<>(content, pageable, total);
+    }
+
+    @EventListener
+    @Transactional
+    public void onFriendshipChanged(FriendshipChangedEvent event) {
+        Long userId = event.getUser().getId();
+        Long friendId = event.getFriend().getId();
+        if (event.isFriends()) {
+            timelineEntryRepository.backfill(userId, friendId, backfillPosts);
+            timelineEntryRepository.backfill(friendId, userId, backfillPosts);
+        } else {
+            timelineEntryRepository.deleteByUserIdAndAuthorId(userId, friendId);
+            timelineEntryRepository.deleteByUserIdAndAuthorId(friendId, userId);
+            backfillIfBackAtLimit(userId);
+            backfillIfBackAtLimit(friendId);
+        }
+    }
+
+    /**
+     * An author who just dropped to the limit is fanned out on write again, but its posts from while it
+     * was above were only read from the posts table; copy the recent ones into its friends' timelines
+     */
+    private void backfillIfBackAtLimit(Long authorId) {
+        if (userRepository.findFriendsCount(authorId) == maxFanOutFriends) {
+            timelineEntryRepository.backfillFriends(authorId, backfillPosts);
+        }
+    }
+
+    private List<Long> fannedOutOnRead(Long userId) {
+        return userRepository.findFriendIdsWithMoreFriendsThan(userId, maxFanOutFriends);
+    }
+
+    private List<Long> postIds(Long userId, List<Long> fannedOutOnRead, Long beforeId, int limit) {
+        Long before = beforeId != null ? beforeId : Long.MAX_VALUE;
+        Pageable first = PageRequest.of(0, limit);
+        if (fannedOutOnRead.isEmpty()) {
+            return timelineEntryRepository.findPostIds(userId, before, first);
+        }
+
+        // Two newest-first runs of at most limit ids each; keep the newest limit of both
+        TreeSet<Long> merged = new TreeSet<>(Comparator.reverseOrder());
+        merged.addAll(timelineEntryRepository.findPostIdsExcludingAuthors(userId, fannedOutOnRead, before, first));
+        merged.addAll(postRepository.findIdsByAuthorIdIn(fannedOutOnRead, before, first));
+        return merged.stream().limit(limit).toList();
+    }
+}
@@ -0,0 +1,91 @@
+package org.gwozdz1uu.heyobackend.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.gwozdz1uu.heyobackend.dto.PendingChatMessage;
+import org.gwozdz1uu.heyobackend.model.Notification;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * JDBC batch inserts for the chat write-behind pipeline.
+ * Hibernate cannot batch inserts of IDENTITY entities, so these go through JdbcTemplate
+ * and join the surrounding JPA transaction.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ChatBatchRepository {
+
+    private static final String INSERT_MESSAGE_SQL =
+            "INSERT INTO chat_messages (conversation_id, seq, sender_id, receiver_id, content, is_read, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, FALSE, ?)";
+
+    private static final String INSERT_NOTIFICATION_SQL =
+            "INSERT INTO notifications (user_id, actor_id, type, message, reference_id, is_read, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, FALSE, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Insert messages in one batch, returning generated ids in the same order as the input
+     */
+    public List<Long> insertMessages(List<PendingChatMessage> messages) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(
+                connection -> connection.prepareStatement(INSERT_MESSAGE_SQL, Statement.RETURN_GENERATED_KEYS),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        PendingChatMessage message = messages.get(i);
+                        ps.setLong(1, message.getConversationId());
+                        ps.setLong(2, message.getSeq());
+                        ps.setLong(3, message.getSenderId());
+                        ps.setLong(4, message.getReceiverId());
+                        ps.setString(5, message.getContent());
+                        ps.setTimestamp(6, Timestamp.valueOf(message.getCreatedAt()));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return messages.size();
+                    }
+                },
+                keyHolder
+        );
+
+        return keyHolder.getKeyList().stream()
+                .map(keys -> ((Number) keys.values().iterator().next()).longValue())
+                .collect(Collectors.toList());
+    }
+
+    public void insertNotifications(List<Notification> notifications) {
+        LocalDateTime now = LocalDateTime.now();
+        jdbcTemplate.batchUpdate(INSERT_NOTIFICATION_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Notification notification = notifications.get(i);
+                ps.setLong(1, notification.getUser().getId());
+                ps.setLong(2, notification.getActor().getId());
+                ps.setString(3, notification.getType().name());
+                ps.setString(4, notification.getMessage());
+                ps.setLong(5, notification.getReferenceId());
+                ps.setTimestamp(6, Timestamp.valueOf(now));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return notifications.size();
+            }
+        });
+    }
+}
@@ -2,7 +2,6 @@ package org.gwozdz1uu.heyobackend.repository;
 
 import org.gwozdz1uu.heyobackend.model.ChatMessage;
 import org.gwozdz1uu.heyobackend.model.User;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
@@ -10,6 +9,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -21,21 +21,49 @@ public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long>
             "ORDER BY m.createdAt ASC")
     List<ChatMessage> findConversation(@Param("user1") User user1, @Param("user2") User user2);
     
-    @Query("SELECT m FROM ChatMessage m WHERE " +
-            "(m.sender = :user1 AND m.receiver = :user2) OR " +
-            "(m.sender = :user2 AND m.receiver = :user1) " +
-            "ORDER BY m.createdAt DESC")
-    Page<ChatMessage> findConversationPaged(@Param("user1") User user1, @Param("user2") User user2, Pageable pageable);
+    /**
+     * Newest page of a conversation. Served from idx_chat_messages_conversation - InnoDB secondary
+     * indexes carry the primary key, so the index is effectively (conversation_id, id).
+     */
+    @Query("SELECT m FROM ChatMessage m JOIN FETCH m.sender JOIN FETCH m.receiver " +
+            "WHERE m.conversation.id = :conversationId " +
+            "ORDER BY m.id DESC")
+    List<ChatMessage> findLatestInConversation(@Param("conversationId") Long conversationId, Pageable pageable);
+
+    /**
+     * Keyset page of messages older than the cursor - costs the same as the first page at any depth
+     */
+    @Query("SELECT m FROM ChatMessage m JOIN FETCH m.sender JOIN FETCH m.receiver " +
+            "WHERE m.conversation.id = :conversationId AND m.id < :beforeId " +
+            "ORDER BY m.id DESC")
+    List<ChatMessage> findInConversationBefore(@Param("conversationId") Long conversationId,
+                                               @Param("beforeId") Long beforeId,
+                                               Pageable pageable);
     
+    /**
+     * Messages recorded in a conversation within a sequence range, newest first.
+     * Served from idx_chat_messages_conversation_seq.
+     */
+    @Query("SELECT m FROM ChatMessage m JOIN FETCH m.sender JOIN FETCH m.receiver " +
+            "WHERE m.conversation.id = :conversationId AND m.seq > :afterSeq AND m.seq <= :toSeq " +
+            "ORDER BY m.seq DESC")
+    List<ChatMessage> findInConversationSince(@Param("conversationId") Long conversationId,
+                                              @Param("afterSeq") long afterSeq,
+                                              @Param("toSeq") long toSeq,
+                                              Pageable pageable);
+
+    /**
+     * Messages by id with participants and conversation, for hydrating search hits
+     */
+    @Query("SELECT m FROM ChatMessage m JOIN FETCH m.sender JOIN FETCH m.receiver LEFT JOIN FETCH m.conversation " +
+            "WHERE m.id IN :ids")
+    List<ChatMessage> findAllWithParticipants(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Legacy per-row read flag. Read state lives in the conversation watermark; this is only
+     * kept in sync when app.chat.read.legacy-column-sync is enabled.
+     */
     @Modifying
     @Query("UPDATE ChatMessage m SET m.read = true WHERE m.sender = :sender AND m.receiver = :receiver AND m.read = false")
     void markAsRead(@Param("sender") User sender, @Param("receiver") User receiver);
-    
-    int countByReceiverAndReadFalse(User receiver);
-    
-    @Query("SELECT DISTINCT m.receiver FROM ChatMessage m WHERE m.sender = :user")
-    List<User> findConversationPartnersAsReceiver(@Param("user") User user);
-    
-    @Query("SELECT DISTINCT m.sender FROM ChatMessage m WHERE m.receiver = :user")
-    List<User> findConversationPartnersAsSender(@Param("user") User user);
 }
@@ -0,0 +1,39 @@
+package org.gwozdz1uu.heyobackend.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.gwozdz1uu.heyobackend.dto.IndexedChatMessage;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Reads chat messages for (re)building the full-text index, bypassing the persistence context
+ */
+@Repository
+@RequiredArgsConstructor
+public class ChatSearchRepository {
+
+    private static final String FIND_AFTER_SQL =
+            "SELECT id, sender_id, receiver_id, content FROM chat_messages WHERE id > ? ORDER BY id LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Keyset page of messages in id order, so a rebuild costs the same at any depth
+     */
+    public List<IndexedChatMessage> findAfter(long afterId, int limit) {
+        return jdbcTemplate.query(FIND_AFTER_SQL,
+                (rs, rowNum) -> new IndexedChatMessage(
+                        rs.getLong("id"),
+                        rs.getLong("sender_id"),
+                        rs.getLong("receiver_id"),
+                        rs.getString("content")),
+                afterId, limit);
+    }
+
+    public boolean hasMessages() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM chat_messages)", Boolean.class));
+    }
+}
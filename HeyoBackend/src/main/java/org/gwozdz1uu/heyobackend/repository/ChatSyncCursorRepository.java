@@ -0,0 +1,26 @@
+package org.gwozdz1uu.heyobackend.repository;
+
+import org.gwozdz1uu.heyobackend.model.ChatSyncCursor;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface ChatSyncCursorRepository extends JpaRepository<ChatSyncCursor, Long> {
+
+    /**
+     * Reserve the next count positions of a user's change sequence. The row stays locked until
+     * commit, so a reader never sees a position before the ones below it are committed.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO chat_sync_cursors (user_id, seq) VALUES (:userId, :count) " +
+            "ON DUPLICATE KEY UPDATE seq = seq + :count", nativeQuery = true)
+    void advance(@Param("userId") Long userId, @Param("count") int count);
+
+    @Query("SELECT c.seq FROM ChatSyncCursor c WHERE c.userId = :userId")
+    Optional<Long> findSeq(@Param("userId") Long userId);
+}
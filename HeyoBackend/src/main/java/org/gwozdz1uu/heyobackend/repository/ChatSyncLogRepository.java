@@ -0,0 +1,36 @@
+package org.gwozdz1uu.heyobackend.repository;
+
+import org.gwozdz1uu.heyobackend.dto.ChatSyncChange;
+import org.gwozdz1uu.heyobackend.model.ChatSyncLogEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ChatSyncLogRepository extends JpaRepository<ChatSyncLogEntry, ChatSyncLogEntry.Key> {
+
+    @Modifying
+    @Query(value = "INSERT INTO chat_sync_log (user_id, seq, conversation_id, conversation_seq) " +
+            "VALUES (:userId, :seq, :conversationId, :conversationSeq)", nativeQuery = true)
+    void insert(@Param("userId") Long userId,
+                @Param("seq") long seq,
+                @Param("conversationId") Long conversationId,
+                @Param("conversationSeq") long conversationSeq);
+
+    /**
+     * Conversations changed after the given position, each with the first conversation seq that changed.
+     * A primary key range read on (user_id, seq).
+     */
+    @Query("SELECT new org.gwozdz1uu.heyobackend.dto.ChatSyncChange(e.conversationId, MIN(e.conversationSeq)) " +
+            "FROM ChatSyncLogEntry e WHERE e.userId = :userId AND e.seq > :seq " +
+            "GROUP BY e.conversationId")
+    List<ChatSyncChange> findChangesSince(@Param("userId") Long userId, @Param("seq") long seq);
+
+    @Modifying
+    @Query("DELETE FROM ChatSyncLogEntry e WHERE e.userId = :userId AND e.seq <= :seq")
+    void deleteUpTo(@Param("userId") Long userId, @Param("seq") long seq);
+}
@@ -0,0 +1,23 @@
+package org.gwozdz1uu.heyobackend.repository;
+
+import org.gwozdz1uu.heyobackend.model.ChatUnreadCounter;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ChatUnreadCounterRepository extends JpaRepository<ChatUnreadCounter, Long> {
+
+    @Modifying
+    @Query(value = "INSERT INTO chat_unread_counters (user_id, unread_count) VALUES (:userId, :amount) " +
+            "ON DUPLICATE KEY UPDATE unread_count = unread_count + :amount", nativeQuery = true)
+    void increment(@Param("userId") Long userId, @Param("amount") int amount);
+
+    @Modifying
+    @Query("UPDATE ChatUnreadCounter c SET c.unreadCount = " +
+            "CASE WHEN c.unreadCount > :amount THEN c.unreadCount - :amount ELSE 0 END " +
+            "WHERE c.userId = :userId")
+    void decrement(@Param("userId") Long userId, @Param("amount") int amount);
+}
@@ -0,0 +1,130 @@
+package org.gwozdz1uu.heyobackend.repository;
+
+import jakarta.persistence.LockModeType;
+import org.gwozdz1uu.heyobackend.dto.UserSnapshot;
+import org.gwozdz1uu.heyobackend.model.Conversation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ConversationRepository extends JpaRepository<Conversation, Long> {
+
+    /**
+     * Find the conversation for a canonical (user1Id < user2Id) pair
+     */
+    @Query("SELECT c FROM Conversation c WHERE c.user1.id = :user1Id AND c.user2.id = :user2Id")
+    Optional<Conversation> findByParticipants(@Param("user1Id") Long user1Id, @Param("user2Id") Long user2Id);
+
+    /**
+     * Same as findByParticipants but locks the row, so counters read here cannot race with recordMessage
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM Conversation c WHERE c.user1.id = :user1Id AND c.user2.id = :user2Id")
+    Optional<Conversation> findByParticipantsForUpdate(@Param("user1Id") Long user1Id, @Param("user2Id") Long user2Id);
+
+    /**
+     * Inbox for a user, newest activity first, with both participants fetched in the same query
+     */
+    @Query("SELECT c FROM Conversation c JOIN FETCH c.user1 JOIN FETCH c.user2 " +
+            "WHERE c.user1.id = :userId OR c.user2.id = :userId " +
+            "ORDER BY c.lastMessageAt DESC")
+    List<Conversation> findInbox(@Param("userId") Long userId);
+
+    /**
+     * Conversations by id with both participants, newest activity first
+     */
+    @Query("SELECT c FROM Conversation c JOIN FETCH c.user1 JOIN FETCH c.user2 " +
+            "WHERE c.id IN :ids ORDER BY c.lastMessageAt DESC")
+    List<Conversation> findAllWithParticipants(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Partners of all the user's conversations as id/username/avatar projections
+     */
+    @Query("SELECT new org.gwozdz1uu.heyobackend.dto.UserSnapshot(p.id, p.username, p.avatarUrl) " +
+            "FROM Conversation c JOIN User p ON (p = c.user1 OR p = c.user2) AND p.id <> :userId " +
+            "WHERE c.user1.id = :userId OR c.user2.id = :userId")
+    List<UserSnapshot> findPartnerSnapshots(@Param("userId") Long userId);
+
+    /**
+     * Create the conversation row if it does not exist yet.
+     * Relies on uk_conversations_users, so concurrent first messages cannot create duplicates.
+     * The no-op ON DUPLICATE KEY UPDATE locks an existing row exclusively; INSERT IGNORE would take a
+     * shared lock, and two senders upgrading it for the locking read that follows deadlock.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO conversations " +
+            "(user1_id, user2_id, user1_unread_count, user2_unread_count, seq, created_at) " +
+            "VALUES (:user1Id, :user2Id, 0, 0, 0, NOW()) " +
+            "ON DUPLICATE KEY UPDATE id = id", nativeQuery = true)
+    void insertIfAbsent(@Param("user1Id") Long user1Id, @Param("user2Id") Long user2Id);
+
+    /**
+     * Reserve the next sequence numbers of a conversation. The row stays locked until commit,
+     * so sequence order within a conversation matches commit order.
+     */
+    @Modifying
+    @Query("UPDATE Conversation c SET c.seq = c.seq + :count WHERE c.id = :conversationId")
+    void advanceSeq(@Param("conversationId") Long conversationId, @Param("count") int count);
+
+    @Query("SELECT c.seq FROM Conversation c WHERE c.id = :conversationId")
+    long findSeq(@Param("conversationId") Long conversationId);
+
+    /**
+     * Move the summary to a newly sent message and bump the receiver's unread counter
+     */
+    @Modifying
+    @Query("UPDATE Conversation c SET " +
+            "c.lastMessageId = :messageId, " +
+            "c.lastMessagePreview = :preview, " +
+            "c.lastMessageAt = :sentAt, " +
+            "c.user1UnreadCount = c.user1UnreadCount + CASE WHEN c.user1.id = :receiverId THEN 1 ELSE 0 END, " +
+            "c.user2UnreadCount = c.user2UnreadCount + CASE WHEN c.user2.id = :receiverId THEN 1 ELSE 0 END " +
+            "WHERE c.id = :conversationId")
+    void recordMessage(@Param("conversationId") Long conversationId,
+                       @Param("messageId") Long messageId,
+                       @Param("preview") String preview,
+                       @Param("sentAt") LocalDateTime sentAt,
+                       @Param("receiverId") Long receiverId);
+
+    /**
+     * Apply a batch of messages to the summary: last message of the batch plus unread increments per side
+     */
+    @Modifying
+    @Query("UPDATE Conversation c SET " +
+            "c.lastMessageId = :messageId, " +
+            "c.lastMessagePreview = :preview, " +
+            "c.lastMessageAt = :sentAt, " +
+            "c.user1UnreadCount = c.user1UnreadCount + :user1Unread, " +
+            "c.user2UnreadCount = c.user2UnreadCount + :user2Unread " +
+            "WHERE c.id = :conversationId")
+    void recordMessages(@Param("conversationId") Long conversationId,
+                        @Param("messageId") Long messageId,
+                        @Param("preview") String preview,
+                        @Param("sentAt") LocalDateTime sentAt,
+                        @Param("user1Unread") int user1Unread,
+                        @Param("user2Unread") int user2Unread);
+
+    /**
+     * Mark the conversation as read by the given user: move their watermark to the last message
+     * and reset their unread counter. A single-row write, however many messages were unread.
+     * Bumps seq so the partner picks up the new watermark on their next sync.
+     */
+    @Modifying
+    @Query("UPDATE Conversation c SET " +
+            "c.seq = c.seq + 1, " +
+            "c.user1LastReadId = CASE WHEN c.user1.id = :userId THEN c.lastMessageId ELSE c.user1LastReadId END, " +
+            "c.user2LastReadId = CASE WHEN c.user2.id = :userId THEN c.lastMessageId ELSE c.user2LastReadId END, " +
+            "c.user1UnreadCount = CASE WHEN c.user1.id = :userId THEN 0 ELSE c.user1UnreadCount END, " +
+            "c.user2UnreadCount = CASE WHEN c.user2.id = :userId THEN 0 ELSE c.user2UnreadCount END " +
+            "WHERE c.id = :conversationId")
+    void markRead(@Param("conversationId") Long conversationId, @Param("userId") Long userId);
+}
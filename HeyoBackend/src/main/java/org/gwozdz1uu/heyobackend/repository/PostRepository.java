@@ -2,14 +2,19 @@ package org.gwozdz1uu.heyobackend.repository;
 
 import org.gwozdz1uu.heyobackend.model.Post;
 import org.gwozdz1uu.heyobackend.model.User;
+import org.gwozdz1uu.heyobackend.post.dto.PostDTO;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface PostRepository extends JpaRepository<Post, Long> {
@@ -21,4 +26,85 @@ public interface PostRepository extends JpaRepository<Post, Long> {
     
     @Query("SELECT p FROM Post p WHERE p.author.id = :userId ORDER BY p.createdAt DESC")
     Page<Post> findByAuthorIdOrderByCreatedAtDesc(@Param("userId") Long userId, Pageable pageable);
+
+    /**
+     * Post fields, author id/username/avatar and counters in one row, without managed entities.
+     * likedByCurrentUser is left false for the caller to fill in.
+     */
+    String POST_DTO = "SELECT new org.gwozdz1uu.heyobackend.post.dto.PostDTO(" +
+            "p.id, a.id, a.username, a.avatarUrl, p.content, p.imageUrl, p.likesCount, p.commentsCount, false, p.createdAt) " +
+            "FROM Post p JOIN p.author a ";
+
+    @Query(POST_DTO + "WHERE p.id = :postId")
+    Optional<PostDTO> findDTOById(@Param("postId") Long postId);
+
+    @Query(POST_DTO + "WHERE p.id IN :postIds")
+    List<PostDTO> findDTOsByIdIn(@Param("postIds") Collection<Long> postIds);
+
+    @Query(value = POST_DTO + "WHERE p.author.id = :userId ORDER BY p.createdAt DESC",
+            countQuery = "SELECT COUNT(p) FROM Post p WHERE p.author.id = :userId")
+    Page<PostDTO> findDTOsByAuthorId(@Param("userId") Long userId, Pageable pageable);
+
+    /**
+     * A user's newest posts, from idx_posts_author_created_at without a count query
+     */
+    @Query(POST_DTO + "WHERE p.author.id = :userId ORDER BY p.createdAt DESC, p.id DESC")
+    List<PostDTO> findLatestDTOsByAuthorId(@Param("userId") Long userId, Pageable pageable);
+
+    /**
+     * A user's posts after a (createdAt, id) cursor - a range read on idx_posts_author_created_at
+     */
+    @Query(POST_DTO + "WHERE p.author.id = :userId " +
+            "AND (p.createdAt < :createdAt OR (p.createdAt = :createdAt AND p.id < :id)) " +
+            "ORDER BY p.createdAt DESC, p.id DESC")
+    List<PostDTO> findDTOsByAuthorIdBefore(@Param("userId") Long userId, @Param("createdAt") LocalDateTime createdAt,
+                                           @Param("id") Long id, Pageable pageable);
+
+    /**
+     * Post ids by any of the authors below a post id, newest first. The ids of all those authors' posts
+     * below the cursor come from idx_posts_author_created_at, but the index orders them by author, so
+     * they are sorted (a filesort keeping the top page) - meant only for the few authors fanned out on read.
+     */
+    @Query("SELECT p.id FROM Post p WHERE p.author.id IN :authorIds AND p.id < :before ORDER BY p.id DESC")
+    List<Long> findIdsByAuthorIdIn(@Param("authorIds") Collection<Long> authorIds, @Param("before") Long before, Pageable pageable);
+
+    @Query("SELECT COUNT(p) FROM Post p WHERE p.author.id IN :authorIds")
+    long countByAuthorIdIn(@Param("authorIds") Collection<Long> authorIds);
+
+    /**
+     * Primary key probe on post_likes instead of loading every liker of the post
+     */
+    @Query("SELECT COUNT(u) > 0 FROM Post p JOIN p.likes u WHERE p.id = :postId AND u.id = :userId")
+    boolean existsLike(@Param("postId") Long postId, @Param("userId") Long userId);
+
+    /**
+     * Which of the posts the user has liked, from idx_post_likes_user
+     */
+    @Query(value = "SELECT post_id FROM post_likes WHERE user_id = :userId AND post_id IN (:postIds)", nativeQuery = true)
+    List<Long> findLikedPostIds(@Param("userId") Long userId, @Param("postIds") Collection<Long> postIds);
+
+    /**
+     * Returns 1 if the like was added, 0 if it already existed
+     */
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO post_likes (post_id, user_id) VALUES (:postId, :userId)", nativeQuery = true)
+    int addLike(@Param("postId") Long postId, @Param("userId") Long userId);
+
+    /**
+     * Returns 1 if the like was removed, 0 if there was none
+     */
+    @Modifying
+    @Query(value = "DELETE FROM post_likes WHERE post_id = :postId AND user_id = :userId", nativeQuery = true)
+    int removeLike(@Param("postId") Long postId, @Param("userId") Long userId);
+
+    @Modifying
+    @Query("UPDATE Post p SET p.likesCount = p.likesCount + :delta WHERE p.id = :postId")
+    void incrementLikesCount(@Param("postId") Long postId, @Param("delta") int delta);
+
+    @Modifying
+    @Query("UPDATE Post p SET p.commentsCount = p.commentsCount + :delta WHERE p.id = :postId")
+    void incrementCommentsCount(@Param("postId") Long postId, @Param("delta") int delta);
+
+    @Query("SELECT p.likesCount FROM Post p WHERE p.id = :postId")
+    int findLikesCount(@Param("postId") Long postId);
 }
@@ -0,0 +1,72 @@
+package org.gwozdz1uu.heyobackend.repository;
+
+import org.gwozdz1uu.heyobackend.model.TimelineEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface TimelineEntryRepository extends JpaRepository<TimelineEntry, TimelineEntry.Key> {
+
+    /**
+     * Pushes a new post into the author's timeline and every friend's, in one statement
+     */
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO timeline_entries (user_id, post_id, author_id) " +
+            "SELECT p.author_id, p.id, p.author_id FROM posts p WHERE p.id = :postId " +
+            "UNION ALL SELECT uf.friend_id, p.id, p.author_id FROM posts p " +
+            "JOIN user_friends uf ON uf.user_id = p.author_id WHERE p.id = :postId",
+            nativeQuery = true)
+    void fanOut(@Param("postId") Long postId);
+
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO timeline_entries (user_id, post_id, author_id) " +
+            "VALUES (:userId, :postId, :authorId)", nativeQuery = true)
+    void insert(@Param("userId") Long userId, @Param("postId") Long postId, @Param("authorId") Long authorId);
+
+    /**
+     * Copies an author's most recent posts into a user's timeline, e.g. for a new friend
+     */
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO timeline_entries (user_id, post_id, author_id) " +
+            "SELECT :userId, p.id, p.author_id FROM posts p WHERE p.author_id = :authorId " +
+            "ORDER BY p.id DESC LIMIT :limit", nativeQuery = true)
+    void backfill(@Param("userId") Long userId, @Param("authorId") Long authorId, @Param("limit") int limit);
+
+    /**
+     * Copies an author's most recent posts into every friend's timeline, e.g. when the author is
+     * fanned out on write again
+     */
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO timeline_entries (user_id, post_id, author_id) " +
+            "SELECT uf.friend_id, p.id, p.author_id FROM user_friends uf " +
+            "JOIN (SELECT id, author_id FROM posts WHERE author_id = :authorId ORDER BY id DESC LIMIT :limit) p " +
+            "ON p.author_id = uf.user_id WHERE uf.user_id = :authorId", nativeQuery = true)
+    void backfillFriends(@Param("authorId") Long authorId, @Param("limit") int limit);
+
+    @Modifying
+    @Query("DELETE FROM TimelineEntry t WHERE t.userId = :userId AND t.authorId = :authorId")
+    void deleteByUserIdAndAuthorId(@Param("userId") Long userId, @Param("authorId") Long authorId);
+
+    /**
+     * Post ids in a user's timeline below a post id, newest first - a primary key range scan
+     */
+    @Query("SELECT t.postId FROM TimelineEntry t WHERE t.userId = :userId AND t.postId < :before " +
+            "ORDER BY t.postId DESC")
+    List<Long> findPostIds(@Param("userId") Long userId, @Param("before") Long before, Pageable pageable);
+
+    @Query("SELECT t.postId FROM TimelineEntry t WHERE t.userId = :userId AND t.postId < :before " +
+            "AND t.authorId NOT IN :authorIds ORDER BY t.postId DESC")
+    List<Long> findPostIdsExcludingAuthors(@Param("userId") Long userId, @Param("authorIds") Collection<Long> authorIds,
+                                           @Param("before") Long before, Pageable pageable);
+
+    long countByUserId(Long userId);
+
+    long countByUserIdAndAuthorIdNotIn(Long userId, Collection<Long> authorIds);
+}
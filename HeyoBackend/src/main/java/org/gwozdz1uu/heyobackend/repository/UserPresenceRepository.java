@@ -0,0 +1,115 @@
+package org.gwozdz1uu.heyobackend.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.gwozdz1uu.heyobackend.service.PresenceService.PresenceUpdate;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Batched writes of the presence columns on users.
+ * Only is_online / last_seen are touched, so flushes never overwrite profile changes.
+ * Each node records its own users in user_presence_nodes and is_online is derived from all
+ * nodes' rows, so one node going offline or restarting does not clear users of another.
+ */
+@Repository
+@RequiredArgsConstructor
+public class UserPresenceRepository {
+
+    private static final String INSERT_NODE_USER_SQL =
+            "INSERT IGNORE INTO user_presence_nodes (user_id, node_id) VALUES (?, ?)";
+
+    private static final String DELETE_NODE_USER_SQL =
+            "DELETE FROM user_presence_nodes WHERE user_id = ? AND node_id = ?";
+
+    private static final String UPDATE_PRESENCE_SQL =
+            "UPDATE users SET is_online = EXISTS (SELECT 1 FROM user_presence_nodes p WHERE p.user_id = ?), " +
+            "last_seen = COALESCE(?, last_seen) WHERE id = ?";
+
+    private static final String ONLINE_ON_OTHER_NODE_SQL =
+            "SELECT EXISTS (SELECT 1 FROM user_presence_nodes WHERE user_id = ? AND node_id <> ?)";
+
+    private static final String HEARTBEAT_SQL =
+            "INSERT INTO presence_nodes (node_id, heartbeat_at) VALUES (?, ?) " +
+            "ON DUPLICATE KEY UPDATE heartbeat_at = ?";
+
+    private static final String FIND_EXPIRED_NODES_SQL =
+            "SELECT node_id FROM presence_nodes WHERE heartbeat_at < ?";
+
+    private static final String DELETE_NODE_USERS_SQL =
+            "DELETE FROM user_presence_nodes WHERE node_id = ?";
+
+    private static final String DELETE_NODE_SQL =
+            "DELETE FROM presence_nodes WHERE node_id = ?";
+
+    private static final String RESET_ORPHANED_SQL =
+            "UPDATE users SET is_online = FALSE, last_seen = ? WHERE is_online = TRUE " +
+            "AND NOT EXISTS (SELECT 1 FROM user_presence_nodes p WHERE p.user_id = users.id)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Transactional
+    public void updatePresence(String nodeId, List<PresenceUpdate> updates) {
+        jdbcTemplate.batchUpdate(INSERT_NODE_USER_SQL, updates.stream()
+                .filter(PresenceUpdate::isOnline)
+                .map(update -> new Object[]{update.getUserId(), nodeId})
+                .toList());
+        jdbcTemplate.batchUpdate(DELETE_NODE_USER_SQL, updates.stream()
+                .filter(update -> !update.isOnline())
+                .map(update -> new Object[]{update.getUserId(), nodeId})
+                .toList());
+        jdbcTemplate.batchUpdate(UPDATE_PRESENCE_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                PresenceUpdate update = updates.get(i);
+                ps.setLong(1, update.getUserId());
+                // Going online keeps the previous last_seen
+                ps.setTimestamp(2, update.isOnline() ? null : Timestamp.valueOf(update.getAt()));
+                ps.setLong(3, update.getUserId());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return updates.size();
+            }
+        });
+    }
+
+    /**
+     * Whether a node other than the given one has stored a session of the user
+     */
+    public boolean isOnlineOnOtherNode(Long userId, String nodeId) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(ONLINE_ON_OTHER_NODE_SQL, Boolean.class, userId, nodeId));
+    }
+
+    public void heartbeat(String nodeId) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.update(HEARTBEAT_SQL, nodeId, now, now);
+    }
+
+    /**
+     * Nodes that have not sent a heartbeat since the given time
+     */
+    public List<String> findExpiredNodes(LocalDateTime before) {
+        return jdbcTemplate.queryForList(FIND_EXPIRED_NODES_SQL, String.class, Timestamp.valueOf(before));
+    }
+
+    /**
+     * Forget a node's sessions and mark users no other node lists as offline
+     *
+     * @return number of users marked offline
+     */
+    @Transactional
+    public int removeNode(String nodeId) {
+        jdbcTemplate.update(DELETE_NODE_USERS_SQL, nodeId);
+        jdbcTemplate.update(DELETE_NODE_SQL, nodeId);
+        return jdbcTemplate.update(RESET_ORPHANED_SQL, Timestamp.valueOf(LocalDateTime.now()));
+    }
+}
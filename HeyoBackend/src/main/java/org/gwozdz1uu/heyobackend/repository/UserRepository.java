@@ -1,11 +1,17 @@
 package org.gwozdz1uu.heyobackend.repository;
 
+import org.gwozdz1uu.heyobackend.dto.UserSnapshot;
+import org.gwozdz1uu.heyobackend.dto.UserSummary;
 import org.gwozdz1uu.heyobackend.model.User;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -22,4 +28,50 @@ public interface UserRepository extends JpaRepository<User, Long> {
      */
     @Query("SELECT u FROM User u WHERE u.username = :identifier OR u.email = :identifier")
     Optional<User> findByUsernameOrEmail(@Param("identifier") String identifier);
+
+    /**
+     * Single primary key probe on user_friends instead of loading the whole friend set
+     */
+    @Query("SELECT COUNT(f) > 0 FROM User u JOIN u.friends f WHERE u.id = :userId AND f.id = :friendId")
+    boolean existsFriendship(@Param("userId") Long userId, @Param("friendId") Long friendId);
+
+    /**
+     * Friend ids straight from user_friends, without loading the friend entities
+     */
+    @Query("SELECT f.id FROM User u JOIN u.friends f WHERE u.id = :userId")
+    List<Long> findFriendIds(@Param("userId") Long userId);
+
+    @Query("SELECT u.friendsCount FROM User u WHERE u.id = :userId")
+    int findFriendsCount(@Param("userId") Long userId);
+
+    @Modifying
+    @Query("UPDATE User u SET u.friendsCount = u.friendsCount + :delta WHERE u.id IN :userIds")
+    void incrementFriendsCount(@Param("userIds") Collection<Long> userIds, @Param("delta") int delta);
+
+    /**
+     * Friends who themselves have more than maxFriends friends; their posts are not fanned out on write
+     */
+    @Query("SELECT f.id FROM User u JOIN u.friends f WHERE u.id = :userId AND f.friendsCount > :maxFriends")
+    List<Long> findFriendIdsWithMoreFriendsThan(@Param("userId") Long userId, @Param("maxFriends") int maxFriends);
+
+    /**
+     * Friends as id/username/avatar projections, without loading the entities
+     */
+    @Query("SELECT new org.gwozdz1uu.heyobackend.dto.UserSnapshot(f.id, f.username, f.avatarUrl) " +
+            "FROM User u JOIN u.friends f WHERE u.id = :userId")
+    List<UserSnapshot> findFriendSnapshots(@Param("userId") Long userId);
+
+    /**
+     * Friends with no conversation row yet, as an anti-join on the conversations read model.
+     * Conversations store the lower user id as user1, so each branch is a unique-key probe.
+     */
+    @Query(value = "SELECT new org.gwozdz1uu.heyobackend.dto.UserSummary(f.id, f.username, f.email, f.avatarUrl, f.lastSeen) " +
+            "FROM User u JOIN u.friends f WHERE u.id = :userId AND NOT EXISTS (" +
+            "SELECT c.id FROM Conversation c WHERE (c.user1.id = :userId AND c.user2.id = f.id) " +
+            "OR (c.user1.id = f.id AND c.user2.id = :userId)) " +
+            "ORDER BY f.username",
+            countQuery = "SELECT COUNT(f) FROM User u JOIN u.friends f WHERE u.id = :userId AND NOT EXISTS (" +
+                    "SELECT c.id FROM Conversation c WHERE (c.user1.id = :userId AND c.user2.id = f.id) " +
+                    "OR (c.user1.id = f.id AND c.user2.id = :userId))")
+    Page<UserSummary> findFriendsWithoutConversation(@Param("userId") Long userId, Pageable pageable);
 }
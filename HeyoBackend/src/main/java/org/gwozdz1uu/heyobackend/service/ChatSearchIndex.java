@@ -0,0 +1,431 @@
+package org.gwozdz1uu.heyobackend.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.LockObtainFailedException;
+import org.apache.lucene.util.QueryBuilder;
+import org.gwozdz1uu.heyobackend.dto.IndexedChatMessage;
+import org.gwozdz1uu.heyobackend.repository.ChatSearchRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedded full-text index of chat messages (Lucene on local disk).
+ *
+ * Messages are queued once their transaction commits and added by a single indexer thread,
+ * so sending never waits for the index. New documents become searchable on the next refresh,
+ * at most refresh-interval-ms apart, which keeps the indexing lag bounded while the queue keeps up.
+ * Every document is tagged with its conversation (user pair) and both participants, and every
+ * query is filtered to the caller's conversations.
+ *
+ * The queue is bounded: when it overflows the message is left out of the index (never out of
+ * the database) and counted as dropped; a rebuild from the database brings it back.
+ *
+ * Every index commit records the highest message id indexed so far. Messages indexed since the
+ * last commit are lost if the process dies, so on startup everything above that id is indexed
+ * again from the database.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChatSearchIndex {
+
+    private static final String FIELD_ID = "id";
+    private static final String FIELD_CONVERSATION = "conversation";
+    private static final String FIELD_PARTICIPANT = "participant";
+    private static final String FIELD_CONTENT = "content";
+    private static final long POLL_TIMEOUT_MS = 100;
+    private static final long COMMIT_INTERVAL_MS = 30_000;
+    private static final long SHUTDOWN_TIMEOUT_MS = 10_000;
+    private static final int REBUILD_PAGE_SIZE = 1000;
+    private static final String COMMIT_MAX_ID = "maxId";
+    // Sends commit, and so reach the queue, slightly out of id order; the catch-up re-reads that margin
+    private static final long CATCH_UP_OVERLAP = 1000;
+
+    private final ChatSearchRepository chatSearchRepository;
+
+    @Value("${app.chat.search.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.chat.search.index-dir:data/chat-index}")
+    private String indexDir;
+
+    @Value("${app.chat.search.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${app.chat.search.refresh-interval-ms:1000}")
+    private long refreshIntervalMs;
+
+    @Value("${app.chat.search.max-lag-ms:10000}")
+    private long maxLagMs;
+
+    @Value("${app.chat.search.rebuild-on-startup:false}")
+    private boolean rebuildOnStartup;
+
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private final AtomicLong maxIndexedId = new AtomicLong();
+
+    private BlockingQueue<QueuedMessage> queue;
+    private Directory directory;
+    private IndexWriter writer;
+    private SearcherManager searcherManager;
+    private Thread indexer;
+    private volatile boolean running;
+    // Queue time of the oldest document added but not yet visible to searches, 0 when there is none
+    private volatile long oldestUnrefreshedAt;
+    // Highest message id of the last commit, null for an index written before commits recorded it
+    private Long committedMaxId;
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        directory = FSDirectory.open(Path.of(indexDir));
+        try {
+            writer = new IndexWriter(directory, new IndexWriterConfig(analyzer)
+                    .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+        } catch (LockObtainFailedException e) {
+            // Another process (or application context) owns this index directory - run without search
+            log.error("[ChatSearch] Index at {} is locked, message search disabled", indexDir);
+            directory.close();
+            return;
+        }
+        committedMaxId = committedMaxId();
+        if (committedMaxId != null) {
+            maxIndexedId.set(committedMaxId);
+        }
+        searcherManager = new SearcherManager(writer, null);
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        indexer = new Thread(this::indexLoop, "chat-search-indexer");
+        indexer.setDaemon(true);
+        indexer.start();
+        log.info("[ChatSearch] Index opened at {} ({} documents)", indexDir, writer.getDocStats().numDocs);
+    }
+
+    /**
+     * Build the index from the database on the first start, or on every start with rebuild-on-startup.
+     * Otherwise index the messages sent after the last commit, which a crash may have lost.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfNeeded() {
+        if (!isEnabled()) {
+            return;
+        }
+        int documents = writer.getDocStats().numDocs;
+        if (rebuildOnStartup || (documents == 0 && chatSearchRepository.hasMessages())
+                || (documents > 0 && committedMaxId == null)) {
+            rebuildAsync();
+        } else if (committedMaxId != null) {
+            reindexAsync(Math.max(0, committedMaxId - CATCH_UP_OVERLAP));
+        }
+    }
+
+    @PreDestroy
+    void stop() throws IOException, InterruptedException {
+        if (indexer == null) {
+            return;
+        }
+        running = false;
+        indexer.join(SHUTDOWN_TIMEOUT_MS);
+        searcherManager.close();
+        // Closing commits everything indexed so far
+        writer.setLiveCommitData(commitData());
+        writer.close();
+        directory.close();
+    }
+
+    public boolean isEnabled() {
+        return enabled && running;
+    }
+
+    /**
+     * Queue messages for indexing once the current transaction commits, or right away outside a transaction.
+     * Rolled back messages therefore never reach the index.
+     */
+    public void indexAfterCommit(List<IndexedChatMessage> messages) {
+        if (!isEnabled() || messages.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(messages);
+                }
+            });
+        } else {
+            enqueue(messages);
+        }
+    }
+
+    /**
+     * Ids of the user's messages matching the text, best match first.
+     * Restricted to the conversation with partnerId when it is given.
+     */
+    public List<Long> search(Long userId, Long partnerId, String text, int limit) {
+        if (!isEnabled()) {
+            throw new RuntimeException("Message search is disabled");
+        }
+        Query match = new QueryBuilder(analyzer).createBooleanQuery(FIELD_CONTENT, text, BooleanClause.Occur.MUST);
+        if (match == null) {
+            // Nothing searchable left after analysis (blank or punctuation only)
+            return List.of();
+        }
+
+        BooleanQuery.Builder query = new BooleanQuery.Builder()
+                .add(match, BooleanClause.Occur.MUST)
+                .add(new TermQuery(new Term(FIELD_PARTICIPANT, userId.toString())), BooleanClause.Occur.FILTER);
+        if (partnerId != null) {
+            query.add(new TermQuery(new Term(FIELD_CONVERSATION, pairKey(userId, partnerId))), BooleanClause.Occur.FILTER);
+        }
+
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                TopDocs top = searcher.search(query.build(), limit);
+                StoredFields storedFields = searcher.storedFields();
+                List<Long> ids = new ArrayList<>(top.scoreDocs.length);
+                for (ScoreDoc hit : top.scoreDocs) {
+                    ids.add(Long.valueOf(storedFields.document(hit.doc).get(FIELD_ID)));
+                }
+                return ids;
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Message search failed", e);
+        }
+    }
+
+    /**
+     * Re-index every message from the database on a background thread.
+     * Live indexing carries on meanwhile; documents are keyed by message id, so nothing is duplicated.
+     *
+     * @return false if the index is disabled or a rebuild is already running
+     */
+    public boolean rebuildAsync() {
+        return reindexAsync(0);
+    }
+
+    private boolean reindexAsync(long afterId) {
+        if (!isEnabled() || !rebuilding.compareAndSet(false, true)) {
+            return false;
+        }
+        Thread rebuilder = new Thread(() -> {
+            try {
+                reindex(afterId);
+            } finally {
+                rebuilding.set(false);
+            }
+        }, "chat-search-rebuild");
+        rebuilder.setDaemon(true);
+        rebuilder.start();
+        return true;
+    }
+
+    void rebuild() {
+        reindex(0);
+    }
+
+    /**
+     * Index every message with an id above afterId; 0 rebuilds the whole index
+     */
+    void reindex(long afterId) {
+        long started = System.currentTimeMillis();
+        long droppedBefore = dropped.get();
+        try {
+            long lastId = afterId;
+            long count = 0;
+            List<IndexedChatMessage> page;
+            while (!(page = chatSearchRepository.findAfter(lastId, REBUILD_PAGE_SIZE)).isEmpty()) {
+                for (IndexedChatMessage message : page) {
+                    writer.updateDocument(new Term(FIELD_ID, message.getId().toString()), toDocument(message));
+                }
+                lastId = page.get(page.size() - 1).getId();
+                maxIndexedId.accumulateAndGet(lastId, Math::max);
+                count += page.size();
+            }
+            commit();
+            searcherManager.maybeRefresh();
+            if (afterId == 0) {
+                // Anything dropped before the rebuild started has been re-read from the database
+                dropped.addAndGet(-droppedBefore);
+                log.info("[ChatSearch] Rebuilt index from {} messages in {} ms", count, System.currentTimeMillis() - started);
+            } else {
+                log.info("[ChatSearch] Indexed {} messages after id {} in {} ms", count, afterId, System.currentTimeMillis() - started);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("[ChatSearch] Indexing messages after id {} failed", afterId, e);
+        }
+    }
+
+    /**
+     * Age of the oldest message accepted for indexing that is not searchable yet
+     */
+    public long getIndexingLagMs() {
+        long now = System.currentTimeMillis();
+        long lag = 0;
+        QueuedMessage head = queue == null ? null : queue.peek();
+        if (head != null) {
+            lag = now - head.queuedAt();
+        }
+        long unrefreshed = oldestUnrefreshedAt;
+        if (unrefreshed != 0) {
+            lag = Math.max(lag, now - unrefreshed);
+        }
+        return lag;
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", isEnabled());
+        if (isEnabled()) {
+            status.put("documents", writer.getDocStats().numDocs);
+            status.put("pending", queue.size());
+            status.put("lagMs", getIndexingLagMs());
+            status.put("maxLagMs", maxLagMs);
+            status.put("dropped", dropped.get());
+            status.put("rebuilding", rebuilding.get());
+        }
+        return status;
+    }
+
+    private void enqueue(List<IndexedChatMessage> messages) {
+        long now = System.currentTimeMillis();
+        for (IndexedChatMessage message : messages) {
+            if (!queue.offer(new QueuedMessage(message, now))) {
+                // Never block the send path; a rebuild restores what was left out
+                long total = dropped.incrementAndGet();
+                log.warn("[ChatSearch] Index queue full, message {} not indexed ({} dropped)", message.getId(), total);
+            }
+        }
+    }
+
+    private void indexLoop() {
+        long lastRefresh = System.currentTimeMillis();
+        long lastCommit = lastRefresh;
+        while (running || !queue.isEmpty()) {
+            try {
+                QueuedMessage first = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    List<QueuedMessage> batch = new ArrayList<>();
+                    batch.add(first);
+                    queue.drainTo(batch);
+                    for (QueuedMessage queued : batch) {
+                        IndexedChatMessage message = queued.message();
+                        writer.updateDocument(new Term(FIELD_ID, message.getId().toString()), toDocument(message));
+                        maxIndexedId.accumulateAndGet(message.getId(), Math::max);
+                    }
+                    if (oldestUnrefreshedAt == 0) {
+                        oldestUnrefreshedAt = first.queuedAt();
+                    }
+                }
+
+                // Refresh as soon as the queue is idle, and at least once per interval under load
+                long now = System.currentTimeMillis();
+                if (oldestUnrefreshedAt != 0 && (first == null || now - lastRefresh >= refreshIntervalMs)) {
+                    searcherManager.maybeRefresh();
+                    long lag = now - oldestUnrefreshedAt;
+                    oldestUnrefreshedAt = 0;
+                    lastRefresh = now;
+                    if (lag > maxLagMs) {
+                        log.warn("[ChatSearch] Indexing lag {} ms exceeds {} ms", lag, maxLagMs);
+                    }
+                }
+                if (now - lastCommit >= COMMIT_INTERVAL_MS && writer.hasUncommittedChanges()) {
+                    commit();
+                    lastCommit = now;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("[ChatSearch] Indexer interrupted with {} pending messages", queue.size());
+                return;
+            } catch (IOException | RuntimeException e) {
+                log.error("[ChatSearch] Indexing failed", e);
+            }
+        }
+    }
+
+    /**
+     * Commit with the highest indexed id; it is read after documents are added, so it never runs ahead of them
+     */
+    private void commit() throws IOException {
+        writer.setLiveCommitData(commitData());
+        writer.commit();
+    }
+
+    private Iterable<Map.Entry<String, String>> commitData() {
+        return Map.of(COMMIT_MAX_ID, Long.toString(maxIndexedId.get())).entrySet();
+    }
+
+    private Long committedMaxId() {
+        Iterable<Map.Entry<String, String>> data = writer.getLiveCommitData();
+        if (data != null) {
+            for (Map.Entry<String, String> entry : data) {
+                if (COMMIT_MAX_ID.equals(entry.getKey())) {
+                    return Long.valueOf(entry.getValue());
+                }
+            }
+        }
+        return null;
+    }
+
+    private Document toDocument(IndexedChatMessage message) {
+        Document document = new Document();
+        document.add(new StringField(FIELD_ID, message.getId().toString(), Field.Store.YES));
+        document.add(new StringField(FIELD_CONVERSATION, pairKey(message.getSenderId(), message.getReceiverId()), Field.Store.NO));
+        document.add(new StringField(FIELD_PARTICIPANT, message.getSenderId().toString(), Field.Store.NO));
+        document.add(new StringField(FIELD_PARTICIPANT, message.getReceiverId().toString(), Field.Store.NO));
+        document.add(new TextField(FIELD_CONTENT, message.getContent(), Field.Store.NO));
+        return document;
+    }
+
+    private String pairKey(Long userId, Long partnerId) {
+        return Math.min(userId, partnerId) + ":" + Math.max(userId, partnerId);
+    }
+
+    private record QueuedMessage(IndexedChatMessage message, long queuedAt) {
+    }
+}
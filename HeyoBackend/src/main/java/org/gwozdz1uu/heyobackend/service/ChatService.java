@@ -2,12 +2,26 @@ package org.gwozdz1uu.heyobackend.service;
 
 import lombok.RequiredArgsConstructor;
 import org.gwozdz1uu.heyobackend.dto.ChatMessageDTO;
+import org.gwozdz1uu.heyobackend.dto.ChatSyncDTO;
 import org.gwozdz1uu.heyobackend.dto.ConversationDTO;
+import org.gwozdz1uu.heyobackend.dto.IndexedChatMessage;
+import org.gwozdz1uu.heyobackend.dto.PendingChatMessage;
+import org.gwozdz1uu.heyobackend.dto.UserSnapshot;
 import org.gwozdz1uu.heyobackend.model.ChatMessage;
+import org.gwozdz1uu.heyobackend.model.ChatUnreadCounter;
+import org.gwozdz1uu.heyobackend.model.Conversation;
 import org.gwozdz1uu.heyobackend.model.Notification;
 import org.gwozdz1uu.heyobackend.model.User;
 import org.gwozdz1uu.heyobackend.notification.service.NotificationService;
+import org.gwozdz1uu.heyobackend.repository.ChatBatchRepository;
 import org.gwozdz1uu.heyobackend.repository.ChatMessageRepository;
+import org.gwozdz1uu.heyobackend.repository.ChatUnreadCounterRepository;
+import org.gwozdz1uu.heyobackend.repository.ConversationRepository;
+import org.gwozdz1uu.heyobackend.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -18,130 +32,369 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class ChatService {
 
+    private static final int PREVIEW_LENGTH = 255;
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int SYNC_MESSAGE_LIMIT = 100;
+    private static final int CONVERSATION_SEARCH_LIMIT = 50;
+
     private final ChatMessageRepository chatMessageRepository;
+    private final ConversationRepository conversationRepository;
+    private final ChatUnreadCounterRepository chatUnreadCounterRepository;
+    private final ChatBatchRepository chatBatchRepository;
+    private final UserRepository userRepository;
     private final UserService userService;
     private final NotificationService notificationService;
+    private final PresenceService presenceService;
+    private final ChatSearchIndex chatSearchIndex;
+    private final ConversationSearchIndex conversationSearchIndex;
+    private final ChatSyncLog chatSyncLog;
+
+    @Value("${app.chat.read.legacy-column-sync:false}")
+    private boolean legacyReadColumnSync;
 
+    @Transactional(readOnly = true)
     public List<ConversationDTO> getConversations(User user) {
-        // Get all friends - conversations should include all friends, even without messages
         User currentUser = userService.findById(user.getId());
-        List<User> allFriends = new ArrayList<>(currentUser.getFriends());
-        
-        // Get partners from both directions (where user is sender and where user is receiver)
-        // This ensures we have up-to-date information for users who already have messages
-        List<User> partnersAsReceiver = chatMessageRepository.findConversationPartnersAsReceiver(user);
-        List<User> partnersAsSender = chatMessageRepository.findConversationPartnersAsSender(user);
-        
-        // Combine and deduplicate by user ID - friends take precedence
-        // If a friend already has messages, use their message-based info (for online status, etc.)
-        Map<Long, User> partnersMap = new HashMap<>();
-        // First add all friends
-        allFriends.forEach(f -> partnersMap.put(f.getId(), f));
-        // Then update with message partners (they may have more recent online status)
-        partnersAsReceiver.forEach(p -> partnersMap.put(p.getId(), p));
-        partnersAsSender.forEach(p -> partnersMap.put(p.getId(), p));
-        
-        List<User> partners = new ArrayList<>(partnersMap.values());
-
-        return partners.stream()
-                .map(partner -> {
-                    List<ChatMessage> messages = chatMessageRepository.findConversation(user, partner);
-                    ChatMessage lastMessage = messages.isEmpty() ? null : messages.get(messages.size() - 1);
-                    
-                    long unreadCount = messages.stream()
-                            .filter(m -> m.getReceiver().getId().equals(user.getId()) && !m.isRead())
-                            .count();
-
-                    return ConversationDTO.builder()
-                            .partnerId(partner.getId())
-                            .partnerUsername(partner.getUsername())
-                            .partnerAvatarUrl(partner.getAvatarUrl())
-                            .partnerOnline(partner.isOnline())
-                            .lastMessage(lastMessage != null ? lastMessage.getContent() : null)
-                            .lastMessageAt(lastMessage != null ? lastMessage.getCreatedAt() : null)
-                            .unreadCount((int) unreadCount)
-                            .build();
-                })
-                .sorted(Comparator.comparing(ConversationDTO::getLastMessageAt, 
-                        Comparator.nullsLast(Comparator.reverseOrder())))
-                .collect(Collectors.toList());
+
+        // Conversations with messages come from the read model in one indexed query,
+        // already ordered by last activity - the cost does not depend on message history
+        Map<Long, ConversationDTO> conversations = new LinkedHashMap<>();
+        conversationRepository.findInbox(user.getId()).forEach(conversation -> {
+            ConversationDTO dto = toConversationDTO(conversation, user.getId());
+            conversations.put(dto.getPartnerId(), dto);
+        });
+
+        // Friends without messages are still listed, after all active conversations
+        currentUser.getFriends().stream()
+                .filter(friend -> !conversations.containsKey(friend.getId()))
+                .forEach(friend -> conversations.put(friend.getId(), toEmptyConversationDTO(friend)));
+
+        return new ArrayList<>(conversations.values());
     }
 
     public List<ChatMessageDTO> getConversation(User user, Long partnerId) {
         User partner = userService.findById(partnerId);
+        Conversation conversation = findConversation(user.getId(), partnerId).orElse(null);
         return chatMessageRepository.findConversation(user, partner)
                 .stream()
-                .map(this::toDTO)
+                .map(message -> toDTO(message, conversation))
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Page through a conversation backwards from the given message id (exclusive).
+     * Without a cursor the newest messages are returned. Messages are ordered oldest first,
+     * so the id of the first element is the cursor for the next (older) page.
+     */
+    @Transactional(readOnly = true)
+    public List<ChatMessageDTO> getConversationPage(User user, Long partnerId, Long beforeId, Integer limit) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        Optional<Conversation> conversation = findConversation(user.getId(), partnerId);
+        if (conversation.isEmpty()) {
+            return List.of();
+        }
+
+        Pageable page = PageRequest.of(0, pageSize);
+        List<ChatMessage> messages = beforeId == null
+                ? chatMessageRepository.findLatestInConversation(conversation.get().getId(), page)
+                : chatMessageRepository.findInConversationBefore(conversation.get().getId(), beforeId, page);
+
+        List<ChatMessageDTO> result = messages.stream()
+                .map(message -> toDTO(message, conversation.get()))
+                .collect(Collectors.toList());
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Everything that changed in the user's conversations since the given token: new messages,
+     * moved read watermarks and the updated summaries. The token is a position in the user's
+     * change log, so a reconnect costs one log range read plus one indexed range query per changed
+     * conversation. Without a token only the summaries and a fresh token are returned; a token
+     * the log no longer covers gets the same, with every conversation marked as truncated.
+     */
+    @Transactional(readOnly = true)
+    public ChatSyncDTO sync(User user, String since) {
+        Long known = since == null || since.isBlank() ? null : ChatSyncToken.decode(since);
+        long position = chatSyncLog.position(user.getId());
+        Optional<Map<Long, Long>> changes = known == null
+                ? Optional.empty()
+                : chatSyncLog.changesSince(user.getId(), known, position);
+
+        if (changes.isEmpty()) {
+            List<ConversationDTO> conversations = conversationRepository.findInbox(user.getId()).stream()
+                    .map(conversation -> toConversationDTO(conversation, user.getId()))
+                    .collect(Collectors.toList());
+            return ChatSyncDTO.builder()
+                    .token(ChatSyncToken.encode(position))
+                    .conversations(conversations)
+                    .messages(List.of())
+                    .truncatedConversationIds(known == null
+                            ? List.of()
+                            : conversations.stream().map(ConversationDTO::getId).collect(Collectors.toList()))
+                    .build();
+        }
+
+        Map<Long, Long> fromSeq = changes.get();
+        List<ConversationDTO> conversations = new ArrayList<>();
+        List<ChatMessageDTO> messages = new ArrayList<>();
+        List<Long> truncated = new ArrayList<>();
+        List<Conversation> changed = fromSeq.isEmpty()
+                ? List.of()
+                : conversationRepository.findAllWithParticipants(fromSeq.keySet());
+        for (Conversation conversation : changed) {
+            conversations.add(toConversationDTO(conversation, user.getId()));
+
+            List<ChatMessage> newer = chatMessageRepository.findInConversationSince(
+                    conversation.getId(), fromSeq.get(conversation.getId()) - 1, conversation.getSeq(),
+                    PageRequest.of(0, SYNC_MESSAGE_LIMIT + 1));
+            if (newer.size() > SYNC_MESSAGE_LIMIT) {
+                truncated.add(conversation.getId());
+                newer = newer.subList(0, SYNC_MESSAGE_LIMIT);
+            }
+            List<ChatMessageDTO> page = newer.stream()
+                    .map(message -> toDTO(message, conversation))
+                    .collect(Collectors.toList());
+            Collections.reverse(page);
+            messages.addAll(page);
+        }
+
+        return ChatSyncDTO.builder()
+                .token(ChatSyncToken.encode(position))
+                .conversations(conversations)
+                .messages(messages)
+                .truncatedConversationIds(truncated)
+                .build();
+    }
+
+    /**
+     * Send as the user with the given id, loaded in this transaction - for callers that only hold
+     * a session snapshot of the sender, like the STOMP handlers
+     */
+    @Transactional
+    public ChatMessageDTO sendMessage(Long senderId, Long receiverId, String content) {
+        return sendMessage(userService.findById(senderId), receiverId, content);
+    }
+
     @Transactional
     public ChatMessageDTO sendMessage(User sender, Long receiverId, String content) {
         User receiver = userService.findById(receiverId);
         
         // Check if users are friends (only friends can message each other)
-        User currentUser = userService.findById(sender.getId());
-        if (!currentUser.getFriends().contains(receiver)) {
+        if (!userService.areFriends(sender.getId(), receiverId)) {
             throw new RuntimeException("You can only message your friends");
         }
-        
-        // Check if this is the first message (new chat)
-        List<ChatMessage> existingMessages = chatMessageRepository.findConversation(sender, receiver);
-        boolean isNewChat = existingMessages.isEmpty();
+
+        // First message (new chat) is decided by the read model, not by loading the history
+        Conversation conversation = getOrCreateConversation(sender, receiver);
+        boolean isNewChat = conversation.getLastMessageId() == null;
+        long seq = reserveSeq(conversation.getId(), 1);
+        chatSyncLog.record(conversation, seq);
 
         ChatMessage message = ChatMessage.builder()
+                .conversation(conversation)
+                .seq(seq)
                 .sender(sender)
                 .receiver(receiver)
                 .content(content)
                 .build();
 
         message = chatMessageRepository.save(message);
+        conversationRepository.recordMessage(
+                conversation.getId(),
+                message.getId(),
+                preview(content),
+                message.getCreatedAt(),
+                receiver.getId()
+        );
+        chatUnreadCounterRepository.increment(receiver.getId(), 1);
+        chatSearchIndex.indexAfterCommit(List.of(
+                new IndexedChatMessage(message.getId(), sender.getId(), receiver.getId(), content)));
         
         // Send notification for new message
-        String messageText = sender.getUsername() + " wysłał Ci wiadomość: " + 
-                (content.length() > 50 ? content.substring(0, 50) + "..." : content);
         notificationService.createNotification(
                 receiver,
                 sender,
                 Notification.NotificationType.NEW_MESSAGE,
-                messageText,
+                newMessageText(sender.getUsername(), content),
                 message.getId()
         );
         
         // Send notification for new chat creation
         if (isNewChat) {
-            String chatMessageText = sender.getUsername() + " rozpoczął z Tobą czat";
+            conversationSearchIndex.conversationStarted(UserSnapshot.of(sender), UserSnapshot.of(receiver));
             notificationService.createNotification(
                     receiver,
                     sender,
                     Notification.NotificationType.NEW_CHAT,
-                    chatMessageText,
+                    newChatText(sender.getUsername()),
                     sender.getId()
             );
         }
         
-        return toDTO(message);
+        return toDTO(message, conversation);
     }
 
+    /**
+     * Persist a batch of messages accepted by the write-behind pipeline in one transaction.
+     * Messages are inserted in queue order, so ordering within a conversation is preserved,
+     * and summaries, unread counters and notifications are updated once per batch.
+     *
+     * @return generated message ids, in the same order as the batch
+     */
+    @Transactional
+    public List<Long> persistBatch(List<PendingChatMessage> batch) {
+        Map<String, Conversation> conversations = new LinkedHashMap<>();
+        Set<Long> newConversationIds = new HashSet<>();
+        for (PendingChatMessage message : batch) {
+            Conversation conversation = conversations.computeIfAbsent(
+                    pairKey(message.getSenderId(), message.getReceiverId()),
+                    key -> getOrCreateConversation(message.getSenderId(), message.getReceiverId()));
+            if (conversation.getLastMessageId() == null && newConversationIds.add(conversation.getId())) {
+                conversationSearchIndex.conversationStarted(
+                        UserSnapshot.of(conversation.getUser1()), UserSnapshot.of(conversation.getUser2()));
+            }
+            message.setConversationId(conversation.getId());
+        }
+
+        // Number messages within each conversation in queue order
+        Map<Long, Long> nextSeq = new HashMap<>();
+        for (Conversation conversation : conversations.values()) {
+            int count = (int) batch.stream()
+                    .filter(m -> m.getConversationId().equals(conversation.getId()))
+                    .count();
+            nextSeq.put(conversation.getId(), reserveSeq(conversation.getId(), count) - count + 1);
+        }
+        chatSyncLog.record(new ArrayList<>(conversations.values()), new HashMap<>(nextSeq));
+        for (PendingChatMessage message : batch) {
+            message.setSeq(nextSeq.merge(message.getConversationId(), 1L, Long::sum) - 1);
+        }
+
+        List<Long> ids = chatBatchRepository.insertMessages(batch);
+
+        Map<Long, Integer> lastIndexByConversation = new HashMap<>();
+        Map<Long, Integer> unreadByReceiver = new HashMap<>();
+        List<Notification> notifications = new ArrayList<>();
+        List<IndexedChatMessage> indexed = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            PendingChatMessage message = batch.get(i);
+            indexed.add(new IndexedChatMessage(ids.get(i), message.getSenderId(), message.getReceiverId(), message.getContent()));
+            lastIndexByConversation.put(message.getConversationId(), i);
+            unreadByReceiver.merge(message.getReceiverId(), 1, Integer::sum);
+
+            notifications.add(Notification.builder()
+                    .user(userService.getReference(message.getReceiverId()))
+                    .actor(userService.getReference(message.getSenderId()))
+                    .type(Notification.NotificationType.NEW_MESSAGE)
+                    .message(newMessageText(message.getSenderUsername(), message.getContent()))
+                    .referenceId(ids.get(i))
+                    .build());
+
+            // Only the first message of a brand new conversation announces the chat
+            if (newConversationIds.remove(message.getConversationId())) {
+                notifications.add(Notification.builder()
+                        .user(userService.getReference(message.getReceiverId()))
+                        .actor(userService.getReference(message.getSenderId()))
+                        .type(Notification.NotificationType.NEW_CHAT)
+                        .message(newChatText(message.getSenderUsername()))
+                        .referenceId(message.getSenderId())
+                        .build());
+            }
+        }
+
+        for (Conversation conversation : conversations.values()) {
+            int lastIndex = lastIndexByConversation.get(conversation.getId());
+            PendingChatMessage last = batch.get(lastIndex);
+            Long user1Id = conversation.getUser1().getId();
+            int user1Unread = (int) batch.stream()
+                    .filter(m -> m.getConversationId().equals(conversation.getId()) && m.getReceiverId().equals(user1Id))
+                    .count();
+            int user2Unread = (int) batch.stream()
+                    .filter(m -> m.getConversationId().equals(conversation.getId()) && !m.getReceiverId().equals(user1Id))
+                    .count();
+            conversationRepository.recordMessages(
+                    conversation.getId(),
+                    ids.get(lastIndex),
+                    preview(last.getContent()),
+                    last.getCreatedAt(),
+                    user1Unread,
+                    user2Unread
+            );
+        }
+
+        unreadByReceiver.forEach(chatUnreadCounterRepository::increment);
+        chatBatchRepository.insertNotifications(notifications);
+        chatSearchIndex.indexAfterCommit(indexed);
+        return ids;
+    }
+
+    /**
+     * Mark everything the partner sent so far as read by moving the user's watermark on the conversation.
+     * This is a single-row write, so it does not contend with messages being inserted into the conversation.
+     */
     @Transactional
     public void markAsRead(User user, Long partnerId) {
-        User partner = userService.findById(partnerId);
-        chatMessageRepository.markAsRead(partner, user);
+        // Lock the summary row so a message arriving meanwhile is either covered by the watermark or stays unread
+        conversationRepository.findByParticipantsForUpdate(
+                        Math.min(user.getId(), partnerId),
+                        Math.max(user.getId(), partnerId))
+                .ifPresent(conversation -> {
+                    int unread = conversation.getUnreadCountFor(user.getId());
+                    if (unread > 0) {
+                        conversationRepository.markRead(conversation.getId(), user.getId());
+                        chatSyncLog.record(conversation, conversationRepository.findSeq(conversation.getId()));
+                        chatUnreadCounterRepository.decrement(user.getId(), unread);
+                    }
+                });
+
+        // Compatibility path for consumers still reading chat_messages.is_read
+        if (legacyReadColumnSync) {
+            chatMessageRepository.markAsRead(userService.getReference(partnerId), userService.getReference(user.getId()));
+        }
     }
 
+    /**
+     * Total unread messages across all conversations - a primary key lookup on the maintained counter
+     */
     public int getUnreadCount(User user) {
-        return chatMessageRepository.countByReceiverAndReadFalse(user);
+        return chatUnreadCounterRepository.findById(user.getId())
+                .map(ChatUnreadCounter::getUnreadCount)
+                .orElse(0);
     }
 
     /**
-     * Search conversations by partner username
+     * Full-text search over the user's messages, optionally within one conversation, best match first.
+     * Served from the embedded index; only the matching rows are loaded from chat_messages.
+     */
+    @Transactional(readOnly = true)
+    public List<ChatMessageDTO> searchMessages(User user, String query, Long partnerId, Integer limit) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        List<Long> ids = chatSearchIndex.search(user.getId(), partnerId, query, pageSize);
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, ChatMessage> messages = chatMessageRepository.findAllWithParticipants(ids).stream()
+                .collect(Collectors.toMap(ChatMessage::getId, message -> message));
+        return ids.stream()
+                .map(messages::get)
+                // The index may briefly hold messages that are gone from the database
+                .filter(Objects::nonNull)
+                .filter(message -> message.getSender().getId().equals(user.getId())
+                        || message.getReceiver().getId().equals(user.getId()))
+                .map(message -> toDTO(message, message.getConversation()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Search conversations by partner username prefix, for search-as-you-type.
+     * Served from the in-memory partner index without touching chat tables; results carry the
+     * partner only, the client already holds the conversation summaries from the inbox.
      */
     public List<ConversationDTO> searchConversations(User user, String query) {
-        List<ConversationDTO> allConversations = getConversations(user);
-        String lowerQuery = query.toLowerCase();
-        
-        return allConversations.stream()
-                .filter(conv -> conv.getPartnerUsername().toLowerCase().contains(lowerQuery))
+        return conversationSearchIndex.search(user.getId(), query, CONVERSATION_SEARCH_LIMIT).stream()
+                .map(this::toPartnerConversationDTO)
                 .collect(Collectors.toList());
     }
 
@@ -152,75 +405,144 @@ public class ChatService {
     @Transactional
     public ConversationDTO createChatWithFriend(User user, Long friendId) {
         User friend = userService.findById(friendId);
-        User currentUser = userService.findById(user.getId());
         
         // Verify they are friends
-        if (!currentUser.getFriends().contains(friend)) {
+        if (!userService.areFriends(user.getId(), friendId)) {
             throw new RuntimeException("You can only create chats with your friends");
         }
         
-        // Check if conversation already exists
-        List<ChatMessage> existingMessages = chatMessageRepository.findConversation(user, friend);
-        
-        // If conversation already exists, return it as DTO
-        if (!existingMessages.isEmpty()) {
-            return getConversations(user).stream()
-                    .filter(conv -> conv.getPartnerId().equals(friendId))
-                    .findFirst()
-                    .orElseThrow(() -> new RuntimeException("Conversation not found"));
+        // If a conversation with messages already exists, return it as DTO
+        Optional<Conversation> existing = findConversation(user.getId(), friendId)
+                .filter(conversation -> conversation.getLastMessageId() != null);
+        if (existing.isPresent()) {
+            return toConversationDTO(existing.get(), user.getId());
         }
         
         // Send notification for new chat creation
-        String messageText = user.getUsername() + " rozpoczął z Tobą czat";
         notificationService.createNotification(
                 friend,
                 user,
                 Notification.NotificationType.NEW_CHAT,
-                messageText,
+                newChatText(user.getUsername()),
                 user.getId()
         );
         
         // Return empty conversation DTO (will be populated when first message is sent)
-        return ConversationDTO.builder()
-                .partnerId(friend.getId())
-                .partnerUsername(friend.getUsername())
-                .partnerAvatarUrl(friend.getAvatarUrl())
-                .partnerOnline(friend.isOnline())
-                .unreadCount(0)
-                .build();
+        return toEmptyConversationDTO(friend);
     }
 
     /**
      * Get friends who don't have a conversation yet
      */
-    public List<org.gwozdz1uu.heyobackend.dto.UserDTO> getFriendsWithoutChat(User user) {
-        User currentUser = userService.findById(user.getId());
-        
-        // Get partners from both directions
-        List<User> partnersAsReceiver = chatMessageRepository.findConversationPartnersAsReceiver(user);
-        List<User> partnersAsSender = chatMessageRepository.findConversationPartnersAsSender(user);
-        
-        // Combine and deduplicate by user ID
-        Set<Long> partnerIds = new HashSet<>();
-        partnersAsReceiver.forEach(p -> partnerIds.add(p.getId()));
-        partnersAsSender.forEach(p -> partnerIds.add(p.getId()));
-        
-        return currentUser.getFriends().stream()
-                .filter(friend -> !partnerIds.contains(friend.getId()))
-                .map(userService::toDTO)
-                .collect(Collectors.toList());
+    public Page<org.gwozdz1uu.heyobackend.dto.UserDTO> getFriendsWithoutChat(User user, Pageable pageable) {
+        return userRepository.findFriendsWithoutConversation(user.getId(), pageable)
+                .map(userService::toDTO);
+    }
+
+    private Optional<Conversation> findConversation(Long userId, Long partnerId) {
+        return conversationRepository.findByParticipants(Math.min(userId, partnerId), Math.max(userId, partnerId));
+    }
+
+    /**
+     * Conversation rows are created lazily with the first message.
+     * The insert is idempotent, so two users messaging each other for the first time concurrently share one row.
+     * The row is then re-read with a locking read: under REPEATABLE READ a plain select would reuse the
+     * snapshot taken before the insert and miss a row committed by the other writer.
+     */
+    private Conversation getOrCreateConversation(User user, User partner) {
+        return getOrCreateConversation(user.getId(), partner.getId());
+    }
+
+    private Conversation getOrCreateConversation(Long userId, Long partnerId) {
+        return findConversation(userId, partnerId)
+                .orElseGet(() -> {
+                    Long user1Id = Math.min(userId, partnerId);
+                    Long user2Id = Math.max(userId, partnerId);
+                    conversationRepository.insertIfAbsent(user1Id, user2Id);
+                    return conversationRepository.findByParticipantsForUpdate(user1Id, user2Id)
+                            .orElseThrow(() -> new RuntimeException("Conversation not found"));
+                });
+    }
+
+    /**
+     * Reserve the next count sequence numbers of a conversation, returning the last one
+     */
+    private long reserveSeq(Long conversationId, int count) {
+        conversationRepository.advanceSeq(conversationId, count);
+        return conversationRepository.findSeq(conversationId);
+    }
+
+    private String pairKey(Long userId, Long partnerId) {
+        return Math.min(userId, partnerId) + ":" + Math.max(userId, partnerId);
     }
 
-    private ChatMessageDTO toDTO(ChatMessage message) {
+    private String preview(String content) {
+        return content.length() > PREVIEW_LENGTH ? content.substring(0, PREVIEW_LENGTH) : content;
+    }
+
+    private String newMessageText(String senderUsername, String content) {
+        return senderUsername + " wysłał Ci wiadomość: " +
+                (content.length() > 50 ? content.substring(0, 50) + "..." : content);
+    }
+
+    private String newChatText(String senderUsername) {
+        return senderUsername + " rozpoczął z Tobą czat";
+    }
+
+    private ConversationDTO toConversationDTO(Conversation conversation, Long userId) {
+        User partner = conversation.getPartner(userId);
+        return ConversationDTO.builder()
+                .id(conversation.getId())
+                .partnerId(partner.getId())
+                .partnerUsername(partner.getUsername())
+                .partnerAvatarUrl(partner.getAvatarUrl())
+                .partnerOnline(presenceService.isOnline(partner.getId(), partner.getUsername()))
+                .lastMessage(conversation.getLastMessagePreview())
+                .lastMessageAt(conversation.getLastMessageAt())
+                .unreadCount(conversation.getUnreadCountFor(userId))
+                .seq(conversation.getSeq())
+                .lastReadId(conversation.getLastReadIdFor(userId))
+                .partnerLastReadId(conversation.getLastReadIdFor(partner.getId()))
+                .build();
+    }
+
+    private ConversationDTO toEmptyConversationDTO(User partner) {
+        return ConversationDTO.builder()
+                .partnerId(partner.getId())
+                .partnerUsername(partner.getUsername())
+                .partnerAvatarUrl(partner.getAvatarUrl())
+                .partnerOnline(presenceService.isOnline(partner.getId(), partner.getUsername()))
+                .unreadCount(0)
+                .build();
+    }
+
+    private ConversationDTO toPartnerConversationDTO(UserSnapshot partner) {
+        return ConversationDTO.builder()
+                .partnerId(partner.getId())
+                .partnerUsername(partner.getUsername())
+                .partnerAvatarUrl(partner.getAvatarUrl())
+                .partnerOnline(presenceService.isOnline(partner.getId(), partner.getUsername()))
+                .build();
+    }
+
+    /**
+     * Read state comes from the receiver's watermark on the conversation.
+     * Messages without a conversation row fall back to the legacy is_read flag.
+     */
+    private ChatMessageDTO toDTO(ChatMessage message, Conversation conversation) {
+        boolean read = conversation != null
+                ? conversation.isReadBy(message.getReceiver().getId(), message.getId())
+                : message.isRead();
         return ChatMessageDTO.builder()
                 .id(message.getId())
+                .seq(message.getSeq())
                 .senderId(message.getSender().getId())
                 .senderUsername(message.getSender().getUsername())
                 .senderAvatarUrl(message.getSender().getAvatarUrl())
                 .receiverId(message.getReceiver().getId())
                 .receiverUsername(message.getReceiver().getUsername())
                 .content(message.getContent())
-                .read(message.isRead())
+                .read(read)
                 .createdAt(message.getCreatedAt())
                 .build();
     }
@@ -0,0 +1,84 @@
+package org.gwozdz1uu.heyobackend.service;
+
+import lombok.RequiredArgsConstructor;
+import org.gwozdz1uu.heyobackend.dto.ChatSyncChange;
+import org.gwozdz1uu.heyobackend.model.Conversation;
+import org.gwozdz1uu.heyobackend.repository.ChatSyncCursorRepository;
+import org.gwozdz1uu.heyobackend.repository.ChatSyncLogRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Per-user log of conversation changes behind chat delta sync.
+ *
+ * Every change to a conversation (messages sent, read watermark moved) takes the next
+ * positions of both participants' change sequences and logs which conversation changed from
+ * which conversation seq. A sync token is a single position in that sequence, so a reconnect
+ * reads the log after it instead of comparing every conversation of the inbox. Only the
+ * newest app.chat.sync.log-retention entries per user are kept; older cursors get a full resync.
+ */
+@Service
+@RequiredArgsConstructor
+public class ChatSyncLog {
+
+    private final ChatSyncCursorRepository chatSyncCursorRepository;
+    private final ChatSyncLogRepository chatSyncLogRepository;
+
+    @Value("${app.chat.sync.log-retention:1000}")
+    private long retention;
+
+    public void record(Conversation conversation, long fromSeq) {
+        record(List.of(conversation), Map.of(conversation.getId(), fromSeq));
+    }
+
+    /**
+     * Log changes to several conversations, each starting at the given conversation seq.
+     * Must run in the transaction that made the changes.
+     */
+    public void record(List<Conversation> conversations, Map<Long, Long> fromSeqByConversationId) {
+        // Users in id order, so concurrent writers take the cursor row locks in the same order
+        Map<Long, List<Conversation>> changedByUser = new TreeMap<>();
+        for (Conversation conversation : conversations) {
+            changedByUser.computeIfAbsent(conversation.getUser1().getId(), id -> new ArrayList<>()).add(conversation);
+            changedByUser.computeIfAbsent(conversation.getUser2().getId(), id -> new ArrayList<>()).add(conversation);
+        }
+
+        changedByUser.forEach((userId, changed) -> {
+            chatSyncCursorRepository.advance(userId, changed.size());
+            long seq = chatSyncCursorRepository.findSeq(userId).orElseThrow() - changed.size();
+            for (Conversation conversation : changed) {
+                chatSyncLogRepository.insert(userId, ++seq, conversation.getId(),
+                        fromSeqByConversationId.get(conversation.getId()));
+            }
+            if (seq > retention) {
+                chatSyncLogRepository.deleteUpTo(userId, seq - retention);
+            }
+        });
+    }
+
+    /**
+     * Current position of the user's change sequence, to hand out as the next sync token
+     */
+    public long position(Long userId) {
+        return chatSyncCursorRepository.findSeq(userId).orElse(0L);
+    }
+
+    /**
+     * Conversations changed after the given position, mapped to the first conversation seq that changed.
+     * Empty when the position is no longer covered by the log (or was never handed out).
+     */
+    public Optional<Map<Long, Long>> changesSince(Long userId, long since, long position) {
+        if (since > position || since < position - retention) {
+            return Optional.empty();
+        }
+        return Optional.of(chatSyncLogRepository.findChangesSince(userId, since).stream()
+                .collect(Collectors.toMap(ChatSyncChange::getConversationId, ChatSyncChange::getFromSeq)));
+    }
+}
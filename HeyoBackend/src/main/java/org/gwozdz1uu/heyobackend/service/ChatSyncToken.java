@@ -0,0 +1,27 @@
+package org.gwozdz1uu.heyobackend.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque delta-sync cursor: a position in the user's chat change sequence (see ChatSyncLog),
+ * encoded as URL-safe Base64 so clients do not read meaning into it.
+ */
+final class ChatSyncToken {
+
+    private ChatSyncToken() {
+    }
+
+    static String encode(long position) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(Long.toString(position).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static long decode(String token) {
+        try {
+            return Long.parseLong(new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Invalid sync token");
+        }
+    }
+}
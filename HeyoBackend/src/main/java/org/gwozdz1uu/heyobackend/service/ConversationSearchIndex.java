@@ -0,0 +1,249 @@
+package org.gwozdz1uu.heyobackend.service;
+
+import lombok.RequiredArgsConstructor;
+import org.gwozdz1uu.heyobackend.dto.UserSnapshot;
+import org.gwozdz1uu.heyobackend.repository.ConversationRepository;
+import org.gwozdz1uu.heyobackend.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * Per-user prefix index over conversation partners (friends plus anyone the user has a
+ * conversation with), for search-as-you-type in the inbox.
+ *
+ * Each user's partners are kept as an immutable array sorted by lowercase username, so a lookup
+ * is a binary search for the prefix followed by a short scan. The array is loaded on the first
+ * search and then kept current in place: friendships, new conversations and username/avatar
+ * changes replace it copy-on-write. Only the most recently searching users are kept in memory.
+ *
+ * Searches read without locking. A reverse index from partner to the cached users listing them
+ * lets a username or avatar change touch only those users instead of scanning every list.
+ */
+@Component
+@RequiredArgsConstructor
+public class ConversationSearchIndex {
+
+    private final UserRepository userRepository;
+    private final ConversationRepository conversationRepository;
+
+    @Value("${app.chat.conversation-search.max-users:10000}")
+    private int maxUsers;
+
+    // Bumped on every change, so a load that raced with a change is not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    private final Map<Long, Cached> partnersByUser = new ConcurrentHashMap<>();
+    // Partner id -> cached users whose list contains them; may briefly list extra users, never miss one
+    private final Map<Long, Set<Long>> usersByPartner = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    /**
+     * Partners whose username starts with the query (case-insensitive), alphabetically
+     */
+    public List<UserSnapshot> search(Long userId, String query, int limit) {
+        String prefix = query.trim().toLowerCase(Locale.ROOT);
+        return partnersOf(userId).search(prefix, limit);
+    }
+
+    @TransactionalEventListener
+    public void onFriendshipChanged(FriendshipChangedEvent event) {
+        if (event.isFriends()) {
+            add(event.getUser().getId(), event.getFriend());
+            add(event.getFriend().getId(), event.getUser());
+        } else {
+            // An ex-friend stays listed if there is a conversation - reload rather than guess
+            invalidate(event.getUser().getId());
+            invalidate(event.getFriend().getId());
+        }
+    }
+
+    /**
+     * A first message created a conversation; list each user for the other if they are not already
+     */
+    public void conversationStarted(UserSnapshot user, UserSnapshot partner) {
+        add(user.getId(), partner);
+        add(partner.getId(), user);
+    }
+
+    /**
+     * A user's username or avatar changed; replace them in the lists of the users who have them
+     */
+    @TransactionalEventListener
+    public void onProfileChanged(UserProfileChangedEvent event) {
+        UserSnapshot partner = event.getUser();
+        generation.incrementAndGet();
+        for (Long userId : usersByPartner.getOrDefault(partner.getId(), Set.of())) {
+            update(userId, partners -> partners.contains(partner.getId()) ? partners.with(partner) : partners);
+        }
+    }
+
+    private Partners partnersOf(Long userId) {
+        Cached cached = partnersByUser.get(userId);
+        if (cached != null) {
+            cached.lastSearchedAt = System.nanoTime();
+            return cached.partners;
+        }
+
+        long loadedAt = generation.get();
+        Set<UserSnapshot> partners = new LinkedHashSet<>(userRepository.findFriendSnapshots(userId));
+        partners.addAll(conversationRepository.findPartnerSnapshots(userId));
+        Partners loaded = Partners.of(partners);
+        // Linked first: a change that bumps the generation afterwards finds the user, one before it stops the caching
+        link(userId, loaded);
+        partnersByUser.compute(userId, (id, existing) ->
+                existing != null || generation.get() != loadedAt ? existing : new Cached(loaded, System.nanoTime()));
+        evictIfFull();
+        return loaded;
+    }
+
+    private void add(Long userId, UserSnapshot partner) {
+        update(userId, partners -> {
+            usersByPartner.computeIfAbsent(partner.getId(), id -> ConcurrentHashMap.newKeySet()).add(userId);
+            return partners.with(partner);
+        });
+    }
+
+    private void update(Long userId, UnaryOperator<Partners> change) {
+        generation.incrementAndGet();
+        partnersByUser.computeIfPresent(userId, (id, cached) -> new Cached(change.apply(cached.partners), cached.lastSearchedAt));
+    }
+
+    private void invalidate(Long userId) {
+        generation.incrementAndGet();
+        Cached removed = partnersByUser.remove(userId);
+        if (removed != null) {
+            for (UserSnapshot partner : removed.partners.all()) {
+                usersByPartner.computeIfPresent(partner.getId(), (id, users) -> {
+                    users.remove(userId);
+                    return users.isEmpty() ? null : users;
+                });
+            }
+        }
+    }
+
+    private void link(Long userId, Partners partners) {
+        for (UserSnapshot partner : partners.all()) {
+            usersByPartner.computeIfAbsent(partner.getId(), id -> ConcurrentHashMap.newKeySet()).add(userId);
+        }
+    }
+
+    /**
+     * Drop the least recently searching tenth once over the limit, so the scan is shared by many loads
+     */
+    private void evictIfFull() {
+        int excess = partnersByUser.size() - maxUsers;
+        if (excess <= 0 || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            // Search times are copied first, since they keep changing while sorting
+            Map<Long, Long> searchedAt = new LinkedHashMap<>();
+            partnersByUser.forEach((userId, cached) -> searchedAt.put(userId, cached.lastSearchedAt));
+            searchedAt.entrySet().stream()
+                    .sorted(Map.Entry.comparingByValue())
+                    .limit(Math.max(excess, maxUsers / 10))
+                    .map(Map.Entry::getKey)
+                    .toList()
+                    .forEach(this::invalidate);
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private static final class Cached {
+
+        private final Partners partners;
+        private volatile long lastSearchedAt;
+
+        Cached(Partners partners, long lastSearchedAt) {
+            this.partners = partners;
+            this.lastSearchedAt = lastSearchedAt;
+        }
+    }
+
+    /**
+     * Immutable partner list sorted by lowercase username, then id
+     */
+    static final class Partners {
+
+        private static final Comparator<UserSnapshot> ORDER = Comparator
+                .comparing(Partners::key)
+                .thenComparing(UserSnapshot::getId);
+
+        private final UserSnapshot[] sorted;
+        private final String[] keys;
+
+        private Partners(UserSnapshot[] sorted) {
+            this.sorted = sorted;
+            this.keys = Arrays.stream(sorted).map(Partners::key).toArray(String[]::new);
+        }
+
+        static Partners of(Collection<UserSnapshot> partners) {
+            // One entry per partner id, the last snapshot wins
+            Map<Long, UserSnapshot> byId = new LinkedHashMap<>();
+            partners.forEach(partner -> byId.put(partner.getId(), partner));
+            UserSnapshot[] sorted = byId.values().toArray(UserSnapshot[]::new);
+            Arrays.sort(sorted, ORDER);
+            return new Partners(sorted);
+        }
+
+        List<UserSnapshot> all() {
+            return Arrays.asList(sorted);
+        }
+
+        boolean contains(Long partnerId) {
+            return Arrays.stream(sorted).anyMatch(partner -> partner.getId().equals(partnerId));
+        }
+
+        Partners with(UserSnapshot partner) {
+            List<UserSnapshot> partners = new ArrayList<>(Arrays.asList(sorted));
+            partners.removeIf(existing -> existing.getId().equals(partner.getId()));
+            partners.add(partner);
+            return of(partners);
+        }
+
+        List<UserSnapshot> search(String prefix, int limit) {
+            int from = lowerBound(prefix);
+            List<UserSnapshot> result = new ArrayList<>();
+            for (int i = from; i < keys.length && result.size() < limit && keys[i].startsWith(prefix); i++) {
+                result.add(sorted[i]);
+            }
+            return Collections.unmodifiableList(result);
+        }
+
+        private int lowerBound(String prefix) {
+            int low = 0;
+            int high = keys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid].compareTo(prefix) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private static String key(UserSnapshot partner) {
+            return partner.getUsername().toLowerCase(Locale.ROOT);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package org.gwozdz1uu.heyobackend.service;
+
+import lombok.Value;
+import org.gwozdz1uu.heyobackend.dto.UserSnapshot;
+
+/**
+ * Published by UserService when two users become friends or stop being friends
+ */
+@Value
+public class FriendshipChangedEvent {
+    UserSnapshot user;
+    UserSnapshot friend;
+    boolean friends;
+}
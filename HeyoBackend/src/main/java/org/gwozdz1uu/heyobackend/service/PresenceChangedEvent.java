@@ -0,0 +1,13 @@
+package org.gwozdz1uu.heyobackend.service;
+
+import lombok.Value;
+
+/**
+ * Published by PresenceService when a user's first session on this node opens or the last one closes
+ */
+@Value
+public class PresenceChangedEvent {
+    Long userId;
+    String username;
+    boolean online;
+}
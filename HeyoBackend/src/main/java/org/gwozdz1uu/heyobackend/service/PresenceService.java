@@ -0,0 +1,216 @@
+package org.gwozdz1uu.heyobackend.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.gwozdz1uu.heyobackend.dto.UserSnapshot;
+import org.gwozdz1uu.heyobackend.model.User;
+import org.gwozdz1uu.heyobackend.repository.UserPresenceRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory presence registry driven by the WebSocket session lifecycle.
+ *
+ * A user is online while at least one STOMP session is open (one per browser tab).
+ * Transitions are published as PresenceChangedEvent right away and written to
+ * users.is_online / last_seen in periodic batches, so presence never costs a write per frame.
+ * The registry is local to this node, so the stored flags are scoped to it: on startup the node
+ * clears only what it wrote in a previous run, and it sends a heartbeat so the other nodes can
+ * clear its users if it dies without restarting.
+ * Whether a user is online is answered for the whole cluster: the session counts cover this node
+ * and the user registry, which the relay broker shares between nodes, covers the others.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PresenceService {
+
+    private final UserPresenceRepository userPresenceRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    // Resolved on use: the registry comes from the broker configuration, which depends on UserService and so on this
+    private final ObjectProvider<SimpUserRegistry> simpUserRegistry;
+
+    @Value("${app.presence.node-id:}")
+    private String nodeId;
+
+    @Value("${app.presence.node-ttl-ms:30000}")
+    private long nodeTtlMs;
+
+    private final Map<String, UserSnapshot> sessions = new ConcurrentHashMap<>();
+    private final Map<Long, Integer> sessionCounts = new ConcurrentHashMap<>();
+    private final Map<Long, PresenceUpdate> pendingUpdates = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        // Without a stable id a crashed node's flags are cleared by the heartbeat timeout instead of on restart
+        if (nodeId == null || nodeId.isBlank()) {
+            nodeId = UUID.randomUUID().toString();
+        }
+    }
+
+    /**
+     * Whether the user has an open session on any node
+     */
+    public boolean isOnline(Long userId, String username) {
+        if (sessionCounts.containsKey(userId)) {
+            return true;
+        }
+        SimpUserRegistry registry = simpUserRegistry.getIfAvailable();
+        return registry != null && username != null && registry.getUser(username) != null;
+    }
+
+    /**
+     * Like isOnline, but also checks the sessions other nodes have stored, which covers a remote
+     * session the user registry has not been told about yet. Costs a query, so only for rare decisions.
+     */
+    public boolean isOnlineOnAnyNode(Long userId, String username) {
+        return isOnline(userId, username) || userPresenceRepository.isOnlineOnOtherNode(userId, nodeId);
+    }
+
+    @EventListener
+    public void onConnected(SessionConnectedEvent event) {
+        User user = user(event.getUser());
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        if (user != null && sessionId != null) {
+            sessionStarted(sessionId, UserSnapshot.of(user));
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        sessionEnded(event.getSessionId());
+    }
+
+    /**
+     * Count a session for the user. Idempotent per session id.
+     */
+    public void sessionStarted(String sessionId, UserSnapshot user) {
+        if (sessions.putIfAbsent(sessionId, user) != null) {
+            return;
+        }
+        int count = sessionCounts.merge(user.getId(), 1, Integer::sum);
+        if (count == 1) {
+            changed(user, true);
+        }
+    }
+
+    /**
+     * Release a session. Idempotent, since Spring may publish the disconnect event more than once.
+     */
+    public void sessionEnded(String sessionId) {
+        UserSnapshot user = sessions.remove(sessionId);
+        if (user == null) {
+            return;
+        }
+        Integer count = sessionCounts.computeIfPresent(user.getId(), (id, current) -> current > 1 ? current - 1 : null);
+        if (count == null) {
+            changed(user, false);
+        }
+    }
+
+    private void changed(UserSnapshot user, boolean online) {
+        log.debug("[Presence] User {} is now {} on this node", user.getId(), online ? "online" : "offline");
+        pendingUpdates.put(user.getId(), new PresenceUpdate(user.getId(), online, LocalDateTime.now()));
+        eventPublisher.publishEvent(new PresenceChangedEvent(user.getId(), user.getUsername(), online));
+    }
+
+    /**
+     * Write accumulated transitions; only the latest state per user is kept between flushes
+     */
+    @Scheduled(fixedDelayString = "${app.presence.flush-interval-ms:5000}")
+    public void flush() {
+        if (pendingUpdates.isEmpty()) {
+            return;
+        }
+        List<PresenceUpdate> updates = new ArrayList<>(pendingUpdates.size());
+        for (Long userId : pendingUpdates.keySet()) {
+            PresenceUpdate update = pendingUpdates.remove(userId);
+            if (update != null) {
+                updates.add(update);
+            }
+        }
+        try {
+            userPresenceRepository.updatePresence(nodeId, updates);
+            log.debug("[Presence] Flushed {} presence updates", updates.size());
+        } catch (RuntimeException e) {
+            // Put them back unless a newer transition arrived meanwhile
+            updates.forEach(update -> pendingUpdates.putIfAbsent(update.getUserId(), update));
+            log.error("[Presence] Failed to flush {} presence updates: {}", updates.size(), e.getMessage());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resetStalePresence() {
+        int reset = userPresenceRepository.removeNode(nodeId);
+        if (reset > 0) {
+            log.info("[Presence] Cleared {} stale online flags of node {}", reset, nodeId);
+        }
+        heartbeat();
+    }
+
+    /**
+     * Keep this node's sessions alive and clear the users of nodes that stopped sending heartbeats
+     */
+    @Scheduled(fixedDelayString = "${app.presence.heartbeat-interval-ms:10000}")
+    public void heartbeat() {
+        try {
+            userPresenceRepository.heartbeat(nodeId);
+            for (String expired : userPresenceRepository.findExpiredNodes(LocalDateTime.now().minus(Duration.ofMillis(nodeTtlMs)))) {
+                int reset = userPresenceRepository.removeNode(expired);
+                log.info("[Presence] Node {} expired, cleared {} online flags", expired, reset);
+            }
+        } catch (RuntimeException e) {
+            log.error("[Presence] Heartbeat of node {} failed: {}", nodeId, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        sessions.clear();
+        sessionCounts.keySet().forEach(userId ->
+                pendingUpdates.put(userId, new PresenceUpdate(userId, false, LocalDateTime.now())));
+        sessionCounts.clear();
+        flush();
+        try {
+            userPresenceRepository.removeNode(nodeId);
+        } catch (RuntimeException e) {
+            log.error("[Presence] Failed to remove node {}: {}", nodeId, e.getMessage());
+        }
+    }
+
+    private User user(Principal principal) {
+        if (principal instanceof Authentication authentication
+                && authentication.getPrincipal() instanceof User user) {
+            return user;
+        }
+        return null;
+    }
+
+    @lombok.Value
+    public static class PresenceUpdate {
+        Long userId;
+        boolean online;
+        LocalDateTime at;
+    }
+}
@@ -3,6 +3,7 @@ package org.gwozdz1uu.heyobackend.service;
 import lombok.RequiredArgsConstructor;
 import org.gwozdz1uu.heyobackend.dto.ProfileCreateRequest;
 import org.gwozdz1uu.heyobackend.dto.ProfileDTO;
+import org.gwozdz1uu.heyobackend.dto.UserSnapshot;
 import org.gwozdz1uu.heyobackend.model.Interest;
 import org.gwozdz1uu.heyobackend.model.Profile;
 import org.gwozdz1uu.heyobackend.model.User;
@@ -10,6 +11,7 @@ import org.gwozdz1uu.heyobackend.repository.InterestRepository;
 import org.gwozdz1uu.heyobackend.repository.ProfileRepository;
 import org.gwozdz1uu.heyobackend.repository.UserRepository;
 import org.gwozdz1uu.heyobackend.security.JwtService;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -25,6 +27,7 @@ public class ProfileService {
     private final UserRepository userRepository;
     private final InterestRepository interestRepository;
     private final JwtService jwtService;
+    private final ApplicationEventPublisher eventPublisher;
 
     public ProfileDTO getProfile(Long userId) {
         User user = userRepository.findById(userId)
@@ -80,6 +83,7 @@ public class ProfileService {
         }
 
         profile = profileRepository.save(profile);
+        eventPublisher.publishEvent(new UserProfileChangedEvent(UserSnapshot.of(loadedUser)));
 
         // Initialize lazy collections within transaction
         loadedUser.getFriends().size();
@@ -131,6 +135,7 @@ public class ProfileService {
         profile = profileRepository.save(profile);
         // Reload user to get updated username
         user = userRepository.findById(user.getId()).orElseThrow(() -> new RuntimeException("User not found"));
+        eventPublisher.publishEvent(new UserProfileChangedEvent(UserSnapshot.of(user)));
         
         ProfileDTO result = toDTO(user, profile);
         
@@ -0,0 +1,12 @@
+package org.gwozdz1uu.heyobackend.service;
+
+import lombok.Value;
+import org.gwozdz1uu.heyobackend.dto.UserSnapshot;
+
+/**
+ * Published by ProfileService when a user's username or avatar may have changed
+ */
+@Value
+public class UserProfileChangedEvent {
+    UserSnapshot user;
+}
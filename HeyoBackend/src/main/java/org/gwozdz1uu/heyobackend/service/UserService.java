@@ -2,11 +2,14 @@ package org.gwozdz1uu.heyobackend.service;
 
 import lombok.RequiredArgsConstructor;
 import org.gwozdz1uu.heyobackend.dto.UserDTO;
+import org.gwozdz1uu.heyobackend.dto.UserSnapshot;
+import org.gwozdz1uu.heyobackend.dto.UserSummary;
 import org.gwozdz1uu.heyobackend.model.Notification;
 import org.gwozdz1uu.heyobackend.model.User;
 import org.gwozdz1uu.heyobackend.notification.service.NotificationService;
 import org.gwozdz1uu.heyobackend.repository.NotificationRepository;
 import org.gwozdz1uu.heyobackend.repository.UserRepository;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -14,7 +17,6 @@ import org.springframework.stereotype.Service;
 
 import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDateTime;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -25,6 +27,8 @@ public class UserService implements UserDetailsService {
     private final UserRepository userRepository;
     private final NotificationService notificationService;
     private final NotificationRepository notificationRepository;
+    private final PresenceService presenceService;
+    private final ApplicationEventPublisher eventPublisher;
 
     /**
      * Load user by username or email for Spring Security authentication
@@ -46,6 +50,13 @@ public class UserService implements UserDetailsService {
                 .orElseThrow(() -> new RuntimeException("User not found"));
     }
 
+    /**
+     * Reference usable as a foreign key without loading the user
+     */
+    public User getReference(Long id) {
+        return userRepository.getReferenceById(id);
+    }
+
     public List<UserDTO> searchUsers(String query) {
         return userRepository.findByUsernameContainingIgnoreCase(query)
                 .stream()
@@ -53,14 +64,6 @@ public class UserService implements UserDetailsService {
                 .collect(Collectors.toList());
     }
 
-    public void setOnlineStatus(User user, boolean online) {
-        user.setOnline(online);
-        if (!online) {
-            user.setLastSeen(LocalDateTime.now());
-        }
-        userRepository.save(user);
-    }
-
     @Transactional
     public List<UserDTO> getFriends(User user) {
         User currentUser = userRepository.findById(user.getId())
@@ -72,11 +75,15 @@ public class UserService implements UserDetailsService {
 
     @Transactional(readOnly = true)
     public List<Long> getFriendIds(Long userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-        return user.getFriends().stream()
-                .map(User::getId)
-                .collect(Collectors.toList());
+        return userRepository.findFriendIds(userId);
+    }
+
+    public List<UserSnapshot> getFriendSnapshots(Long userId) {
+        return userRepository.findFriendSnapshots(userId);
+    }
+
+    public boolean areFriends(Long userId, Long friendId) {
+        return userRepository.existsFriendship(userId, friendId);
     }
 
     @Transactional
@@ -146,6 +153,8 @@ public class UserService implements UserDetailsService {
         sender.getFriends().add(currentUser);
         userRepository.save(currentUser);
         userRepository.save(sender);
+        userRepository.incrementFriendsCount(List.of(currentUser.getId(), sender.getId()), 1);
+        eventPublisher.publishEvent(new FriendshipChangedEvent(UserSnapshot.of(currentUser), UserSnapshot.of(sender), true));
 
         // Send acceptance notification to sender
         String message = currentUser.getUsername() + " zaakceptował Twoje zaproszenie do znajomych";
@@ -215,6 +224,8 @@ public class UserService implements UserDetailsService {
         
         userRepository.save(currentUser);
         userRepository.save(friend);
+        userRepository.incrementFriendsCount(List.of(currentUser.getId(), friend.getId()), -1);
+        eventPublisher.publishEvent(new FriendshipChangedEvent(UserSnapshot.of(currentUser), UserSnapshot.of(friend), false));
     }
 
     public UserDTO toDTO(User user) {
@@ -223,7 +234,18 @@ public class UserService implements UserDetailsService {
                 .username(user.getUsername())
                 .email(user.getEmail())
                 .avatarUrl(user.getAvatarUrl())
-                .online(user.isOnline())
+                .online(presenceService.isOnline(user.getId(), user.getUsername()))
+                .lastSeen(user.getLastSeen() != null ? user.getLastSeen().toString() : null)
+                .build();
+    }
+
+    public UserDTO toDTO(UserSummary user) {
+        return UserDTO.builder()
+                .id(user.getId())
+                .username(user.getUsername())
+                .email(user.getEmail())
+                .avatarUrl(user.getAvatarUrl())
+                .online(presenceService.isOnline(user.getId(), user.getUsername()))
                 .lastSeen(user.getLastSeen() != null ? user.getLastSeen().toString() : null)
                 .build();
     }
@@ -3,26 +3,37 @@ package org.gwozdz1uu.heyobackend.websocket.chat.controller;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.gwozdz1uu.heyobackend.dto.ChatMessageDTO;
-import org.gwozdz1uu.heyobackend.model.User;
+import org.gwozdz1uu.heyobackend.dto.UserSnapshot;
 import org.gwozdz1uu.heyobackend.service.ChatService;
-import org.gwozdz1uu.heyobackend.service.UserService;
+import org.gwozdz1uu.heyobackend.service.PresenceService;
+import org.gwozdz1uu.heyobackend.websocket.chat.service.ChatUserDirectory;
+import org.gwozdz1uu.heyobackend.websocket.chat.service.ChatWriteBehindService;
+import org.gwozdz1uu.heyobackend.websocket.chat.service.TypingCoalescer;
+import org.gwozdz1uu.heyobackend.websocket.chat.service.UserDestinationSender;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
 import org.springframework.stereotype.Controller;
 
 import java.security.Principal;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @Slf4j
 @Controller
 @RequiredArgsConstructor
 public class ChatWebSocketController {
 
-    private final SimpMessagingTemplate messagingTemplate;
+    private final UserDestinationSender userDestinationSender;
     private final ChatService chatService;
-    private final UserService userService;
+    private final ChatWriteBehindService chatWriteBehindService;
+    private final ChatUserDirectory chatUserDirectory;
+    private final TypingCoalescer typingCoalescer;
+    private final PresenceService presenceService;
+    private final SimpUserRegistry simpUserRegistry;
 
     @MessageMapping("/chat.send")
     public void sendMessage(@Payload Map<String, Object> payload, Principal principal) {
@@ -33,48 +44,45 @@ public class ChatWebSocketController {
         
         log.info("[WebSocket] Received message from user: {}", principal.getName());
         
+        String clientMessageId = null;
         try {
-            User sender = userService.findByUsername(principal.getName());
+            // Session snapshots - no user lookups on the hot path
+            UserSnapshot sender = chatUserDirectory.getByUsername(principal.getName());
             Long receiverId = Long.valueOf(payload.get("receiverId").toString());
+            UserSnapshot receiver = chatUserDirectory.getById(receiverId);
             String content = payload.get("content").toString();
+            clientMessageId = clientMessageId(payload);
 
             log.info("[WebSocket] Sending message from {} to {}: {}", sender.getId(), receiverId, content);
             
-            ChatMessageDTO message = chatService.sendMessage(sender, receiverId, content);
+            // In write-behind mode the writer delivers the message once its batch is committed
+            if (chatWriteBehindService.isEnabled()) {
+                chatWriteBehindService.enqueue(sender, receiver, content, clientMessageId);
+                return;
+            }
+            ChatMessageDTO message = chatService.sendMessage(sender.getId(), receiverId, content);
+            message.setClientMessageId(clientMessageId);
 
-            log.info("[WebSocket] Message saved, broadcasting to users...");
-            
-            // Get receiver username for routing
-            User receiver = userService.findById(receiverId);
+            log.info("[WebSocket] Message accepted, broadcasting to users...");
             
-            // Send to receiver - convertAndSendToUser uses username from Principal mapping
-            messagingTemplate.convertAndSendToUser(
-                    receiver.getUsername(),
-                    "/queue/messages",
-                    message
-            );
-            log.info("[WebSocket] ✓ Sent to receiver (username: {}) via convertAndSendToUser", receiver.getUsername());
-
-            // Send confirmation to sender - convertAndSendToUser uses username from Principal mapping
-            messagingTemplate.convertAndSendToUser(
-                    sender.getUsername(),
+            // Encoded once, delivered to the receiver and echoed to the sender
+            userDestinationSender.send(
+                    List.of(receiver.getUsername(), sender.getUsername()),
                     "/queue/messages",
                     message
             );
-            log.info("[WebSocket] ✓ Sent to sender (username: {}) via convertAndSendToUser", sender.getUsername());
             log.info("[WebSocket] ✓ Message broadcast complete");
         } catch (RuntimeException e) {
             log.error("[WebSocket] Error sending message: {}", e.getMessage());
             
-            // Send error back to sender - use username not ID!
+            // Send error back to sender - the Principal name is the routing username
             if (principal != null) {
                 try {
-                    User sender = userService.findByUsername(principal.getName());
-                    messagingTemplate.convertAndSendToUser(
-                            sender.getUsername(),
-                            "/queue/errors",
-                            Map.of("error", e.getMessage(), "type", "MESSAGE_ERROR")
-                    );
+                    Map<String, Object> error = new LinkedHashMap<>();
+                    error.put("error", e.getMessage());
+                    error.put("type", "MESSAGE_ERROR");
+                    error.put("clientMessageId", clientMessageId);
+                    userDestinationSender.send(principal.getName(), "/queue/errors", error);
                 } catch (Exception ex) {
                     log.error("[WebSocket] Failed to send error message", ex);
                 }
@@ -82,6 +90,15 @@ public class ChatWebSocketController {
         }
     }
 
+    /**
+     * Id the client chose for this send, echoed on the stored message and on errors so the
+     * client can match them to the send and retry it
+     */
+    private static String clientMessageId(Map<String, Object> payload) {
+        Object clientMessageId = payload.get("clientMessageId");
+        return clientMessageId != null ? clientMessageId.toString() : null;
+    }
+
     @MessageMapping("/chat.typing")
     public void typing(@Payload Map<String, Object> payload, Principal principal) {
         if (principal == null) {
@@ -90,78 +107,48 @@ public class ChatWebSocketController {
         }
         
         try {
-            User sender = userService.findByUsername(principal.getName());
             Long receiverId = Long.valueOf(payload.get("receiverId").toString());
-            User receiver = userService.findById(receiverId);
+            // No query per frame: receivers come from sessions, sends and friend lists seen on this node,
+            // and one this node has never seen just gets no typing indicator
+            Optional<UserSnapshot> receiver = chatUserDirectory.findKnown(receiverId);
 
-            // Use username not ID for routing!
-            messagingTemplate.convertAndSendToUser(
-                    receiver.getUsername(),
-                    "/queue/typing",
-                    Map.of("userId", sender.getId(), "username", sender.getUsername())
-            );
+            // Nobody to notify when the receiver has no open session on any node
+            if (receiver.isPresent() && simpUserRegistry.getUser(receiver.get().getUsername()) != null) {
+                typingCoalescer.typing(chatUserDirectory.getByUsername(principal.getName()), receiver.get());
+            }
         } catch (Exception e) {
             log.error("[WebSocket] Error in typing handler: {}", e.getMessage());
         }
     }
 
+    /**
+     * Presence follows the session lifecycle; the explicit frames only mark this session
+     * earlier than CONNECT / DISCONNECT would. Both are idempotent per session.
+     */
     @MessageMapping("/user.online")
-    public void setOnline(Principal principal) {
+    public void setOnline(Principal principal, @Header("simpSessionId") String sessionId) {
         if (principal == null) {
             log.error("[WebSocket] setOnline called without Principal - authentication failed");
             return;
         }
         
         try {
-            User user = userService.findByUsername(principal.getName());
-            userService.setOnlineStatus(user, true);
-
-            // Broadcast to all friends - use transactional method to avoid lazy loading
-            List<Long> friendIds = userService.getFriendIds(user.getId());
-            friendIds.forEach(friendId -> {
-                try {
-                    User friend = userService.findById(friendId);
-                    // Use username not ID for routing!
-                    messagingTemplate.convertAndSendToUser(
-                            friend.getUsername(),
-                            "/queue/status",
-                            Map.of("userId", user.getId(), "online", true)
-                    );
-                } catch (Exception e) {
-                    log.error("[WebSocket] Error broadcasting status to friend {}: {}", friendId, e.getMessage());
-                }
-            });
+            UserSnapshot user = chatUserDirectory.getByUsername(principal.getName());
+            presenceService.sessionStarted(sessionId, user);
         } catch (Exception e) {
             log.error("[WebSocket] Error in setOnline handler: {}", e.getMessage());
         }
     }
 
     @MessageMapping("/user.offline")
-    public void setOffline(Principal principal) {
+    public void setOffline(Principal principal, @Header("simpSessionId") String sessionId) {
         if (principal == null) {
             log.error("[WebSocket] setOffline called without Principal - authentication failed");
             return;
         }
         
         try {
-            User user = userService.findByUsername(principal.getName());
-            userService.setOnlineStatus(user, false);
-
-            // Broadcast to all friends - use transactional method to avoid lazy loading
-            List<Long> friendIds = userService.getFriendIds(user.getId());
-            friendIds.forEach(friendId -> {
-                try {
-                    User friend = userService.findById(friendId);
-                    // Use username not ID for routing!
-                    messagingTemplate.convertAndSendToUser(
-                            friend.getUsername(),
-                            "/queue/status",
-                            Map.of("userId", user.getId(), "online", false)
-                    );
-                } catch (Exception e) {
-                    log.error("[WebSocket] Error broadcasting status to friend {}: {}", friendId, e.getMessage());
-                }
-            });
+            presenceService.sessionEnded(sessionId);
         } catch (Exception e) {
             log.error("[WebSocket] Error in setOffline handler: {}", e.getMessage());
         }
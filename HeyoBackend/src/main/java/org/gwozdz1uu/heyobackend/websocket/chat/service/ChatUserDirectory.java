@@ -0,0 +1,150 @@
+package org.gwozdz1uu.heyobackend.websocket.chat.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.gwozdz1uu.heyobackend.dto.UserSnapshot;
+import org.gwozdz1uu.heyobackend.model.User;
+import org.gwozdz1uu.heyobackend.service.UserProfileChangedEvent;
+import org.gwozdz1uu.heyobackend.service.UserService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Snapshots of users with an open STOMP session, shared by all WebSocket handlers.
+ *
+ * WebSocketAuthInterceptor registers the user it already loaded at CONNECT and stores the
+ * snapshot in the session attributes; the entry is dropped when the user's last session
+ * disconnects. Lookups for users that are not connected fall back to the database.
+ * Users seen on this node - connected, loaded, or handed in as someone's friends - are also kept
+ * as known users after they disconnect, so hot paths such as typing can address a receiver on
+ * another node without a query.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChatUserDirectory {
+
+    public static final String SESSION_ATTRIBUTE = "heyo.user";
+
+    private final UserService userService;
+
+    private final Map<Long, Entry> byId = new ConcurrentHashMap<>();
+    private final Map<String, Long> idsByUsername = new ConcurrentHashMap<>();
+    private final Map<Long, UserSnapshot> known = new ConcurrentHashMap<>();
+
+    @Value("${app.websocket.known-users.max-entries:100000}")
+    private int maxKnownUsers;
+
+    /**
+     * Register a new STOMP session for the user and store the snapshot in its attributes
+     */
+    public UserSnapshot register(User user, Map<String, Object> sessionAttributes) {
+        UserSnapshot snapshot = UserSnapshot.of(user);
+        byId.compute(snapshot.getId(), (id, entry) ->
+                new Entry(snapshot, entry == null ? 1 : entry.sessions() + 1));
+        idsByUsername.put(snapshot.getUsername(), snapshot.getId());
+        remember(snapshot);
+        if (sessionAttributes != null) {
+            sessionAttributes.put(SESSION_ATTRIBUTE, snapshot);
+        }
+        return snapshot;
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Map<String, Object> attributes = SimpMessageHeaderAccessor.getSessionAttributes(event.getMessage().getHeaders());
+        // remove() makes this idempotent - Spring may publish the disconnect event more than once
+        if (attributes != null && attributes.remove(SESSION_ATTRIBUTE) instanceof UserSnapshot snapshot) {
+            unregister(snapshot.getId());
+        }
+    }
+
+    void unregister(Long userId) {
+        byId.computeIfPresent(userId, (id, entry) -> {
+            if (entry.sessions() > 1) {
+                return new Entry(entry.snapshot(), entry.sessions() - 1);
+            }
+            idsByUsername.remove(entry.snapshot().getUsername(), id);
+            return null;
+        });
+    }
+
+    /**
+     * Replace the cached snapshot once a username or avatar change has committed
+     */
+    @TransactionalEventListener
+    public void onProfileChanged(UserProfileChangedEvent event) {
+        refresh(event.getUser());
+    }
+
+    void refresh(UserSnapshot snapshot) {
+        known.computeIfPresent(snapshot.getId(), (id, previous) -> snapshot);
+        byId.computeIfPresent(snapshot.getId(), (id, entry) -> {
+            idsByUsername.remove(entry.snapshot().getUsername(), id);
+            idsByUsername.put(snapshot.getUsername(), id);
+            return new Entry(snapshot, entry.sessions());
+        });
+    }
+
+    /**
+     * Snapshot of a connected user, empty when the user has no open session
+     */
+    public Optional<UserSnapshot> findConnected(Long userId) {
+        Entry entry = byId.get(userId);
+        return entry == null ? Optional.empty() : Optional.of(entry.snapshot());
+    }
+
+    /**
+     * Snapshot of a connected or known user; never queries the database
+     */
+    public Optional<UserSnapshot> findKnown(Long userId) {
+        Entry entry = byId.get(userId);
+        return entry != null ? Optional.of(entry.snapshot()) : Optional.ofNullable(known.get(userId));
+    }
+
+    /**
+     * Keep the user addressable by id after they disconnect
+     */
+    public void remember(UserSnapshot snapshot) {
+        if (known.size() >= maxKnownUsers && !known.containsKey(snapshot.getId())) {
+            // Cheaper than LRU bookkeeping on every read; users are remembered again as they are seen
+            known.clear();
+        }
+        known.put(snapshot.getId(), snapshot);
+    }
+
+    public boolean isConnected(Long userId) {
+        return byId.containsKey(userId);
+    }
+
+    public UserSnapshot getById(Long userId) {
+        return findConnected(userId).orElseGet(() -> {
+            UserSnapshot snapshot = UserSnapshot.of(userService.findById(userId));
+            remember(snapshot);
+            return snapshot;
+        });
+    }
+
+    public UserSnapshot getByUsername(String username) {
+        Long id = idsByUsername.get(username);
+        Entry entry = id == null ? null : byId.get(id);
+        if (entry != null) {
+            return entry.snapshot();
+        }
+        log.debug("[WebSocket] No session snapshot for {}, loading from database", username);
+        UserSnapshot snapshot = UserSnapshot.of(userService.findByUsername(username));
+        remember(snapshot);
+        return snapshot;
+    }
+
+    private record Entry(UserSnapshot snapshot, int sessions) {
+    }
+}
@@ -0,0 +1,254 @@
+package org.gwozdz1uu.heyobackend.websocket.chat.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.gwozdz1uu.heyobackend.dto.ChatMessageDTO;
+import org.gwozdz1uu.heyobackend.dto.PendingChatMessage;
+import org.gwozdz1uu.heyobackend.dto.UserSnapshot;
+import org.gwozdz1uu.heyobackend.service.ChatService;
+import org.gwozdz1uu.heyobackend.service.UserService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.dao.InvalidDataAccessResourceUsageException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind pipeline for WebSocket chat sends.
+ *
+ * When enabled, a message is validated and put on a bounded queue. A single writer thread
+ * drains the queue, persists whatever has accumulated as one JDBC batch per transaction and
+ * only then delivers the stored messages to both users - a group commit. Messages are delivered
+ * after their batch commits rather than as soon as they are accepted: the queue is in memory, so
+ * a message shown before it was stored would vanish from both users' histories on a crash. The
+ * delay is one batch, and the transaction per frame is still gone.
+ *
+ * Because there is exactly one writer and a failed batch is retried until it commits before the
+ * next one is taken, messages reach the database in the order they were accepted, which keeps
+ * ordering within every conversation. Errors a retry cannot fix (a constraint violation, bad SQL)
+ * are isolated to the offending message, which is dropped and reported on /queue/errors with the
+ * client's clientMessageId. While the database is down the queue fills up and new sends are
+ * rejected after enqueue-timeout-ms, which tells the client to retry.
+ *
+ * Messages still queued are lost if the process dies abruptly. They were neither delivered nor
+ * echoed to the sender, so the client sees the send as not completed and can retry. A graceful
+ * shutdown drains the queue before the datasource is closed.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChatWriteBehindService {
+
+    private static final long POLL_TIMEOUT_MS = 100;
+    private static final long RETRY_BACKOFF_MS = 100;
+    private static final long SHUTDOWN_TIMEOUT_MS = 10_000;
+
+    private final ChatService chatService;
+    private final UserService userService;
+    private final UserDestinationSender userDestinationSender;
+
+    @Value("${app.chat.write-behind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.chat.write-behind.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${app.chat.write-behind.batch-size:200}")
+    private int batchSize;
+
+    @Value("${app.chat.write-behind.max-retry-backoff-ms:5000}")
+    private long maxRetryBackoffMs;
+
+    @Value("${app.chat.write-behind.enqueue-timeout-ms:1000}")
+    private long enqueueTimeoutMs;
+
+    private BlockingQueue<PendingChatMessage> queue;
+    private Thread writer;
+    private volatile boolean running;
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        writer = new Thread(this::drainLoop, "chat-write-behind");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("[WriteBehind] Started (capacity={}, batchSize={})", queueCapacity, batchSize);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        writer.join(SHUTDOWN_TIMEOUT_MS);
+        if (writer.isAlive()) {
+            // Still retrying a batch against an unavailable database
+            writer.interrupt();
+            log.error("[WriteBehind] Shutdown timed out with {} unsaved messages queued", queue.size());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled && running;
+    }
+
+    /**
+     * Validate and queue a message for persistence; it is delivered by the writer after commit,
+     * carrying the clientMessageId the client sent it with. Blocks for at most enqueue-timeout-ms
+     * when the queue is full, then rejects the message rather than persisting it out of order.
+     */
+    public void enqueue(UserSnapshot sender, UserSnapshot receiver, String content, String clientMessageId) {
+        if (!userService.areFriends(sender.getId(), receiver.getId())) {
+            throw new RuntimeException("You can only message your friends");
+        }
+
+        PendingChatMessage pending = PendingChatMessage.builder()
+                .clientMessageId(clientMessageId)
+                .senderId(sender.getId())
+                .senderUsername(sender.getUsername())
+                .senderAvatarUrl(sender.getAvatarUrl())
+                .receiverId(receiver.getId())
+                .receiverUsername(receiver.getUsername())
+                .content(content)
+                .createdAt(LocalDateTime.now())
+                .build();
+
+        try {
+            if (!queue.offer(pending, enqueueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                log.warn("[WriteBehind] Queue full ({} messages), rejecting message from {}", queue.size(), sender.getId());
+                throw new RuntimeException("Chat is busy, please try again");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Message was not sent");
+        }
+    }
+
+    private void drainLoop() {
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingChatMessage first = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<PendingChatMessage> batch = new ArrayList<>(batchSize);
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("[WriteBehind] Writer interrupted with {} unsaved messages queued", queue.size());
+                return;
+            } catch (RuntimeException e) {
+                log.error("[WriteBehind] Unexpected error in writer loop", e);
+            }
+        }
+    }
+
+    private void flush(List<PendingChatMessage> batch) throws InterruptedException {
+        try {
+            persistUntilCommitted(batch);
+        } catch (RuntimeException e) {
+            // Isolate the message that cannot be stored so the rest of the batch is not lost with it
+            log.error("[WriteBehind] Batch of {} cannot be stored, persisting one by one", batch.size(), e);
+            for (PendingChatMessage message : batch) {
+                try {
+                    persistUntilCommitted(List.of(message));
+                } catch (RuntimeException messageError) {
+                    drop(message, messageError);
+                }
+            }
+        }
+    }
+
+    /**
+     * Persist and deliver the messages, retrying with capped exponential backoff until the batch
+     * commits. Throws only errors a retry cannot fix.
+     */
+    private void persistUntilCommitted(List<PendingChatMessage> batch) throws InterruptedException {
+        long backoff = RETRY_BACKOFF_MS;
+        for (int attempt = 1; ; attempt++) {
+            List<Long> ids;
+            try {
+                ids = chatService.persistBatch(batch);
+            } catch (RuntimeException e) {
+                if (isPermanent(e)) {
+                    throw e;
+                }
+                log.warn("[WriteBehind] Batch of {} failed (attempt {}), retrying in {} ms: {}",
+                        batch.size(), attempt, backoff, e.getMessage());
+                Thread.sleep(backoff);
+                backoff = Math.min(backoff * 2, maxRetryBackoffMs);
+                continue;
+            }
+            deliver(batch, ids);
+            return;
+        }
+    }
+
+    /**
+     * The data or the statement is wrong rather than the database unavailable
+     */
+    static boolean isPermanent(RuntimeException e) {
+        if (e instanceof DataAccessException) {
+            return e instanceof DataIntegrityViolationException
+                    || e instanceof InvalidDataAccessApiUsageException
+                    || e instanceof InvalidDataAccessResourceUsageException;
+        }
+        return !(e instanceof TransactionException);
+    }
+
+    private void drop(PendingChatMessage message, RuntimeException e) {
+        log.error("[WriteBehind] Dropping message {} from {} to {}",
+                message.getClientMessageId(), message.getSenderId(), message.getReceiverId(), e);
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("error", "Message could not be saved");
+        error.put("type", "MESSAGE_PERSIST_ERROR");
+        error.put("clientMessageId", message.getClientMessageId());
+        userDestinationSender.send(message.getSenderUsername(), "/queue/errors", error);
+    }
+
+    /**
+     * Deliver committed messages to the receiver and echo them to the sender
+     */
+    private void deliver(List<PendingChatMessage> batch, List<Long> ids) {
+        for (int i = 0; i < batch.size(); i++) {
+            PendingChatMessage message = batch.get(i);
+            userDestinationSender.send(
+                    List.of(message.getReceiverUsername(), message.getSenderUsername()),
+                    "/queue/messages",
+                    ChatMessageDTO.builder()
+                            .id(ids.get(i))
+                            .clientMessageId(message.getClientMessageId())
+                            .seq(message.getSeq())
+                            .senderId(message.getSenderId())
+                            .senderUsername(message.getSenderUsername())
+                            .senderAvatarUrl(message.getSenderAvatarUrl())
+                            .receiverId(message.getReceiverId())
+                            .receiverUsername(message.getReceiverUsername())
+                            .content(message.getContent())
+                            .read(false)
+                            .createdAt(message.getCreatedAt())
+                            .build()
+            );
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.gwozdz1uu.heyobackend.websocket.chat.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.gwozdz1uu.heyobackend.dto.UserSnapshot;
+import org.gwozdz1uu.heyobackend.service.PresenceChangedEvent;
+import org.gwozdz1uu.heyobackend.service.PresenceService;
+import org.gwozdz1uu.heyobackend.service.UserService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Tells connected friends when a user comes online or goes offline.
+ *
+ * Friends come from one projection query and are checked against the user registry, which in
+ * relay mode also lists sessions on the other nodes, so only friends with an open session
+ * anywhere are addressed and no friend entity is loaded.
+ * The status payload is encoded once per transition and reused for every friend.
+ * Going offline is announced only after a grace period: a reconnect within it (page reload,
+ * flaky network) cancels the announcement and friends see no flapping at all, and it is dropped
+ * when the user still has a session on another node.
+ * The loaded friends are handed to ChatUserDirectory, so typing notifications can address them
+ * without a query.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PresenceBroadcaster {
+
+    private final UserDestinationSender userDestinationSender;
+    private final UserService userService;
+    private final PresenceService presenceService;
+    private final TaskScheduler taskScheduler;
+    private final SimpUserRegistry simpUserRegistry;
+    private final ChatUserDirectory chatUserDirectory;
+
+    @Value("${app.presence.offline-grace-ms:3000}")
+    private long offlineGraceMs;
+
+    private final Map<Long, ScheduledFuture<?>> pendingOffline = new ConcurrentHashMap<>();
+
+    @EventListener
+    public void onPresenceChanged(PresenceChangedEvent event) {
+        Long userId = event.getUserId();
+        if (event.isOnline()) {
+            ScheduledFuture<?> offline = pendingOffline.remove(userId);
+            if (offline != null && offline.cancel(false)) {
+                // Friends were never told about the disconnect
+                log.debug("[Presence] User {} reconnected within grace period", userId);
+                return;
+            }
+            broadcast(userId, true);
+        } else {
+            String username = event.getUsername();
+            ScheduledFuture<?> offline = taskScheduler.schedule(() -> announceOffline(userId, username),
+                    Instant.now().plusMillis(offlineGraceMs));
+            ScheduledFuture<?> previous = pendingOffline.put(userId, offline);
+            if (previous != null) {
+                previous.cancel(false);
+            }
+        }
+    }
+
+    void announceOffline(Long userId, String username) {
+        pendingOffline.remove(userId);
+        // Re-check: a reconnect may have raced with this task, and other nodes may still hold sessions
+        if (!presenceService.isOnlineOnAnyNode(userId, username)) {
+            broadcast(userId, false);
+        }
+    }
+
+    private void broadcast(Long userId, boolean online) {
+        try {
+            List<UserSnapshot> friends = userService.getFriendSnapshots(userId);
+            Message<?> message = null;
+            for (UserSnapshot friend : friends) {
+                chatUserDirectory.remember(friend);
+                // Only friends with an open session can receive it
+                if (simpUserRegistry.getUser(friend.getUsername()) == null) {
+                    continue;
+                }
+                if (message == null) {
+                    message = userDestinationSender.encode(Map.of("userId", userId, "online", online), "status." + userId);
+                }
+                userDestinationSender.send(friend.getUsername(), "/queue/status", message);
+            }
+        } catch (Exception e) {
+            log.error("[WebSocket] Error broadcasting status of user {}: {}", userId, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.gwozdz1uu.heyobackend.websocket.chat.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.gwozdz1uu.heyobackend.dto.UserSnapshot;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces typing frames per (sender, receiver) pair.
+ *
+ * Clients send a frame on every keystroke; the receiver gets at most one "typing" event per
+ * window while the sender keeps typing, and one "stopped" event once a full window passes
+ * without frames. Everything happens in memory - no database access on this path.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TypingCoalescer {
+
+    private final UserDestinationSender userDestinationSender;
+
+    @Value("${app.chat.typing.window-ms:2000}")
+    private long windowMs;
+
+    private final Map<String, TypingState> states = new ConcurrentHashMap<>();
+    private ScheduledExecutorService sweeper;
+
+    @PostConstruct
+    void start() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "chat-typing-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(windowMs / 2, 50);
+        sweeper.scheduleAtFixedRate(this::sweep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * Record a typing frame and forward it only if the receiver has not been told within the window
+     */
+    public void typing(UserSnapshot sender, UserSnapshot receiver) {
+        long now = System.currentTimeMillis();
+        boolean[] emit = new boolean[1];
+        states.compute(key(sender.getId(), receiver.getId()), (key, state) -> {
+            if (state == null || now - state.lastEmittedAt >= windowMs) {
+                emit[0] = true;
+                return new TypingState(sender, receiver.getUsername(), now, now);
+            }
+            state.lastActivityAt = now;
+            return state;
+        });
+        if (emit[0]) {
+            send(sender, receiver.getUsername(), true);
+        }
+    }
+
+    void sweep() {
+        long now = System.currentTimeMillis();
+        states.forEach((key, state) -> {
+            if (now - state.lastActivityAt >= windowMs && states.remove(key, state)) {
+                try {
+                    send(state.sender, state.receiverUsername, false);
+                } catch (Exception e) {
+                    log.error("[WebSocket] Error sending typing stop to {}: {}", state.receiverUsername, e.getMessage());
+                }
+            }
+        });
+    }
+
+    private void send(UserSnapshot sender, String receiverUsername, boolean typing) {
+        // Use username not ID for routing!
+        userDestinationSender.send(
+                receiverUsername,
+                "/queue/typing",
+                Map.of("userId", sender.getId(), "username", sender.getUsername(), "typing", typing),
+                "typing." + sender.getId()
+        );
+    }
+
+    private String key(Long senderId, Long receiverId) {
+        return senderId + ":" + receiverId;
+    }
+
+    private static class TypingState {
+        private final UserSnapshot sender;
+        private final String receiverUsername;
+        private final long lastEmittedAt;
+        private volatile long lastActivityAt;
+
+        private TypingState(UserSnapshot sender, String receiverUsername, long lastEmittedAt, long lastActivityAt) {
+            this.sender = sender;
+            this.receiverUsername = receiverUsername;
+            this.lastEmittedAt = lastEmittedAt;
+            this.lastActivityAt = lastActivityAt;
+        }
+    }
+}
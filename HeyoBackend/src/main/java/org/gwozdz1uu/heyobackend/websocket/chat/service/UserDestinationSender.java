@@ -0,0 +1,81 @@
+package org.gwozdz1uu.heyobackend.websocket.chat.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Sends one payload to several user destinations with a single JSON conversion.
+ *
+ * convertAndSendToUser runs the message converter on every call. Here the payload is encoded
+ * once with the same broker converter into an immutable message; the template copies only the
+ * headers per destination, so every recipient shares the encoded bytes.
+ */
+@Component
+@RequiredArgsConstructor
+public class UserDestinationSender {
+
+    /**
+     * Marks a frame as droppable for slow clients; a queued frame with the same key is replaced by the newer one
+     */
+    public static final String COALESCE_KEY_HEADER = "coalesce-key";
+
+    private final SimpMessagingTemplate messagingTemplate;
+
+    public void send(String username, String destination, Object payload) {
+        send(List.of(username), destination, payload);
+    }
+
+    public void send(Collection<String> usernames, String destination, Object payload) {
+        if (usernames.isEmpty()) {
+            return;
+        }
+        Message<?> message = encode(payload);
+        for (String username : usernames) {
+            messagingTemplate.send(userDestination(username, destination), message);
+        }
+    }
+
+    /**
+     * Send a state update (presence, typing) that may be coalesced or dropped when the client falls behind
+     */
+    public void send(String username, String destination, Object payload, String coalesceKey) {
+        messagingTemplate.send(userDestination(username, destination), encode(payload, coalesceKey));
+    }
+
+    /**
+     * Convert once for repeated sends; the returned message is immutable and safe to share
+     */
+    public Message<?> encode(Object payload) {
+        return encode(payload, null);
+    }
+
+    public Message<?> encode(Object payload, String coalesceKey) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setLeaveMutable(true);
+        if (coalesceKey != null) {
+            accessor.setNativeHeader(COALESCE_KEY_HEADER, coalesceKey);
+        }
+        Message<?> message = messagingTemplate.getMessageConverter().toMessage(payload, accessor.getMessageHeaders());
+        MessageHeaderAccessor.getAccessor(message, SimpMessageHeaderAccessor.class).setImmutable();
+        return message;
+    }
+
+    public void send(String username, String destination, Message<?> encoded) {
+        messagingTemplate.send(userDestination(username, destination), encoded);
+    }
+
+    private String userDestination(String username, String destination) {
+        // Same encoding as convertAndSendToUser
+        return messagingTemplate.getUserDestinationPrefix()
+                + StringUtils.replace(username, "/", "%2F") + destination;
+    }
+}
@@ -0,0 +1,139 @@
+package org.gwozdz1uu.heyobackend.websocket.config;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Opt-in CBOR payloads for clients on the native WebSocket endpoint.
+ *
+ * A client that sends "accept-content-type:application/cbor" in its CONNECT frame gets MESSAGE
+ * bodies transcoded from JSON to CBOR (content-type application/cbor, sent as binary WebSocket
+ * frames), and may SEND with content-type application/cbor itself. Payloads are still encoded once
+ * as JSON for all recipients; the streaming transcode per CBOR session does not build a tree.
+ * SockJS sessions cannot carry binary frames and always stay on JSON.
+ */
+@Slf4j
+@Component
+public class CborPayloads implements ChannelInterceptor, HandshakeInterceptor {
+
+    public static final MimeType APPLICATION_CBOR = MimeType.valueOf("application/cbor");
+    public static final String ACCEPT_CONTENT_TYPE_HEADER = "accept-content-type";
+
+    private static final String CONTENT_TYPE_HEADER = "content-type";
+    private static final String NATIVE_TRANSPORT_ATTRIBUTE = CborPayloads.class.getName() + ".native";
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final CBORFactory cborFactory = new CBORFactory();
+    private final Set<String> cborSessions = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Reads SEND frames with content-type application/cbor into @Payload objects
+     */
+    public MessageConverter messageConverter() {
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter(APPLICATION_CBOR);
+        converter.setObjectMapper(CBORMapper.builder().findAndAddModules().build());
+        converter.setStrictContentTypeMatch(true);
+        return converter;
+    }
+
+    /**
+     * Marks sessions that came in over the native endpoint, where binary frames are available
+     */
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        attributes.put(NATIVE_TRANSPORT_ATTRIBUTE, Boolean.TRUE);
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, SimpMessageHeaderAccessor.class);
+        if (accessor == null || accessor.getSessionId() == null) {
+            return message;
+        }
+        SimpMessageType type = accessor.getMessageType();
+        if (SimpMessageType.CONNECT.equals(type)) {
+            if (acceptsCbor(accessor)) {
+                cborSessions.add(accessor.getSessionId());
+            }
+        } else if (SimpMessageType.DISCONNECT.equals(type)) {
+            cborSessions.remove(accessor.getSessionId());
+        } else if (SimpMessageType.MESSAGE.equals(type)
+                && cborSessions.contains(accessor.getSessionId())
+                && accessor.getContentType() != null
+                && MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(accessor.getContentType())
+                && message.getPayload() instanceof byte[] json) {
+            return toCbor(message, json);
+        }
+        return message;
+    }
+
+    int getSessionCount() {
+        return cborSessions.size();
+    }
+
+    private boolean acceptsCbor(SimpMessageHeaderAccessor accessor) {
+        String accepted = accessor.getFirstNativeHeader(ACCEPT_CONTENT_TYPE_HEADER);
+        if (accepted == null || !APPLICATION_CBOR.isCompatibleWith(MimeType.valueOf(accepted))) {
+            return false;
+        }
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        if (attributes == null || !attributes.containsKey(NATIVE_TRANSPORT_ATTRIBUTE)) {
+            log.debug("[WebSocket] Session {} asked for CBOR over SockJS, staying on JSON", accessor.getSessionId());
+            return false;
+        }
+        return true;
+    }
+
+    private Message<?> toCbor(Message<?> message, byte[] json) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length);
+        try (JsonParser parser = jsonFactory.createParser(json);
+             JsonGenerator generator = cborFactory.createGenerator(out)) {
+            while (parser.nextToken() != null) {
+                generator.copyCurrentEvent(parser);
+            }
+        } catch (IOException e) {
+            log.warn("[WebSocket] Could not transcode a payload to CBOR, sending JSON: {}", e.getMessage());
+            return message;
+        }
+        SimpMessageHeaderAccessor accessor = (SimpMessageHeaderAccessor) MessageHeaderAccessor.getMutableAccessor(message);
+        accessor.setContentType(APPLICATION_CBOR);
+        if (accessor.getFirstNativeHeader(CONTENT_TYPE_HEADER) != null) {
+            // Frames relayed from an external broker carry their STOMP headers as received
+            accessor.setNativeHeader(CONTENT_TYPE_HEADER, APPLICATION_CBOR.toString());
+        }
+        return MessageBuilder.createMessage(out.toByteArray(), accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,231 @@
+package org.gwozdz1uu.heyobackend.websocket.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executors for the STOMP client inbound, client outbound and broker channels, and for socket writes.
+ *
+ * Inbound handlers block on JDBC, so the pools are sized explicitly instead of Spring's defaults
+ * (unbounded queue, so the max pool size never applies). In virtual mode (Java 21+) every task
+ * runs on its own virtual thread, bounded by a concurrency limit instead of a queue.
+ * Each task is timed from submission, which gives queue wait and run time per channel.
+ * A saturated channel pool runs the task on the submitting thread instead of rejecting it, so a
+ * burst slows the producer (the socket reader or the broker) down but never loses a frame; the
+ * writer pool keeps rejecting, since OutboundBackpressure retries a rejected flush itself.
+ */
+@Slf4j
+@Component
+public class ChannelExecutors {
+
+    static final String INBOUND = "inbound";
+    static final String OUTBOUND = "outbound";
+    static final String BROKER = "broker";
+    static final String WRITER = "writer";
+
+    @Value("${app.websocket.executor.mode:platform}")
+    private String mode;
+
+    @Value("${app.websocket.executor.virtual.max-concurrency:10000}")
+    private int virtualMaxConcurrency;
+
+    @Value("${app.websocket.executor.keep-alive-seconds:60}")
+    private int keepAliveSeconds;
+
+    @Value("${app.websocket.executor.inbound.core-pool-size:16}")
+    private int inboundCorePoolSize;
+
+    @Value("${app.websocket.executor.inbound.max-pool-size:64}")
+    private int inboundMaxPoolSize;
+
+    @Value("${app.websocket.executor.inbound.queue-capacity:1000}")
+    private int inboundQueueCapacity;
+
+    @Value("${app.websocket.executor.outbound.core-pool-size:8}")
+    private int outboundCorePoolSize;
+
+    @Value("${app.websocket.executor.outbound.max-pool-size:32}")
+    private int outboundMaxPoolSize;
+
+    @Value("${app.websocket.executor.outbound.queue-capacity:1000}")
+    private int outboundQueueCapacity;
+
+    // 0 keeps the broker channel synchronous (Spring's default)
+    @Value("${app.websocket.executor.broker.core-pool-size:0}")
+    private int brokerCorePoolSize;
+
+    @Value("${app.websocket.executor.broker.max-pool-size:16}")
+    private int brokerMaxPoolSize;
+
+    @Value("${app.websocket.executor.broker.queue-capacity:1000}")
+    private int brokerQueueCapacity;
+
+    @Value("${app.websocket.executor.writer.core-pool-size:8}")
+    private int writerCorePoolSize;
+
+    @Value("${app.websocket.executor.writer.max-pool-size:64}")
+    private int writerMaxPoolSize;
+
+    @Value("${app.websocket.executor.writer.queue-capacity:10000}")
+    private int writerQueueCapacity;
+
+    private final Map<String, ChannelStats> stats = new ConcurrentSkipListMap<>();
+
+    public ThreadPoolTaskExecutor inbound() {
+        return create(INBOUND, inboundCorePoolSize, inboundMaxPoolSize, inboundQueueCapacity, true);
+    }
+
+    public ThreadPoolTaskExecutor outbound() {
+        return create(OUTBOUND, outboundCorePoolSize, outboundMaxPoolSize, outboundQueueCapacity, true);
+    }
+
+    /**
+     * Null when the broker channel should stay synchronous
+     */
+    public ThreadPoolTaskExecutor broker() {
+        if (brokerCorePoolSize <= 0) {
+            return null;
+        }
+        return create(BROKER, brokerCorePoolSize, brokerMaxPoolSize, brokerQueueCapacity, true);
+    }
+
+    /**
+     * Socket writes for OutboundBackpressure; one task per session with frames pending
+     */
+    public ThreadPoolTaskExecutor writer() {
+        return create(WRITER, writerCorePoolSize, writerMaxPoolSize, writerQueueCapacity, false);
+    }
+
+    public boolean isVirtual() {
+        return switch (mode) {
+            case "platform" -> false;
+            case "virtual" -> true;
+            default -> throw new IllegalStateException("Unknown app.websocket.executor.mode: " + mode);
+        };
+    }
+
+    /**
+     * Pool size, active tasks, queue depth, and average/max queue wait and run time per channel
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("mode", mode);
+        stats.forEach((channel, channelStats) -> result.put(channel, channelStats.snapshot()));
+        return result;
+    }
+
+    /**
+     * The executor is returned uninitialized; channel executors are initialized and shut down by Spring as beans
+     */
+    private ThreadPoolTaskExecutor create(String channel, int corePoolSize, int maxPoolSize, int queueCapacity,
+                                          boolean callerRunsWhenFull) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("ws-" + channel + "-");
+        executor.setKeepAliveSeconds(keepAliveSeconds);
+        if (isVirtual()) {
+            if (Runtime.version().feature() < 21) {
+                throw new IllegalStateException("app.websocket.executor.mode=virtual requires Java 21 or later");
+            }
+            // No queue: a new virtual thread per task unless an idle one is waiting
+            executor.setThreadFactory(new VirtualThreadTaskExecutor("ws-" + channel + "-").getVirtualThreadFactory());
+            executor.setCorePoolSize(0);
+            executor.setMaxPoolSize(virtualMaxConcurrency);
+            executor.setQueueCapacity(0);
+        } else {
+            executor.setCorePoolSize(corePoolSize);
+            executor.setMaxPoolSize(Math.max(corePoolSize, maxPoolSize));
+            executor.setQueueCapacity(queueCapacity);
+        }
+        ChannelStats channelStats = new ChannelStats(executor);
+        executor.setTaskDecorator(channelStats::timed);
+        if (callerRunsWhenFull) {
+            executor.setRejectedExecutionHandler(channelStats.callerRuns());
+        }
+        stats.put(channel, channelStats);
+        log.info("[WebSocket] {} channel executor: {}", channel, isVirtual()
+                ? "virtual threads, max concurrency " + virtualMaxConcurrency
+                : "core " + corePoolSize + ", max " + maxPoolSize + ", queue " + queueCapacity);
+        return executor;
+    }
+
+    static final class ChannelStats {
+
+        private final ThreadPoolTaskExecutor executor;
+        private final LongAdder tasks = new LongAdder();
+        private final LongAdder totalWaitNanos = new LongAdder();
+        private final LongAdder totalRunNanos = new LongAdder();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+        private final AtomicLong maxRunNanos = new AtomicLong();
+        private final LongAdder ranOnCaller = new LongAdder();
+
+        ChannelStats(ThreadPoolTaskExecutor executor) {
+            this.executor = executor;
+        }
+
+        /**
+         * Decorates a task at submission, so the wrapper sees how long it sat in the queue
+         */
+        Runnable timed(Runnable task) {
+            long submitted = System.nanoTime();
+            return () -> {
+                long started = System.nanoTime();
+                try {
+                    task.run();
+                } finally {
+                    long finished = System.nanoTime();
+                    record(started - submitted, finished - started);
+                }
+            };
+        }
+
+        /**
+         * Runs a task the full pool could not take on the submitting thread, and counts it
+         */
+        RejectedExecutionHandler callerRuns() {
+            ThreadPoolExecutor.CallerRunsPolicy policy = new ThreadPoolExecutor.CallerRunsPolicy();
+            return (task, pool) -> {
+                ranOnCaller.increment();
+                policy.rejectedExecution(task, pool);
+            };
+        }
+
+        private void record(long waitNanos, long runNanos) {
+            tasks.increment();
+            totalWaitNanos.add(waitNanos);
+            totalRunNanos.add(runNanos);
+            maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+            maxRunNanos.accumulateAndGet(runNanos, Math::max);
+        }
+
+        Map<String, Object> snapshot() {
+            long count = tasks.sum();
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("poolSize", executor.getPoolSize());
+            snapshot.put("activeCount", executor.getActiveCount());
+            snapshot.put("queueSize", executor.getQueueSize());
+            snapshot.put("tasks", count);
+            snapshot.put("ranOnCaller", ranOnCaller.sum());
+            snapshot.put("avgQueueWaitMs", count == 0 ? 0.0 : millis(totalWaitNanos.sum()) / count);
+            snapshot.put("maxQueueWaitMs", millis(maxWaitNanos.get()));
+            snapshot.put("avgRunMs", count == 0 ? 0.0 : millis(totalRunNanos.sum()) / count);
+            snapshot.put("maxRunMs", millis(maxRunNanos.get()));
+            return snapshot;
+        }
+
+        private static double millis(long nanos) {
+            return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+}
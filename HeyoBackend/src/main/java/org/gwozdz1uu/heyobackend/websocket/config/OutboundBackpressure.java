@@ -0,0 +1,166 @@
+package org.gwozdz1uu.heyobackend.websocket.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Slow-consumer protection for WebSocket sessions.
+ *
+ * Every session gets a PrioritySendSessionDecorator, below Spring's own send buffer, which
+ * sheds presence and typing frames under pressure and disconnects sessions that stay saturated.
+ * A watchdog checks the send time and buffer limits of every open session, so a stalled write is
+ * caught even when nothing else is sent to it. Flushes rejected by a full writer pool are retried
+ * on the scheduler. Limits come from app.websocket.outbound.*; coalesced and dropped frames and
+ * disconnects are counted.
+ */
+@Component
+@RequiredArgsConstructor
+public class OutboundBackpressure implements WebSocketHandlerDecoratorFactory {
+
+    private static final String SESSION_ATTRIBUTE = OutboundBackpressure.class.getName() + ".session";
+
+    private final ChannelExecutors channelExecutors;
+
+    @Getter
+    @Value("${app.websocket.outbound.buffer-size-limit:524288}")
+    private int bufferSizeLimit;
+
+    @Getter
+    @Value("${app.websocket.outbound.send-time-limit-ms:10000}")
+    private long sendTimeLimitMs;
+
+    @Value("${app.websocket.outbound.watchdog-interval-ms:1000}")
+    private long watchdogIntervalMs;
+
+    @Value("${app.websocket.outbound.flush-retry-delay-ms:100}")
+    private long flushRetryDelayMs;
+
+    private ThreadPoolTaskExecutor writer;
+    // Own scheduler: the broker's one is created by the WebSocket config, which depends on this bean
+    private ThreadPoolTaskScheduler scheduler;
+    private ScheduledFuture<?> watchdog;
+
+    private final Set<PrioritySendSessionDecorator> sessions = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder disconnectedSendTime = new LongAdder();
+    private final LongAdder disconnectedBufferLimit = new LongAdder();
+
+    @PostConstruct
+    void start() {
+        writer = channelExecutors.writer();
+        writer.initialize();
+        scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setThreadNamePrefix("ws-watchdog-");
+        scheduler.initialize();
+        watchdog = scheduler.scheduleWithFixedDelay(this::checkLimits, Duration.ofMillis(watchdogIntervalMs));
+    }
+
+    @PreDestroy
+    void stop() {
+        watchdog.cancel(false);
+        scheduler.shutdown();
+        writer.shutdown();
+    }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                PrioritySendSessionDecorator decorated = new PrioritySendSessionDecorator(session, OutboundBackpressure.this);
+                session.getAttributes().put(SESSION_ATTRIBUTE, decorated);
+                track(decorated);
+                super.afterConnectionEstablished(decorated);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                if (session.getAttributes().remove(SESSION_ATTRIBUTE) instanceof PrioritySendSessionDecorator decorated) {
+                    untrack(decorated);
+                    decorated.discard();
+                }
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    /**
+     * Coalesced and dropped frames, and sessions closed for a slow write or a full buffer
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("bufferSizeLimit", bufferSizeLimit);
+        stats.put("sendTimeLimitMs", sendTimeLimitMs);
+        stats.put("coalesced", coalesced.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("disconnectedSendTime", disconnectedSendTime.sum());
+        stats.put("disconnectedBufferLimit", disconnectedBufferLimit.sum());
+        return stats;
+    }
+
+    void track(PrioritySendSessionDecorator session) {
+        sessions.add(session);
+    }
+
+    void untrack(PrioritySendSessionDecorator session) {
+        sessions.remove(session);
+    }
+
+    void execute(Runnable task) {
+        writer.execute(task);
+    }
+
+    /**
+     * Runs the task after the flush retry delay; throws TaskRejectedException when shutting down
+     */
+    void retryLater(Runnable task) {
+        scheduler.schedule(task, Instant.now().plusMillis(flushRetryDelayMs));
+    }
+
+    private void checkLimits() {
+        long now = System.currentTimeMillis();
+        for (PrioritySendSessionDecorator session : sessions) {
+            if (session.checkLimits(now)) {
+                sessions.remove(session);
+            }
+        }
+    }
+
+    void coalesced() {
+        coalesced.increment();
+    }
+
+    void dropped() {
+        dropped.increment();
+    }
+
+    void disconnectedSendTime() {
+        disconnectedSendTime.increment();
+    }
+
+    void disconnectedBufferLimit() {
+        disconnectedBufferLimit.increment();
+    }
+}
@@ -0,0 +1,232 @@
+package org.gwozdz1uu.heyobackend.websocket.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.gwozdz1uu.heyobackend.websocket.chat.service.UserDestinationSender;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Outbound buffer of one WebSocket session with two priority classes.
+ *
+ * Frames with a coalesce-key header (presence, typing) are droppable: a newer frame with the same
+ * key replaces the queued one in place, and over the buffer limit the oldest droppable frames are
+ * shed first. All other frames (chat messages, acks, errors) are never dropped. Writes run on the
+ * writer executor, so a slow client never holds an outbound channel thread. The backpressure
+ * watchdog closes a session that stays over the limit, or whose current write takes longer than
+ * the send time limit.
+ */
+@Slf4j
+class PrioritySendSessionDecorator extends WebSocketSessionDecorator {
+
+    private static final String COALESCE_KEY_MARKER = "\n" + UserDestinationSender.COALESCE_KEY_HEADER + ":";
+    private static final String CBOR_CONTENT_TYPE_MARKER = "\ncontent-type:" + CborPayloads.APPLICATION_CBOR;
+
+    private final OutboundBackpressure backpressure;
+
+    // Insertion-ordered; droppable frames are keyed by their coalesce key, others by a unique key
+    private final Map<Object, Pending> pending = new LinkedHashMap<>();
+    private int bufferSize;
+    private boolean flushing;
+    private long saturatedSince;
+    private boolean closed;
+
+    private volatile long writeStartedAt;
+
+    PrioritySendSessionDecorator(WebSocketSession session, OutboundBackpressure backpressure) {
+        super(session);
+        this.backpressure = backpressure;
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        String coalesceKey = coalesceKey(message);
+        Pending frame = new Pending(binaryFraming(message), message.getPayloadLength(), coalesceKey != null);
+        boolean startFlush;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            Pending replaced = pending.put(coalesceKey != null ? coalesceKey : new Object(), frame);
+            bufferSize += frame.size;
+            if (replaced != null) {
+                bufferSize -= replaced.size;
+                backpressure.coalesced();
+            }
+            if (bufferSize > backpressure.getBufferSizeLimit()) {
+                shedDroppable();
+            }
+            if (bufferSize <= backpressure.getBufferSizeLimit()) {
+                saturatedSince = 0;
+            } else if (saturatedSince == 0) {
+                saturatedSince = System.currentTimeMillis();
+            }
+            startFlush = !flushing;
+            flushing = true;
+        }
+
+        if (startFlush) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * The connection is gone; drop whatever is still queued
+     */
+    synchronized void discard() {
+        closed = true;
+        pending.clear();
+        bufferSize = 0;
+    }
+
+    synchronized int getBufferSize() {
+        return bufferSize;
+    }
+
+    // Guarded by this
+    private void shedDroppable() {
+        Iterator<Pending> iterator = pending.values().iterator();
+        while (bufferSize > backpressure.getBufferSizeLimit() && iterator.hasNext()) {
+            Pending frame = iterator.next();
+            if (frame.droppable) {
+                iterator.remove();
+                bufferSize -= frame.size;
+                backpressure.dropped();
+            }
+        }
+    }
+
+    /**
+     * Closes the session when its current write or its time over the buffer limit has exceeded
+     * the send time limit. Returns whether the session is closed.
+     */
+    boolean checkLimits(long now) {
+        long started = writeStartedAt;
+        long saturated;
+        synchronized (this) {
+            if (closed) {
+                return true;
+            }
+            saturated = saturatedSince;
+        }
+        if (started > 0 && now - started > backpressure.getSendTimeLimitMs()) {
+            backpressure.disconnectedSendTime();
+            close("send time limit " + backpressure.getSendTimeLimitMs() + " ms exceeded");
+            return true;
+        }
+        if (saturated > 0 && now - saturated > backpressure.getSendTimeLimitMs()) {
+            backpressure.disconnectedBufferLimit();
+            close("over the buffer limit of " + backpressure.getBufferSizeLimit() + " bytes for "
+                    + (now - saturated) + " ms");
+            return true;
+        }
+        return false;
+    }
+
+    private void scheduleFlush() {
+        try {
+            backpressure.execute(this::flush);
+        } catch (TaskRejectedException e) {
+            // Leave the frames queued and try again shortly, so they go out without waiting for another send
+            log.warn("[WebSocket] Writer pool full, deferring writes for session {}", getId());
+            try {
+                backpressure.retryLater(this::scheduleFlush);
+            } catch (TaskRejectedException shuttingDown) {
+                synchronized (this) {
+                    flushing = false;
+                }
+            }
+        }
+    }
+
+    private void flush() {
+        while (true) {
+            Pending next;
+            synchronized (this) {
+                Iterator<Pending> iterator = pending.values().iterator();
+                if (closed || !iterator.hasNext()) {
+                    flushing = false;
+                    return;
+                }
+                next = iterator.next();
+                iterator.remove();
+                bufferSize -= next.size;
+                if (bufferSize <= backpressure.getBufferSizeLimit()) {
+                    saturatedSince = 0;
+                }
+            }
+            writeStartedAt = System.currentTimeMillis();
+            try {
+                getDelegate().sendMessage(next.message);
+            } catch (IOException | RuntimeException e) {
+                log.debug("[WebSocket] Write to session {} failed: {}", getId(), e.getMessage());
+                discard();
+                synchronized (this) {
+                    flushing = false;
+                }
+                return;
+            } finally {
+                writeStartedAt = 0;
+            }
+        }
+    }
+
+    private void close(String reason) {
+        log.warn("[WebSocket] Closing slow session {}: {}", getId(), reason);
+        discard();
+        try {
+            getDelegate().close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException e) {
+            log.debug("[WebSocket] Failed to close session {}: {}", getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * The coalesce-key header of a STOMP frame, looked up in the header block only
+     */
+    static String coalesceKey(WebSocketMessage<?> message) {
+        if (!(message instanceof TextMessage text)) {
+            return null;
+        }
+        String frame = text.getPayload();
+        int headersEnd = frame.indexOf("\n\n");
+        if (headersEnd < 0) {
+            return null;
+        }
+        int at = frame.lastIndexOf(COALESCE_KEY_MARKER, headersEnd);
+        if (at < 0) {
+            return null;
+        }
+        int start = at + COALESCE_KEY_MARKER.length();
+        int end = frame.indexOf('\n', start);
+        return frame.substring(start, end);
+    }
+
+    /**
+     * A STOMP frame with a CBOR body as a binary message. StompSubProtocolHandler sends binary
+     * messages for application/octet-stream only, and a CBOR body does not survive a text message.
+     */
+    static WebSocketMessage<?> binaryFraming(WebSocketMessage<?> message) {
+        if (!(message instanceof TextMessage text)) {
+            return message;
+        }
+        String frame = text.getPayload();
+        int headersEnd = frame.indexOf("\n\n");
+        if (headersEnd < 0 || frame.lastIndexOf(CBOR_CONTENT_TYPE_MARKER, headersEnd) < 0) {
+            return message;
+        }
+        return new BinaryMessage(text.asBytes());
+    }
+
+    private record Pending(WebSocketMessage<?> message, int size, boolean droppable) {
+    }
+}
@@ -2,8 +2,10 @@ package org.gwozdz1uu.heyobackend.websocket.config;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.gwozdz1uu.heyobackend.model.User;
 import org.gwozdz1uu.heyobackend.security.JwtService;
 import org.gwozdz1uu.heyobackend.service.UserService;
+import org.gwozdz1uu.heyobackend.websocket.chat.service.ChatUserDirectory;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.simp.stomp.StompCommand;
@@ -24,6 +26,7 @@ public class WebSocketAuthInterceptor implements ChannelInterceptor {
 
     private final JwtService jwtService;
     private final UserService userService;
+    private final ChatUserDirectory chatUserDirectory;
 
     @Override
     public Message<?> preSend(Message<?> message, MessageChannel channel) {
@@ -57,6 +60,9 @@ public class WebSocketAuthInterceptor implements ChannelInterceptor {
                             
                             SecurityContextHolder.getContext().setAuthentication(authentication);
                             accessor.setUser(authentication);
+
+                            // Keep a snapshot of the loaded user so handlers do not look it up per frame
+                            chatUserDirectory.register((User) userDetails, accessor.getSessionAttributes());
                             
                             log.info("WebSocket authenticated for user: {}", username);
                         } else {
@@ -1,36 +1,138 @@
 package org.gwozdz1uu.heyobackend.websocket.config;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.converter.MessageConverter;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.config.StompBrokerRelayRegistration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.StringUtils;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
+import java.util.List;
+
+/**
+ * STOMP over plain WebSocket on /ws-native, and over SockJS on /ws as a fallback for networks
+ * where the upgrade does not get through. Tomcat negotiates permessage-deflate with any client that
+ * offers it (all browsers do); clients on /ws-native may opt into CBOR payloads (CborPayloads).
+ *
+ * app.websocket.broker.mode selects the broker:
+ * - simple: in-memory broker, every subscription lives in this JVM (single node)
+ * - relay: subscriptions are relayed to an external STOMP broker (RabbitMQ, ActiveMQ/Artemis),
+ *   which fans messages out to every node. Nodes also broadcast their connected users through
+ *   the broker, so convertAndSendToUser reaches a user connected to any node.
+ *
+ * Channel executors come from ChannelExecutors (app.websocket.executor.*); per-session send
+ * limits and shedding of presence/typing frames from OutboundBackpressure (app.websocket.outbound.*).
+ */
+@Slf4j
 @Configuration
 @EnableWebSocketMessageBroker
 @RequiredArgsConstructor
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    static final String USER_REGISTRY_BROADCAST = "/topic/simp-user-registry";
+    static final String USER_DESTINATION_BROADCAST = "/topic/unresolved-user-destination";
+
     private final WebSocketAuthInterceptor webSocketAuthInterceptor;
+    private final ChannelExecutors channelExecutors;
+    private final OutboundBackpressure outboundBackpressure;
+    private final CborPayloads cborPayloads;
+
+    @Value("${app.websocket.broker.mode:simple}")
+    private String brokerMode;
+
+    @Value("${app.websocket.broker.relay-host:localhost}")
+    private String relayHost;
+
+    @Value("${app.websocket.broker.relay-port:61613}")
+    private int relayPort;
+
+    @Value("${app.websocket.broker.login:guest}")
+    private String login;
+
+    @Value("${app.websocket.broker.passcode:guest}")
+    private String passcode;
+
+    @Value("${app.websocket.broker.virtual-host:}")
+    private String virtualHost;
+
+    // Handle each session's frames in order, at the cost of some parallelism per session
+    @Value("${app.websocket.preserve-order:false}")
+    private boolean preserveOrder;
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic", "/queue");
+        switch (brokerMode) {
+            case "simple" -> config.enableSimpleBroker("/topic", "/queue");
+            case "relay" -> configureRelay(config);
+            default -> throw new IllegalStateException("Unknown app.websocket.broker.mode: " + brokerMode);
+        }
         config.setApplicationDestinationPrefixes("/app");
         config.setUserDestinationPrefix("/user");
+        config.setPreservePublishOrder(preserveOrder);
+
+        ThreadPoolTaskExecutor brokerExecutor = channelExecutors.broker();
+        if (brokerExecutor != null) {
+            config.configureBrokerChannel().taskExecutor(brokerExecutor);
+        }
+    }
+
+    private void configureRelay(MessageBrokerRegistry config) {
+        log.info("[WebSocket] Relaying STOMP destinations to {}:{}", relayHost, relayPort);
+        StompBrokerRelayRegistration relay = config.enableStompBrokerRelay("/topic", "/queue")
+                .setRelayHost(relayHost)
+                .setRelayPort(relayPort)
+                .setClientLogin(login)
+                .setClientPasscode(passcode)
+                .setSystemLogin(login)
+                .setSystemPasscode(passcode)
+                // Cluster-wide user registry, and a retry on the other nodes for users not connected here
+                .setUserRegistryBroadcast(USER_REGISTRY_BROADCAST)
+                .setUserDestinationBroadcast(USER_DESTINATION_BROADCAST);
+        if (StringUtils.hasText(virtualHost)) {
+            relay.setVirtualHost(virtualHost);
+        }
     }
 
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
+        registry.setPreserveReceiveOrder(preserveOrder);
+        registry.addEndpoint("/ws-native")
+                .addInterceptors(cborPayloads)
+                .setAllowedOrigins("http://localhost:4200");
         registry.addEndpoint("/ws")
                 .setAllowedOrigins("http://localhost:4200")
                 .withSockJS();
     }
 
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        messageConverters.add(cborPayloads.messageConverter());
+        // Keep the default String, byte[] and JSON converters after it
+        return true;
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.addDecoratorFactory(outboundBackpressure);
+    }
+
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
-        registration.interceptors(webSocketAuthInterceptor);
+        registration.interceptors(webSocketAuthInterceptor, cborPayloads);
+        registration.taskExecutor(channelExecutors.inbound());
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.interceptors(cborPayloads);
+        registration.taskExecutor(channelExecutors.outbound());
     }
 }
@@ -0,0 +1,23 @@
+-- =====================================================
+-- Migration: Per-participant read watermarks on conversations
+-- Version: 10
+-- =====================================================
+
+-- Highest message id each participant has read; every message to that user up to it counts as read.
+-- Marking a conversation as read moves the watermark - one row instead of an UPDATE over chat_messages.
+ALTER TABLE conversations
+    ADD COLUMN user1_last_read_id BIGINT NULL,
+    ADD COLUMN user2_last_read_id BIGINT NULL;
+
+-- -----------------------------------------------------
+-- Backfill from the is_read flags written so far
+-- -----------------------------------------------------
+UPDATE conversations c
+SET c.user1_last_read_id = (
+        SELECT MAX(m.id) FROM chat_messages m
+        WHERE m.conversation_id = c.id AND m.receiver_id = c.user1_id AND m.is_read = TRUE
+    ),
+    c.user2_last_read_id = (
+        SELECT MAX(m.id) FROM chat_messages m
+        WHERE m.conversation_id = c.id AND m.receiver_id = c.user2_id AND m.is_read = TRUE
+    );
@@ -0,0 +1,29 @@
+-- =====================================================
+-- Migration: Per-conversation sequence numbers for delta sync
+-- Version: 11
+-- =====================================================
+
+-- Bumped on every change to a conversation (new message, read watermark moved)
+ALTER TABLE conversations
+    ADD COLUMN seq BIGINT NOT NULL DEFAULT 0;
+
+-- Position of the message within its conversation
+ALTER TABLE chat_messages
+    ADD COLUMN seq BIGINT NULL;
+
+-- Index for "messages in a conversation after sequence N"
+CREATE INDEX idx_chat_messages_conversation_seq ON chat_messages(conversation_id, seq);
+
+-- -----------------------------------------------------
+-- Backfill: number existing messages per conversation in id order
+-- -----------------------------------------------------
+UPDATE chat_messages m
+JOIN (
+    SELECT id, ROW_NUMBER() OVER (PARTITION BY conversation_id ORDER BY id) AS rn
+    FROM chat_messages
+    WHERE conversation_id IS NOT NULL
+) numbered ON numbered.id = m.id
+SET m.seq = numbered.rn;
+
+UPDATE conversations c
+SET c.seq = COALESCE((SELECT MAX(m.seq) FROM chat_messages m WHERE m.conversation_id = c.id), 0);
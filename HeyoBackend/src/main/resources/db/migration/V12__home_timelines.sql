@@ -0,0 +1,35 @@
+-- =====================================================
+-- Migration: Home feed timelines (fan-out on write)
+-- Version: 12
+-- =====================================================
+
+-- One row per post in a user's home feed; a feed page is a range read on the primary key
+CREATE TABLE IF NOT EXISTS timeline_entries (
+    user_id BIGINT NOT NULL,
+    post_id BIGINT NOT NULL,
+    author_id BIGINT NOT NULL,
+
+    PRIMARY KEY (user_id, post_id),
+    CONSTRAINT fk_timeline_entries_user FOREIGN KEY (user_id)
+        REFERENCES users(id) ON DELETE CASCADE,
+    CONSTRAINT fk_timeline_entries_post FOREIGN KEY (post_id)
+        REFERENCES posts(id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- Index for removing an ex-friend's posts from a timeline
+CREATE INDEX idx_timeline_entries_user_author ON timeline_entries(user_id, author_id);
+
+-- Index for the post foreign key (deleting a post)
+CREATE INDEX idx_timeline_entries_post ON timeline_entries(post_id);
+
+-- -----------------------------------------------------
+-- Backfill: every post goes to its author and the author's friends
+-- -----------------------------------------------------
+INSERT IGNORE INTO timeline_entries (user_id, post_id, author_id)
+SELECT p.author_id, p.id, p.author_id
+FROM posts p;
+
+INSERT IGNORE INTO timeline_entries (user_id, post_id, author_id)
+SELECT uf.friend_id, p.id, p.author_id
+FROM posts p
+JOIN user_friends uf ON uf.user_id = p.author_id;
@@ -0,0 +1,10 @@
+-- =====================================================
+-- Migration: Indexes for keyset pagination of post lists
+-- Version: 13
+-- =====================================================
+
+-- A user's posts newest first, continuing after a (created_at, id) cursor without a sort
+CREATE INDEX idx_posts_author_created_at ON posts(author_id, created_at DESC, id DESC);
+
+-- Covered by idx_posts_author_created_at, which also serves the author foreign key
+DROP INDEX idx_posts_author ON posts;
@@ -0,0 +1,17 @@
+-- =====================================================
+-- Migration: Denormalized like and comment counters on posts
+-- Version: 14
+-- =====================================================
+
+-- Updated in the same transaction as the post_likes/comments row, so a post's counts
+-- are read from the post row instead of counting its likes and comments
+ALTER TABLE posts
+    ADD COLUMN likes_count INT NOT NULL DEFAULT 0,
+    ADD COLUMN comments_count INT NOT NULL DEFAULT 0;
+
+-- -----------------------------------------------------
+-- Backfill from the existing likes and comments
+-- -----------------------------------------------------
+UPDATE posts p
+SET p.likes_count = (SELECT COUNT(*) FROM post_likes l WHERE l.post_id = p.id),
+    p.comments_count = (SELECT COUNT(*) FROM comments c WHERE c.post_id = p.id);
@@ -0,0 +1,29 @@
+-- =====================================================
+-- Migration: Per-user change log for chat delta sync
+-- Version: 15
+-- =====================================================
+
+-- Per-user change sequence, bumped for every change to one of the user's conversations.
+-- A sync token is a position in this sequence, so its size does not depend on the inbox.
+CREATE TABLE IF NOT EXISTS chat_sync_cursors (
+    user_id BIGINT PRIMARY KEY,
+    seq BIGINT NOT NULL DEFAULT 0,
+
+    CONSTRAINT fk_chat_sync_cursors_user FOREIGN KEY (user_id)
+        REFERENCES users(id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- One row per change: which conversation changed and the first conversation seq it covers.
+-- Only the most recent app.chat.sync.log-retention rows of a user are kept.
+CREATE TABLE IF NOT EXISTS chat_sync_log (
+    user_id BIGINT NOT NULL,
+    seq BIGINT NOT NULL,
+    conversation_id BIGINT NOT NULL,
+    conversation_seq BIGINT NOT NULL,
+
+    PRIMARY KEY (user_id, seq),
+    CONSTRAINT fk_chat_sync_log_user FOREIGN KEY (user_id)
+        REFERENCES users(id) ON DELETE CASCADE,
+    CONSTRAINT fk_chat_sync_log_conversation FOREIGN KEY (conversation_id)
+        REFERENCES conversations(id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
@@ -0,0 +1,26 @@
+-- =====================================================
+-- Migration: Node-scoped presence
+-- Version: 16
+-- =====================================================
+
+-- Backend nodes tracking WebSocket sessions, with the time each last reported in
+CREATE TABLE IF NOT EXISTS presence_nodes (
+    node_id VARCHAR(64) PRIMARY KEY,
+    heartbeat_at DATETIME NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- Users with an open session per node; users.is_online is set while any node lists the user
+CREATE TABLE IF NOT EXISTS user_presence_nodes (
+    user_id BIGINT NOT NULL,
+    node_id VARCHAR(64) NOT NULL,
+
+    PRIMARY KEY (user_id, node_id),
+    CONSTRAINT fk_user_presence_nodes_user FOREIGN KEY (user_id)
+        REFERENCES users(id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- Index for clearing a node's sessions
+CREATE INDEX idx_user_presence_nodes_node ON user_presence_nodes(node_id);
+
+-- Flags written before presence was node-scoped cannot be attributed to a node
+UPDATE users SET is_online = FALSE, last_seen = NOW() WHERE is_online = TRUE;
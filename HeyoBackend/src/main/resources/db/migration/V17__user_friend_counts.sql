@@ -0,0 +1,15 @@
+-- =====================================================
+-- Migration: Denormalized friend counter on users
+-- Version: 17
+-- =====================================================
+
+-- Updated in the same transaction as the user_friends rows, so the feed can tell which
+-- friends are fanned out on read from the user row instead of counting their friends
+ALTER TABLE users
+    ADD COLUMN friends_count INT NOT NULL DEFAULT 0;
+
+-- -----------------------------------------------------
+-- Backfill from the existing friendships
+-- -----------------------------------------------------
+UPDATE users u
+SET u.friends_count = (SELECT COUNT(*) FROM user_friends f WHERE f.user_id = u.id);
@@ -0,0 +1,57 @@
+-- =====================================================
+-- Migration: Turn conversations into a maintained inbox read model
+-- Version: 8
+-- =====================================================
+
+-- Summary columns updated on every send / mark-as-read
+ALTER TABLE conversations
+    ADD COLUMN last_message_id BIGINT NULL,
+    ADD COLUMN last_message_preview VARCHAR(255) NULL,
+    ADD COLUMN user1_unread_count INT NOT NULL DEFAULT 0,
+    ADD COLUMN user2_unread_count INT NOT NULL DEFAULT 0;
+
+-- Conversations without messages must sort after active ones
+ALTER TABLE conversations
+    MODIFY COLUMN last_message_at DATETIME NULL DEFAULT NULL;
+
+-- Index for the inbox query (participant + recency)
+CREATE INDEX idx_conversations_user1_last_message ON conversations(user1_id, last_message_at DESC);
+CREATE INDEX idx_conversations_user2_last_message ON conversations(user2_id, last_message_at DESC);
+
+-- -----------------------------------------------------
+-- Backfill from existing chat history
+-- user1_id always holds the lower user id of the pair
+-- -----------------------------------------------------
+INSERT IGNORE INTO conversations (user1_id, user2_id, created_at)
+SELECT LEAST(sender_id, receiver_id), GREATEST(sender_id, receiver_id), MIN(created_at)
+FROM chat_messages
+GROUP BY LEAST(sender_id, receiver_id), GREATEST(sender_id, receiver_id);
+
+UPDATE chat_messages m
+JOIN conversations c
+    ON c.user1_id = LEAST(m.sender_id, m.receiver_id)
+    AND c.user2_id = GREATEST(m.sender_id, m.receiver_id)
+SET m.conversation_id = c.id
+WHERE m.conversation_id IS NULL;
+
+UPDATE conversations c
+JOIN (
+    SELECT conversation_id, MAX(id) AS last_id
+    FROM chat_messages
+    WHERE conversation_id IS NOT NULL
+    GROUP BY conversation_id
+) lm ON lm.conversation_id = c.id
+JOIN chat_messages m ON m.id = lm.last_id
+SET c.last_message_id = m.id,
+    c.last_message_preview = LEFT(m.content, 255),
+    c.last_message_at = m.created_at;
+
+UPDATE conversations c
+SET c.user1_unread_count = (
+        SELECT COUNT(*) FROM chat_messages m
+        WHERE m.conversation_id = c.id AND m.receiver_id = c.user1_id AND m.is_read = FALSE
+    ),
+    c.user2_unread_count = (
+        SELECT COUNT(*) FROM chat_messages m
+        WHERE m.conversation_id = c.id AND m.receiver_id = c.user2_id AND m.is_read = FALSE
+    );
@@ -0,0 +1,23 @@
+-- =====================================================
+-- Migration: Per-user total of unread chat messages
+-- Version: 9
+-- =====================================================
+
+-- Serves the unread badge with a primary key lookup instead of counting chat_messages
+CREATE TABLE IF NOT EXISTS chat_unread_counters (
+    user_id BIGINT PRIMARY KEY,
+    unread_count INT NOT NULL DEFAULT 0,
+
+    CONSTRAINT fk_chat_unread_counters_user FOREIGN KEY (user_id)
+        REFERENCES users(id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- Backfill from the per-conversation counters (populated in V8)
+INSERT INTO chat_unread_counters (user_id, unread_count)
+SELECT user_id, SUM(unread_count)
+FROM (
+    SELECT user1_id AS user_id, user1_unread_count AS unread_count FROM conversations
+    UNION ALL
+    SELECT user2_id AS user_id, user2_unread_count AS unread_count FROM conversations
+) counters
+GROUP BY user_id;
@@ -0,0 +1,330 @@
+package org.gwozdz1uu.heyobackend.load;
+
+import ch.vorburger.exec.ManagedProcessException;
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfiguration;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import org.gwozdz1uu.heyobackend.model.User;
+import org.gwozdz1uu.heyobackend.repository.UserRepository;
+import org.gwozdz1uu.heyobackend.security.JwtService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * STOMP load harness: seeds users with friendships in an embedded MariaDB (MariaDB4j, a local
+ * process - no Docker) migrated by Flyway, so it runs against the production schema and MySQL
+ * dialect. Connects one STOMP client per user to the running server and drives a mix of chat.send,
+ * chat.typing and user.online/offline frames at a fixed rate. Reports end-to-end chat delivery latency (p50/p99)
+ * and throughput, and fails if a chat message is lost or p99 exceeds load.max-p99-ms.
+ *
+ * Only runs with the load profile, which adds the MariaDB binaries: mvn test -Pload, tuned with -D system properties
+ * - load.users (20), load.friends per user (5), load.rate frames/s (25), load.duration-seconds (20)
+ * - load.mix chat:typing:presence weights (70:25:5), load.endpoint (/ws, SockJS) or /ws-native
+ * - load.max-p99-ms (0 = no latency gate)
+ * Any app.* property can be overridden the same way, e.g. -Dapp.chat.write-behind.enabled=true.
+ */
+@Tag("load")
+@DisplayName("Chat Load Harness")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.jpa.show-sql=false",
+        "app.chat.search.index-dir=target/load-chat-index",
+        "app.chat.search.rebuild-on-startup=true",
+        "logging.level.org.springframework.security=WARN",
+        "logging.level.org.gwozdz1uu.heyobackend=WARN"
+})
+class ChatLoadTest {
+
+    private static final String LATENCY_PREFIX = "load:";
+
+    private static DB database;
+
+    /**
+     * Started before the Spring context, which reads the port through the property source below
+     */
+    @BeforeAll
+    static void startDatabase() throws ManagedProcessException {
+        DBConfigurationBuilder builder = DBConfigurationBuilder.newBuilder().setPort(0);
+        if ("root".equals(System.getProperty("user.name"))) {
+            // mariadbd refuses to run as root unless told to
+            builder.addArg("--user=root");
+        }
+        DBConfiguration configuration = builder.build();
+        assumeTrue(ChatLoadTest.class.getClassLoader().getResource(configuration.getBinariesClassPathLocation() + "/bin/mariadbd") != null,
+                "MariaDB binaries are not on the classpath, run with -Pload");
+        database = DB.newEmbeddedDB(configuration);
+        database.start();
+    }
+
+    @AfterAll
+    static void stopDatabase() throws ManagedProcessException {
+        if (database != null) {
+            database.stop();
+        }
+    }
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        // Created through JDBC: DB.createDB needs the mariadb client, which needs libraries the server does not
+        registry.add("spring.datasource.url", () -> "jdbc:mysql://localhost:" + database.getConfiguration().getPort()
+                + "/heyo_load?createDatabaseIfNotExist=true");
+        registry.add("spring.datasource.username", () -> "root");
+        registry.add("spring.datasource.password", () -> "");
+    }
+
+    private final int users = Integer.getInteger("load.users", 20);
+    private final int friendsPerUser = Integer.getInteger("load.friends", 5);
+    private final int rate = Integer.getInteger("load.rate", 25);
+    private final int durationSeconds = Integer.getInteger("load.duration-seconds", 20);
+    private final String mix = System.getProperty("load.mix", "70:25:5");
+    private final String endpoint = System.getProperty("load.endpoint", "/ws");
+    private final long maxP99Ms = Long.getLong("load.max-p99-ms", 0L);
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private SimpUserRegistry simpUserRegistry;
+
+    private final List<StompSession> sessions = new ArrayList<>();
+    private final ConcurrentLinkedQueue<Long> chatLatencyNanos = new ConcurrentLinkedQueue<>();
+    private final Map<String, LongAdder> sent = counters("chat", "typing", "presence");
+    private final Map<String, LongAdder> delivered = counters("chat", "typing", "presence", "error");
+
+    @AfterEach
+    void tearDown() {
+        sessions.forEach(session -> {
+            if (session.isConnected()) {
+                session.disconnect();
+            }
+        });
+    }
+
+    @Test
+    @DisplayName("Should deliver every chat message under a mixed chat, typing and presence load")
+    void testMixedLoad() throws Exception {
+        // Arrange
+        List<User> seeded = seedUsers();
+        List<Long> ids = seeded.stream().map(User::getId).toList();
+        WebSocketStompClient client = stompClient();
+        for (User user : seeded) {
+            sessions.add(connect(client, user));
+        }
+        await().atMost(Duration.ofSeconds(60)).until(() -> simpUserRegistry.getUserCount() == users
+                && simpUserRegistry.findSubscriptions(subscription -> true).size() == users * 4);
+
+        int[] weights = parseMix();
+        boolean[] offline = new boolean[users];
+        ScheduledExecutorService driver = Executors.newSingleThreadScheduledExecutor();
+        double perTick = rate / 100.0;
+        double[] carry = {0};
+
+        // Act - presence frames from connecting are not part of the run
+        delivered.values().forEach(LongAdder::reset);
+        long startedAt = System.nanoTime();
+        driver.scheduleAtFixedRate(() -> {
+            carry[0] += perTick;
+            for (; carry[0] >= 1; carry[0]--) {
+                sendRandomFrame(ids, weights, offline);
+            }
+        }, 0, 10, TimeUnit.MILLISECONDS);
+        Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+        driver.shutdown();
+        driver.awaitTermination(5, TimeUnit.SECONDS);
+        long sentChats = sent.get("chat").sum();
+        await().atMost(Duration.ofSeconds(60)).pollInterval(Duration.ofMillis(100))
+                .until(() -> delivered.get("chat").sum() >= sentChats || delivered.get("error").sum() > 0);
+        double elapsedSeconds = (System.nanoTime() - startedAt) / 1e9;
+
+        // Assert
+        List<Long> latencies = chatLatencyNanos.stream().sorted().toList();
+        report(elapsedSeconds, latencies);
+        assertEquals(0, delivered.get("error").sum(), "error frames received");
+        assertEquals(sentChats, delivered.get("chat").sum(), "chat messages lost");
+        if (maxP99Ms > 0) {
+            assertTrue(percentileMs(latencies, 99) <= maxP99Ms,
+                    "p99 " + percentileMs(latencies, 99) + " ms over load.max-p99-ms=" + maxP99Ms);
+        }
+    }
+
+    private List<User> seedUsers() {
+        return transactionTemplate.execute(status -> {
+            List<User> created = new ArrayList<>();
+            for (int i = 0; i < users; i++) {
+                created.add(userRepository.save(User.builder()
+                        .username("load" + i)
+                        .email("load" + i + "@heyo.test")
+                        .password("password")
+                        .role(User.Role.USER)
+                        .friends(new HashSet<>())
+                        .build()));
+            }
+            // A ring: everyone is friends with the next friendsPerUser users
+            for (int i = 0; i < users; i++) {
+                for (int k = 1; k <= Math.min(friendsPerUser, users - 1); k++) {
+                    User user = created.get(i);
+                    User friend = created.get((i + k) % users);
+                    user.getFriends().add(friend);
+                    friend.getFriends().add(user);
+                }
+            }
+            return userRepository.saveAll(created);
+        });
+    }
+
+    private WebSocketStompClient stompClient() {
+        StandardWebSocketClient webSocketClient = new StandardWebSocketClient();
+        WebSocketStompClient client = endpoint.equals("/ws")
+                ? new WebSocketStompClient(new SockJsClient(List.of(new WebSocketTransport(webSocketClient))))
+                : new WebSocketStompClient(webSocketClient);
+        client.setMessageConverter(new MappingJackson2MessageConverter());
+        return client;
+    }
+
+    private StompSession connect(WebSocketStompClient client, User user) throws Exception {
+        StompHeaders connectHeaders = new StompHeaders();
+        connectHeaders.add("Authorization", "Bearer " + jwtService.generateToken(user));
+        String scheme = endpoint.equals("/ws") ? "http" : "ws";
+        StompSession session = client.connectAsync(scheme + "://localhost:" + port + endpoint,
+                new WebSocketHttpHeaders(), connectHeaders, new StompSessionHandlerAdapter() {
+                }).get(30, TimeUnit.SECONDS);
+
+        long userId = user.getId();
+        session.subscribe("/user/queue/messages", handler(payload -> {
+            // Count the receiver's copy only; the sender gets an echo of the same message
+            if (((Number) payload.get("receiverId")).longValue() == userId) {
+                String content = (String) payload.get("content");
+                chatLatencyNanos.add(System.nanoTime() - Long.parseLong(content.substring(LATENCY_PREFIX.length())));
+                delivered.get("chat").increment();
+            }
+        }));
+        session.subscribe("/user/queue/typing", handler(payload -> delivered.get("typing").increment()));
+        session.subscribe("/user/queue/status", handler(payload -> delivered.get("presence").increment()));
+        session.subscribe("/user/queue/errors", handler(payload -> delivered.get("error").increment()));
+        return session;
+    }
+
+    private void sendRandomFrame(List<Long> ids, int[] weights, boolean[] offline) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int index = random.nextInt(users);
+        StompSession session = sessions.get(index);
+        Long friendId = ids.get((index + 1 + random.nextInt(Math.min(friendsPerUser, users - 1))) % users);
+        int roll = random.nextInt(weights[0] + weights[1] + weights[2]);
+        try {
+            if (roll < weights[0]) {
+                session.send("/app/chat.send", Map.of("receiverId", friendId, "content", LATENCY_PREFIX + System.nanoTime()));
+                sent.get("chat").increment();
+            } else if (roll < weights[0] + weights[1]) {
+                session.send("/app/chat.typing", Map.of("receiverId", friendId));
+                sent.get("typing").increment();
+            } else {
+                offline[index] = !offline[index];
+                session.send(offline[index] ? "/app/user.offline" : "/app/user.online", Map.of());
+                sent.get("presence").increment();
+            }
+        } catch (RuntimeException e) {
+            delivered.get("error").increment();
+        }
+    }
+
+    private void report(double elapsedSeconds, List<Long> latencies) {
+        long deliveredTotal = delivered.values().stream().mapToLong(LongAdder::sum).sum();
+        long sentTotal = sent.values().stream().mapToLong(LongAdder::sum).sum();
+        System.out.printf("%n=== STOMP load: %d users over %s, %d frames/s for %d s, mix %s ===%n",
+                users, endpoint, rate, durationSeconds, mix);
+        sent.forEach((type, count) -> System.out.printf("%-9s sent %8d  delivered %8d%n",
+                type, count.sum(), delivered.get(type).sum()));
+        System.out.printf("errors    %8d%n", delivered.get("error").sum());
+        System.out.printf("sent      %8.1f frames/s, delivered %8.1f frames/s%n",
+                sentTotal / elapsedSeconds, deliveredTotal / elapsedSeconds);
+        System.out.printf("chat latency ms  p50 %.2f  p99 %.2f  max %.2f%n%n",
+                percentileMs(latencies, 50), percentileMs(latencies, 99), percentileMs(latencies, 100));
+    }
+
+    private static double percentileMs(List<Long> sorted, int percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(index, 0)) / 1e6;
+    }
+
+    private int[] parseMix() {
+        String[] parts = mix.split(":");
+        if (parts.length != 3) {
+            throw new IllegalStateException("load.mix must be chat:typing:presence weights, got " + mix);
+        }
+        return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2])};
+    }
+
+    private static Map<String, LongAdder> counters(String... types) {
+        Map<String, LongAdder> counters = new LinkedHashMap<>();
+        for (String type : types) {
+            counters.put(type, new LongAdder());
+        }
+        return counters;
+    }
+
+    private static StompFrameHandler handler(Consumer<Map<String, Object>> consumer) {
+        return new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return Map.class;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public void handleFrame(StompHeaders headers, Object payload) {
+                consumer.accept((Map<String, Object>) payload);
+            }
+        };
+    }
+}
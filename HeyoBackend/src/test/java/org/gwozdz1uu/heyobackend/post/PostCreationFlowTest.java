@@ -5,6 +5,7 @@ import org.gwozdz1uu.heyobackend.model.User;
 import org.gwozdz1uu.heyobackend.post.dto.PostCreateRequest;
 import org.gwozdz1uu.heyobackend.post.dto.PostDTO;
 import org.gwozdz1uu.heyobackend.post.service.PostService;
+import org.gwozdz1uu.heyobackend.post.service.TimelineService;
 import org.gwozdz1uu.heyobackend.repository.CommentRepository;
 import org.gwozdz1uu.heyobackend.repository.PostRepository;
 import org.junit.jupiter.api.BeforeEach;
@@ -33,6 +34,9 @@ class PostCreationFlowTest {
     @Mock
     private CommentRepository commentRepository;
 
+    @Mock
+    private TimelineService timelineService;
+
     @InjectMocks
     private PostService postService;
 
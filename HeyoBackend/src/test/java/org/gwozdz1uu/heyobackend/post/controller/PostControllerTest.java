@@ -5,7 +5,9 @@ import org.gwozdz1uu.heyobackend.dto.CommentDTO;
 import org.gwozdz1uu.heyobackend.model.User;
 import org.gwozdz1uu.heyobackend.post.dto.PostCreateRequest;
 import org.gwozdz1uu.heyobackend.post.dto.PostDTO;
+import org.gwozdz1uu.heyobackend.post.dto.PostSliceDTO;
 import org.gwozdz1uu.heyobackend.post.service.PostService;
+import org.gwozdz1uu.heyobackend.security.JwtService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -16,6 +18,7 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.http.MediaType;
+import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
 
@@ -28,6 +31,7 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -44,6 +48,13 @@ class PostControllerTest {
     @MockBean
     private PostService postService;
 
+    // JwtAuthenticationFilter is picked up by the slice; its dependencies are not
+    @MockBean
+    private JwtService jwtService;
+
+    @MockBean
+    private UserDetailsService userDetailsService;
+
     private PostDTO postDTO;
     private PostCreateRequest postCreateRequest;
 
@@ -161,6 +172,51 @@ class PostControllerTest {
         verify(postService).getFeed(any(User.class), any(org.springframework.data.domain.Pageable.class));
     }
 
+    @Test
+    @DisplayName("Should get a keyset slice of the feed when a limit is given")
+    void testGetFeedSlice() throws Exception {
+        // Arrange
+        User currentUser = currentUser();
+        PostSliceDTO slice = PostSliceDTO.builder()
+                .content(Arrays.asList(postDTO))
+                .hasNext(true)
+                .nextCursor("2024-01-15T10:30,1")
+                .build();
+        when(postService.getFeedSlice(currentUser, "2024-01-15T11:00,7", 10)).thenReturn(slice);
+
+        // Act & Assert - a model User principal, which @AuthenticationPrincipal resolves
+        mockMvc.perform(get("/api/posts").param("before", "2024-01-15T11:00,7").param("limit", "10")
+                        .with(user(currentUser)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].id").value(1L))
+                .andExpect(jsonPath("$.hasNext").value(true))
+                .andExpect(jsonPath("$.nextCursor").value("2024-01-15T10:30,1"))
+                .andExpect(jsonPath("$.totalElements").doesNotExist());
+
+        verify(postService, never()).getFeed(any(), any());
+    }
+
+    @Test
+    @DisplayName("Should get a keyset slice of a user's posts when a limit is given")
+    void testGetUserPostsSlice() throws Exception {
+        // Arrange
+        User currentUser = currentUser();
+        PostSliceDTO slice = PostSliceDTO.builder()
+                .content(Arrays.asList(postDTO))
+                .hasNext(false)
+                .build();
+        when(postService.getUserPostsSlice(1L, currentUser, null, 5)).thenReturn(slice);
+
+        // Act & Assert
+        mockMvc.perform(get("/api/posts/user/1").param("limit", "5").with(user(currentUser)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].id").value(1L))
+                .andExpect(jsonPath("$.hasNext").value(false))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+
+        verify(postService, never()).getUserPosts(any(), any(), any());
+    }
+
     @Test
     @DisplayName("Should get user posts")
     @WithMockUser
@@ -323,4 +379,14 @@ class PostControllerTest {
                         .content(objectMapper.writeValueAsString(requestWithEmptyContent)))
                 .andExpect(status().isOk());
     }
+
+    private static User currentUser() {
+        return User.builder()
+                .id(2L)
+                .username("reader")
+                .email("reader@example.com")
+                .password("password")
+                .role(User.Role.USER)
+                .build();
+    }
 }
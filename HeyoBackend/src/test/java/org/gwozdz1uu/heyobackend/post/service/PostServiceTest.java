@@ -2,10 +2,12 @@ package org.gwozdz1uu.heyobackend.post.service;
 
 import org.gwozdz1uu.heyobackend.dto.CommentDTO;
 import org.gwozdz1uu.heyobackend.model.Comment;
+import org.gwozdz1uu.heyobackend.model.Notification;
 import org.gwozdz1uu.heyobackend.model.Post;
 import org.gwozdz1uu.heyobackend.model.User;
 import org.gwozdz1uu.heyobackend.post.dto.PostCreateRequest;
 import org.gwozdz1uu.heyobackend.post.dto.PostDTO;
+import org.gwozdz1uu.heyobackend.post.dto.PostSliceDTO;
 import org.gwozdz1uu.heyobackend.repository.CommentRepository;
 import org.gwozdz1uu.heyobackend.repository.PostRepository;
 import org.junit.jupiter.api.BeforeEach;
@@ -26,6 +28,10 @@ import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -42,6 +48,9 @@ class PostServiceTest {
     @Mock
     private org.gwozdz1uu.heyobackend.notification.service.NotificationService notificationService;
 
+    @Mock
+    private TimelineService timelineService;
+
     @InjectMocks
     private PostService postService;
 
@@ -108,6 +117,7 @@ class PostServiceTest {
         assertEquals(author.getUsername(), result.getAuthorUsername());
         
         verify(postRepository).save(any(Post.class));
+        verify(timelineService).fanOut(author.getId(), 1L);
     }
 
     @Test
@@ -185,7 +195,7 @@ class PostServiceTest {
     @DisplayName("Should get post by ID")
     void testGetPost() {
         // Arrange
-        when(postRepository.findById(1L)).thenReturn(Optional.of(post));
+        when(postRepository.findDTOById(1L)).thenReturn(Optional.of(view(post)));
 
         // Act
         PostDTO result = postService.getPost(1L, currentUser);
@@ -196,14 +206,15 @@ class PostServiceTest {
         assertEquals(post.getContent(), result.getContent());
         assertEquals(post.getImageUrl(), result.getImageUrl());
         assertEquals(author.getId(), result.getAuthorId());
-        verify(postRepository).findById(1L);
+        verify(postRepository).findDTOById(1L);
+        verify(postRepository, never()).findById(anyLong());
     }
 
     @Test
     @DisplayName("Should throw exception when post not found")
     void testGetPost_NotFound() {
         // Arrange
-        when(postRepository.findById(999L)).thenReturn(Optional.empty());
+        when(postRepository.findDTOById(999L)).thenReturn(Optional.empty());
 
         // Act & Assert
         assertThrows(RuntimeException.class, () -> {
@@ -212,33 +223,92 @@ class PostServiceTest {
     }
 
     @Test
-    @DisplayName("Should get feed with pagination")
+    @DisplayName("Should get feed from the timeline in timeline order")
     void testGetFeed() {
         // Arrange
-        List<Post> posts = Arrays.asList(post);
-        Page<Post> postPage = new PageImpl<>(posts, PageRequest.of(0, 20), 1);
-        
-        when(postRepository.findAllByOrderByCreatedAtDesc(any(Pageable.class))).thenReturn(postPage);
+        Post older = Post.builder()
+                .id(2L)
+                .author(author)
+                .content("Older post")
+                .likes(new HashSet<>())
+                .comments(new ArrayList<>())
+                .createdAt(LocalDateTime.now().minusHours(1))
+                .build();
+        Pageable pageable = PageRequest.of(0, 20);
+
+        when(timelineService.postIds(currentUser.getId(), pageable))
+                .thenReturn(new PageImpl<>(List.of(post.getId(), older.getId(), 99L), pageable, 3));
+        when(postRepository.findDTOsByIdIn(List.of(post.getId(), older.getId(), 99L))).thenReturn(List.of(view(older), view(post)));
 
         // Act
-        Page<PostDTO> result = postService.getFeed(currentUser, PageRequest.of(0, 20));
+        Page<PostDTO> result = postService.getFeed(currentUser, pageable);
 
-        // Assert
+        // Assert - the deleted post 99 is skipped
         assertNotNull(result);
-        assertEquals(1, result.getTotalElements());
-        assertEquals(1, result.getContent().size());
+        assertEquals(2, result.getTotalElements());
+        assertEquals(2, result.getContent().size());
         assertEquals(post.getContent(), result.getContent().get(0).getContent());
-        verify(postRepository).findAllByOrderByCreatedAtDesc(any(Pageable.class));
+        assertEquals("Older post", result.getContent().get(1).getContent());
+        verify(postRepository, never()).findAllByOrderByCreatedAtDesc(any(Pageable.class));
+    }
+
+    @Test
+    @DisplayName("Should read one more timeline id than the limit to find the next cursor")
+    void testGetFeedSlice() {
+        // Arrange
+        Post older = Post.builder()
+                .id(2L)
+                .author(author)
+                .content("Older post")
+                .likes(new HashSet<>())
+                .comments(new ArrayList<>())
+                .createdAt(LocalDateTime.of(2024, 1, 15, 10, 30))
+                .build();
+        when(timelineService.postIds(currentUser.getId(), 7L, 3)).thenReturn(List.of(post.getId(), older.getId(), 1L));
+        when(postRepository.findDTOsByIdIn(List.of(post.getId(), older.getId()))).thenReturn(List.of(view(post), view(older)));
+
+        // Act
+        PostSliceDTO result = postService.getFeedSlice(currentUser, "2024-01-15T11:00,7", 2);
+
+        // Assert
+        assertEquals(2, result.getContent().size());
+        assertTrue(result.isHasNext());
+        assertEquals("2024-01-15T10:30,2", result.getNextCursor());
+    }
+
+    @Test
+    @DisplayName("Should continue a user's posts after the cursor without a count query")
+    void testGetUserPostsSlice() {
+        // Arrange
+        LocalDateTime createdAt = LocalDateTime.of(2024, 1, 15, 11, 0);
+        when(postRepository.findDTOsByAuthorIdBefore(1L, createdAt, 7L, PageRequest.of(0, 21))).thenReturn(List.of(view(post)));
+
+        // Act
+        PostSliceDTO result = postService.getUserPostsSlice(1L, currentUser, "2024-01-15T11:00,7", null);
+
+        // Assert
+        assertEquals(1, result.getContent().size());
+        assertFalse(result.isHasNext());
+        assertNull(result.getNextCursor());
+        verify(postRepository, never()).findDTOsByAuthorId(anyLong(), any(Pageable.class));
+    }
+
+    @Test
+    @DisplayName("Should reject a malformed cursor")
+    void testGetUserPostsSlice_InvalidCursor() {
+        // Act & Assert
+        assertThrows(RuntimeException.class, () -> postService.getUserPostsSlice(1L, currentUser, "yesterday", 10));
+        verifyNoInteractions(postRepository);
     }
 
     @Test
     @DisplayName("Should get user posts")
     void testGetUserPosts() {
         // Arrange
-        List<Post> posts = Arrays.asList(post);
-        Page<Post> postPage = new PageImpl<>(posts, PageRequest.of(0, 20), 1);
+        List<PostDTO> posts = Arrays.asList(view(post));
+        Page<PostDTO> postPage = new PageImpl<>(posts, PageRequest.of(0, 20), 1);
         
-        when(postRepository.findByAuthorIdOrderByCreatedAtDesc(eq(1L), any(Pageable.class))).thenReturn(postPage);
+        when(postRepository.findDTOsByAuthorId(eq(1L), any(Pageable.class))).thenReturn(postPage);
 
         // Act
         Page<PostDTO> result = postService.getUserPosts(1L, currentUser, PageRequest.of(0, 20));
@@ -247,41 +317,90 @@ class PostServiceTest {
         assertNotNull(result);
         assertEquals(1, result.getTotalElements());
         assertEquals(author.getId(), result.getContent().get(0).getAuthorId());
-        verify(postRepository).findByAuthorIdOrderByCreatedAtDesc(eq(1L), any(Pageable.class));
+        verify(postRepository).findDTOsByAuthorId(eq(1L), any(Pageable.class));
+    }
+
+    @Test
+    @DisplayName("Should resolve likedByCurrentUser for a whole page with one probe")
+    void testGetUserPosts_LikedByCurrentUser() {
+        // Arrange
+        Post unliked = Post.builder()
+                .id(2L)
+                .author(author)
+                .content("Unliked post")
+                .createdAt(LocalDateTime.now())
+                .build();
+        when(postRepository.findDTOsByAuthorId(eq(1L), any(Pageable.class)))
+                .thenReturn(new PageImpl<>(List.of(view(post), view(unliked)), PageRequest.of(0, 20), 2));
+        when(postRepository.findLikedPostIds(currentUser.getId(), List.of(1L, 2L))).thenReturn(List.of(1L));
+
+        // Act
+        Page<PostDTO> result = postService.getUserPosts(1L, currentUser, PageRequest.of(0, 20));
+
+        // Assert
+        assertTrue(result.getContent().get(0).isLikedByCurrentUser());
+        assertFalse(result.getContent().get(1).isLikedByCurrentUser());
+        verify(postRepository, times(1)).findLikedPostIds(anyLong(), anyList());
     }
 
     @Test
     @DisplayName("Should like post when not liked")
     void testLikePost_AddLike() {
         // Arrange
-        post.setLikes(new HashSet<>());
         when(postRepository.findById(1L)).thenReturn(Optional.of(post));
-        when(postRepository.save(any(Post.class))).thenReturn(post);
+        when(postRepository.existsLike(1L, currentUser.getId())).thenReturn(false);
+        when(postRepository.addLike(1L, currentUser.getId())).thenReturn(1);
+        when(postRepository.findLikesCount(1L)).thenReturn(1);
 
         // Act
         PostDTO result = postService.likePost(1L, currentUser);
 
         // Assert
         assertNotNull(result);
-        verify(postRepository).findById(1L);
-        verify(postRepository).save(any(Post.class));
+        assertEquals(1, result.getLikesCount());
+        assertTrue(result.isLikedByCurrentUser());
+        verify(postRepository).incrementLikesCount(1L, 1);
+        verify(notificationService).createNotification(eq(author), eq(currentUser),
+                eq(Notification.NotificationType.NEW_LIKE), anyString(), eq(1L));
+        verify(postRepository, never()).save(any(Post.class));
     }
 
     @Test
     @DisplayName("Should unlike post when already liked")
     void testLikePost_RemoveLike() {
         // Arrange
-        post.setLikes(new HashSet<>(Collections.singletonList(currentUser)));
         when(postRepository.findById(1L)).thenReturn(Optional.of(post));
-        when(postRepository.save(any(Post.class))).thenReturn(post);
+        when(postRepository.existsLike(1L, currentUser.getId())).thenReturn(true);
+        when(postRepository.removeLike(1L, currentUser.getId())).thenReturn(1);
+        when(postRepository.findLikesCount(1L)).thenReturn(0);
 
         // Act
         PostDTO result = postService.likePost(1L, currentUser);
 
         // Assert
         assertNotNull(result);
-        verify(postRepository).findById(1L);
-        verify(postRepository).save(any(Post.class));
+        assertEquals(0, result.getLikesCount());
+        assertFalse(result.isLikedByCurrentUser());
+        verify(postRepository).incrementLikesCount(1L, -1);
+        verifyNoInteractions(notificationService);
+    }
+
+    @Test
+    @DisplayName("Should leave the counter alone when a concurrent request already added the like")
+    void testLikePost_LostRace() {
+        // Arrange
+        when(postRepository.findById(1L)).thenReturn(Optional.of(post));
+        when(postRepository.existsLike(1L, currentUser.getId())).thenReturn(false);
+        when(postRepository.addLike(1L, currentUser.getId())).thenReturn(0);
+        when(postRepository.findLikesCount(1L)).thenReturn(1);
+
+        // Act
+        PostDTO result = postService.likePost(1L, currentUser);
+
+        // Assert
+        assertEquals(1, result.getLikesCount());
+        verify(postRepository, never()).incrementLikesCount(anyLong(), anyInt());
+        verifyNoInteractions(notificationService);
     }
 
     @Test
@@ -308,6 +427,7 @@ class PostServiceTest {
         assertEquals(currentUser.getId(), result.getAuthorId());
         verify(postRepository).findById(1L);
         verify(commentRepository).save(any(Comment.class));
+        verify(postRepository).incrementCommentsCount(1L, 1);
     }
 
     @Test
@@ -378,10 +498,13 @@ class PostServiceTest {
     void testPostDTO_MappingWithImageUrl() {
         // Arrange
         post.setImageUrl("https://example.com/image.jpg");
-        when(postRepository.findById(1L)).thenReturn(Optional.of(post));
+        PostCreateRequest request = new PostCreateRequest();
+        request.setContent(post.getContent());
+        request.setImageUrl(post.getImageUrl());
+        when(postRepository.save(any(Post.class))).thenReturn(post);
 
         // Act
-        PostDTO result = postService.getPost(1L, currentUser);
+        PostDTO result = postService.createPost(request, author);
 
         // Assert
         assertEquals(post.getImageUrl(), result.getImageUrl());
@@ -395,13 +518,22 @@ class PostServiceTest {
     void testPostDTO_MappingWithoutImageUrl() {
         // Arrange
         post.setImageUrl(null);
-        when(postRepository.findById(1L)).thenReturn(Optional.of(post));
+        PostCreateRequest request = new PostCreateRequest();
+        request.setContent(post.getContent());
+        when(postRepository.save(any(Post.class))).thenReturn(post);
 
         // Act
-        PostDTO result = postService.getPost(1L, currentUser);
+        PostDTO result = postService.createPost(request, author);
 
         // Assert
         assertNull(result.getImageUrl());
         assertEquals(post.getContent(), result.getContent());
     }
+
+    // What PostRepository's constructor expression returns for the post
+    private static PostDTO view(Post post) {
+        return new PostDTO(post.getId(), post.getAuthor().getId(), post.getAuthor().getUsername(),
+                post.getAuthor().getAvatarUrl(), post.getContent(), post.getImageUrl(),
+                post.getLikesCount(), post.getCommentsCount(), false, post.getCreatedAt());
+    }
 }
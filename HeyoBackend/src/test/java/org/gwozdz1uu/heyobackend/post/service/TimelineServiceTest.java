@@ -0,0 +1,151 @@
+package org.gwozdz1uu.heyobackend.post.service;
+
+import org.gwozdz1uu.heyobackend.dto.UserSnapshot;
+import org.gwozdz1uu.heyobackend.repository.PostRepository;
+import org.gwozdz1uu.heyobackend.repository.TimelineEntryRepository;
+import org.gwozdz1uu.heyobackend.repository.UserRepository;
+import org.gwozdz1uu.heyobackend.service.FriendshipChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Timeline Service Tests")
+class TimelineServiceTest {
+
+    @Mock
+    private TimelineEntryRepository timelineEntryRepository;
+
+    @Mock
+    private PostRepository postRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @InjectMocks
+    private TimelineService timelineService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(timelineService, "maxFanOutFriends", 100);
+        ReflectionTestUtils.setField(timelineService, "backfillPosts", 50);
+    }
+
+    @Test
+    @DisplayName("Should fan a post out to every friend below the limit")
+    void testFanOut_BelowLimit() {
+        // Arrange
+        when(userRepository.findFriendsCount(1L)).thenReturn(100);
+
+        // Act
+        timelineService.fanOut(1L, 10L);
+
+        // Assert
+        verify(timelineEntryRepository).fanOut(10L);
+        verify(timelineEntryRepository, never()).insert(anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    @DisplayName("Should write only the author's own entry above the limit")
+    void testFanOut_AboveLimit() {
+        // Arrange
+        when(userRepository.findFriendsCount(1L)).thenReturn(101);
+
+        // Act
+        timelineService.fanOut(1L, 10L);
+
+        // Assert
+        verify(timelineEntryRepository).insert(1L, 10L, 1L);
+        verify(timelineEntryRepository, never()).fanOut(anyLong());
+    }
+
+    @Test
+    @DisplayName("Should read a page straight from the timeline when no friend is fanned out on read")
+    void testPostIds_TimelineOnly() {
+        // Arrange
+        when(userRepository.findFriendIdsWithMoreFriendsThan(1L, 100)).thenReturn(List.of());
+        when(timelineEntryRepository.findPostIds(1L, Long.MAX_VALUE, PageRequest.of(0, 4)))
+                .thenReturn(List.of(40L, 30L, 20L, 10L));
+        when(timelineEntryRepository.countByUserId(1L)).thenReturn(5L);
+
+        // Act
+        Page<Long> page = timelineService.postIds(1L, PageRequest.of(1, 2));
+
+        // Assert
+        assertEquals(List.of(20L, 10L), page.getContent());
+        assertEquals(5L, page.getTotalElements());
+        verifyNoInteractions(postRepository);
+    }
+
+    @Test
+    @DisplayName("Should merge posts of friends fanned out on read into the timeline, newest first")
+    void testPostIds_MergesFannedOutOnRead() {
+        // Arrange
+        List<Long> popular = List.of(7L);
+        when(userRepository.findFriendIdsWithMoreFriendsThan(1L, 100)).thenReturn(popular);
+        when(timelineEntryRepository.findPostIdsExcludingAuthors(1L, popular, 50L, PageRequest.of(0, 3)))
+                .thenReturn(List.of(45L, 30L, 12L));
+        when(postRepository.findIdsByAuthorIdIn(popular, 50L, PageRequest.of(0, 3)))
+                .thenReturn(List.of(49L, 31L, 5L));
+
+        // Act
+        List<Long> ids = timelineService.postIds(1L, 50L, 3);
+
+        // Assert
+        assertEquals(List.of(49L, 45L, 31L), ids);
+        verify(timelineEntryRepository, never()).findPostIds(anyLong(), anyLong(), any());
+    }
+
+    @Test
+    @DisplayName("Should backfill both timelines for new friends and clear them for ex-friends")
+    void testOnFriendshipChanged() {
+        // Arrange
+        UserSnapshot alice = new UserSnapshot(1L, "alice", null);
+        UserSnapshot bob = new UserSnapshot(2L, "bob", null);
+        when(userRepository.findFriendsCount(anyLong())).thenReturn(3);
+
+        // Act
+        timelineService.onFriendshipChanged(new FriendshipChangedEvent(alice, bob, true));
+        timelineService.onFriendshipChanged(new FriendshipChangedEvent(alice, bob, false));
+
+        // Assert
+        verify(timelineEntryRepository).backfill(1L, 2L, 50);
+        verify(timelineEntryRepository).backfill(2L, 1L, 50);
+        verify(timelineEntryRepository).deleteByUserIdAndAuthorId(1L, 2L);
+        verify(timelineEntryRepository).deleteByUserIdAndAuthorId(2L, 1L);
+        verify(timelineEntryRepository, never()).backfillFriends(anyLong(), anyInt());
+    }
+
+    @Test
+    @DisplayName("Should backfill friends' timelines when an unfriended author drops back to the limit")
+    void testOnFriendshipChanged_BackAtLimit() {
+        // Arrange
+        UserSnapshot alice = new UserSnapshot(1L, "alice", null);
+        UserSnapshot bob = new UserSnapshot(2L, "bob", null);
+        when(userRepository.findFriendsCount(1L)).thenReturn(100);
+        when(userRepository.findFriendsCount(2L)).thenReturn(7);
+
+        // Act
+        timelineService.onFriendshipChanged(new FriendshipChangedEvent(alice, bob, false));
+
+        // Assert
+        verify(timelineEntryRepository).backfillFriends(1L, 50);
+        verify(timelineEntryRepository, never()).backfillFriends(eq(2L), anyInt());
+    }
+}
@@ -0,0 +1,137 @@
+package org.gwozdz1uu.heyobackend.service;
+
+import org.gwozdz1uu.heyobackend.dto.IndexedChatMessage;
+import org.gwozdz1uu.heyobackend.repository.ChatSearchRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Chat Search Index Tests")
+class ChatSearchIndexTest {
+
+    @Mock
+    private ChatSearchRepository chatSearchRepository;
+
+    @TempDir
+    Path indexDir;
+
+    private ChatSearchIndex chatSearchIndex;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        chatSearchIndex = new ChatSearchIndex(chatSearchRepository);
+        ReflectionTestUtils.setField(chatSearchIndex, "enabled", true);
+        ReflectionTestUtils.setField(chatSearchIndex, "indexDir", indexDir.toString());
+        ReflectionTestUtils.setField(chatSearchIndex, "queueCapacity", 100);
+        ReflectionTestUtils.setField(chatSearchIndex, "refreshIntervalMs", 50L);
+        ReflectionTestUtils.setField(chatSearchIndex, "maxLagMs", 1000L);
+        chatSearchIndex.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        chatSearchIndex.stop();
+    }
+
+    @Test
+    @DisplayName("Should only find messages from the user's own conversations")
+    void testSearch_FilteredToParticipant() {
+        // Arrange
+        chatSearchIndex.indexAfterCommit(List.of(
+                new IndexedChatMessage(1L, 1L, 2L, "Pizza tonight?"),
+                new IndexedChatMessage(2L, 3L, 4L, "pizza for us too")));
+
+        // Act & Assert
+        await().atMost(Duration.ofSeconds(5))
+                .untilAsserted(() -> assertEquals(List.of(1L), chatSearchIndex.search(1L, null, "pizza", 10)));
+        assertEquals(List.of(2L), chatSearchIndex.search(4L, null, "PIZZA", 10));
+        assertTrue(chatSearchIndex.search(5L, null, "pizza", 10).isEmpty());
+        assertEquals(0, chatSearchIndex.getIndexingLagMs());
+    }
+
+    @Test
+    @DisplayName("Should restrict the search to one conversation when a partner is given")
+    void testSearch_WithinConversation() {
+        // Arrange
+        chatSearchIndex.indexAfterCommit(List.of(
+                new IndexedChatMessage(1L, 1L, 2L, "see you at the cinema"),
+                new IndexedChatMessage(2L, 3L, 1L, "cinema on friday")));
+
+        // Act & Assert
+        await().atMost(Duration.ofSeconds(5))
+                .untilAsserted(() -> assertEquals(2, chatSearchIndex.search(1L, null, "cinema", 10).size()));
+        assertEquals(List.of(2L), chatSearchIndex.search(1L, 3L, "cinema", 10));
+        assertTrue(chatSearchIndex.search(1L, 2L, "friday", 10).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should rebuild the index from the database in keyset pages")
+    void testRebuild_ReadsAllMessages() {
+        // Arrange
+        when(chatSearchRepository.findAfter(eq(0L), anyInt()))
+                .thenReturn(List.of(new IndexedChatMessage(5L, 1L, 2L, "old message about holidays")));
+        when(chatSearchRepository.findAfter(eq(5L), anyInt())).thenReturn(List.of());
+
+        // Act
+        chatSearchIndex.rebuild();
+
+        // Assert
+        assertEquals(List.of(5L), chatSearchIndex.search(2L, 1L, "holidays", 10));
+        assertEquals(1, chatSearchIndex.getStatus().get("documents"));
+    }
+
+    @Test
+    @DisplayName("Should index messages above the last committed id on restart instead of rebuilding")
+    void testRestart_CatchesUpFromLastCommit() throws Exception {
+        // Arrange - a commit records id 5000; 5001 was sent but never committed to the index
+        when(chatSearchRepository.findAfter(eq(0L), anyInt()))
+                .thenReturn(List.of(new IndexedChatMessage(5000L, 1L, 2L, "before the commit")));
+        when(chatSearchRepository.findAfter(eq(5000L), anyInt())).thenReturn(List.of());
+        chatSearchIndex.rebuild();
+        chatSearchIndex.stop();
+        when(chatSearchRepository.findAfter(eq(4000L), anyInt())).thenReturn(List.of(
+                new IndexedChatMessage(5000L, 1L, 2L, "before the commit"),
+                new IndexedChatMessage(5001L, 1L, 2L, "lost in the crash")));
+        when(chatSearchRepository.findAfter(eq(5001L), anyInt())).thenReturn(List.of());
+        chatSearchIndex = new ChatSearchIndex(chatSearchRepository);
+        ReflectionTestUtils.setField(chatSearchIndex, "enabled", true);
+        ReflectionTestUtils.setField(chatSearchIndex, "indexDir", indexDir.toString());
+        ReflectionTestUtils.setField(chatSearchIndex, "queueCapacity", 100);
+        chatSearchIndex.start();
+
+        // Act
+        chatSearchIndex.rebuildIfNeeded();
+
+        // Assert
+        await().atMost(Duration.ofSeconds(5))
+                .untilAsserted(() -> assertEquals(List.of(5001L), chatSearchIndex.search(1L, 2L, "crash", 10)));
+        verify(chatSearchRepository, times(1)).findAfter(eq(0L), anyInt());
+        verify(chatSearchRepository, never()).hasMessages();
+        assertEquals(2, chatSearchIndex.getStatus().get("documents"));
+    }
+
+    @Test
+    @DisplayName("Should return nothing for a query without searchable terms")
+    void testSearch_BlankQuery() {
+        // Act & Assert
+        assertTrue(chatSearchIndex.search(1L, null, " ?! ", 10).isEmpty());
+        verifyNoInteractions(chatSearchRepository);
+    }
+}
@@ -0,0 +1,608 @@
+package org.gwozdz1uu.heyobackend.service;
+
+import org.gwozdz1uu.heyobackend.dto.ChatMessageDTO;
+import org.gwozdz1uu.heyobackend.dto.ChatSyncDTO;
+import org.gwozdz1uu.heyobackend.dto.ConversationDTO;
+import org.gwozdz1uu.heyobackend.dto.PendingChatMessage;
+import org.gwozdz1uu.heyobackend.dto.UserDTO;
+import org.gwozdz1uu.heyobackend.dto.UserSnapshot;
+import org.gwozdz1uu.heyobackend.dto.UserSummary;
+import org.gwozdz1uu.heyobackend.model.ChatMessage;
+import org.gwozdz1uu.heyobackend.model.Conversation;
+import org.gwozdz1uu.heyobackend.model.Notification;
+import org.gwozdz1uu.heyobackend.model.User;
+import org.gwozdz1uu.heyobackend.notification.service.NotificationService;
+import org.gwozdz1uu.heyobackend.model.ChatUnreadCounter;
+import org.gwozdz1uu.heyobackend.repository.ChatBatchRepository;
+import org.gwozdz1uu.heyobackend.repository.ChatMessageRepository;
+import org.gwozdz1uu.heyobackend.repository.ChatUnreadCounterRepository;
+import org.gwozdz1uu.heyobackend.repository.ConversationRepository;
+import org.gwozdz1uu.heyobackend.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ChatService Tests")
+class ChatServiceTest {
+
+    @Mock
+    private ChatMessageRepository chatMessageRepository;
+
+    @Mock
+    private ConversationRepository conversationRepository;
+
+    @Mock
+    private ChatUnreadCounterRepository chatUnreadCounterRepository;
+
+    @Mock
+    private ChatBatchRepository chatBatchRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private NotificationService notificationService;
+
+    @Mock
+    private PresenceService presenceService;
+
+    @Mock
+    private ChatSearchIndex chatSearchIndex;
+
+    @Mock
+    private ConversationSearchIndex conversationSearchIndex;
+
+    @Mock
+    private ChatSyncLog chatSyncLog;
+
+    @InjectMocks
+    private ChatService chatService;
+
+    private User alice;
+    private User bob;
+    private User carol;
+
+    @BeforeEach
+    void setUp() {
+        alice = User.builder()
+                .id(1L)
+                .username("alice")
+                .email("alice@test.com")
+                .password("password")
+                .friends(new HashSet<>())
+                .build();
+
+        bob = User.builder()
+                .id(2L)
+                .username("bob")
+                .email("bob@test.com")
+                .password("password")
+                .friends(new HashSet<>())
+                .build();
+
+        carol = User.builder()
+                .id(3L)
+                .username("carol")
+                .email("carol@test.com")
+                .password("password")
+                .friends(new HashSet<>())
+                .build();
+
+        alice.getFriends().add(bob);
+        alice.getFriends().add(carol);
+        bob.getFriends().add(alice);
+    }
+
+    @Test
+    @DisplayName("Should build inbox from conversation summaries without reading message history")
+    void testGetConversations_UsesReadModel() {
+        // Arrange
+        Conversation conversation = Conversation.builder()
+                .id(10L)
+                .user1(alice)
+                .user2(bob)
+                .lastMessageId(100L)
+                .lastMessagePreview("See you tomorrow")
+                .lastMessageAt(LocalDateTime.now())
+                .user1UnreadCount(3)
+                .user2UnreadCount(0)
+                .build();
+
+        when(userService.findById(alice.getId())).thenReturn(alice);
+        when(conversationRepository.findInbox(alice.getId())).thenReturn(List.of(conversation));
+
+        // Act
+        List<ConversationDTO> result = chatService.getConversations(alice);
+
+        // Assert
+        assertEquals(2, result.size());
+
+        ConversationDTO first = result.get(0);
+        assertEquals(10L, first.getId());
+        assertEquals(bob.getId(), first.getPartnerId());
+        assertEquals("See you tomorrow", first.getLastMessage());
+        assertEquals(3, first.getUnreadCount());
+
+        ConversationDTO second = result.get(1);
+        assertEquals(carol.getId(), second.getPartnerId());
+        assertNull(second.getLastMessage());
+        assertEquals(0, second.getUnreadCount());
+
+        verify(chatMessageRepository, never()).findConversation(any(), any());
+    }
+
+    @Test
+    @DisplayName("Should update conversation summary when sending a message")
+    void testSendMessage_RecordsMessageInConversation() {
+        // Arrange
+        Conversation conversation = Conversation.builder()
+                .id(10L)
+                .user1(alice)
+                .user2(bob)
+                .lastMessageId(99L)
+                .build();
+
+        when(userService.findById(bob.getId())).thenReturn(bob);
+        when(userService.areFriends(alice.getId(), bob.getId())).thenReturn(true);
+        when(conversationRepository.findByParticipants(1L, 2L)).thenReturn(Optional.of(conversation));
+        when(chatMessageRepository.save(any(ChatMessage.class))).thenAnswer(invocation -> {
+            ChatMessage message = invocation.getArgument(0);
+            message.setId(100L);
+            message.setCreatedAt(LocalDateTime.now());
+            return message;
+        });
+
+        // Act
+        ChatMessageDTO result = chatService.sendMessage(alice, bob.getId(), "Hello Bob");
+
+        // Assert
+        assertEquals(100L, result.getId());
+        verify(conversationRepository).recordMessage(eq(10L), eq(100L), eq("Hello Bob"), any(LocalDateTime.class), eq(bob.getId()));
+        verify(conversationRepository, never()).insertIfAbsent(anyLong(), anyLong());
+        verify(chatUnreadCounterRepository).increment(bob.getId(), 1);
+        verify(chatSyncLog).record(conversation, 0L);
+
+        verify(chatSearchIndex).indexAfterCommit(any());
+
+        // Existing conversation - no NEW_CHAT and no history load
+        verify(notificationService, never()).createNotification(any(), any(), eq(Notification.NotificationType.NEW_CHAT), any(), any());
+        verify(chatMessageRepository, never()).findConversation(any(), any());
+    }
+
+    @Test
+    @DisplayName("Should load the sender in the transaction when sending by id")
+    void testSendMessage_BySenderId() {
+        // Arrange
+        Conversation conversation = Conversation.builder()
+                .id(10L)
+                .user1(alice)
+                .user2(bob)
+                .lastMessageId(99L)
+                .build();
+
+        when(userService.findById(alice.getId())).thenReturn(alice);
+        when(userService.findById(bob.getId())).thenReturn(bob);
+        when(userService.areFriends(alice.getId(), bob.getId())).thenReturn(true);
+        when(conversationRepository.findByParticipants(1L, 2L)).thenReturn(Optional.of(conversation));
+        when(chatMessageRepository.save(any(ChatMessage.class))).thenAnswer(invocation -> {
+            ChatMessage message = invocation.getArgument(0);
+            message.setId(100L);
+            return message;
+        });
+
+        // Act
+        ChatMessageDTO result = chatService.sendMessage(alice.getId(), bob.getId(), "Hello Bob");
+
+        // Assert
+        assertEquals(alice.getUsername(), result.getSenderUsername());
+        verify(notificationService).createNotification(eq(bob), eq(alice), eq(Notification.NotificationType.NEW_MESSAGE), any(), eq(100L));
+    }
+
+    @Test
+    @DisplayName("Should create conversation row on first message")
+    void testSendMessage_CreatesConversationOnFirstMessage() {
+        // Arrange
+        Conversation conversation = Conversation.builder()
+                .id(11L)
+                .user1(alice)
+                .user2(bob)
+                .build();
+
+        when(userService.findById(alice.getId())).thenReturn(alice);
+        when(userService.areFriends(bob.getId(), alice.getId())).thenReturn(true);
+        when(conversationRepository.findByParticipants(1L, 2L)).thenReturn(Optional.empty());
+        when(conversationRepository.findByParticipantsForUpdate(1L, 2L)).thenReturn(Optional.of(conversation));
+        when(chatMessageRepository.save(any(ChatMessage.class))).thenAnswer(invocation -> {
+            ChatMessage message = invocation.getArgument(0);
+            message.setId(101L);
+            return message;
+        });
+
+        // Act
+        chatService.sendMessage(bob, alice.getId(), "Hi Alice");
+
+        // Assert - pair is stored in canonical order regardless of who writes first
+        verify(conversationRepository).insertIfAbsent(1L, 2L);
+        verify(conversationRepository).recordMessage(eq(11L), eq(101L), eq("Hi Alice"), any(), eq(alice.getId()));
+        verify(notificationService).createNotification(eq(alice), eq(bob), eq(Notification.NotificationType.NEW_CHAT), any(), eq(bob.getId()));
+    }
+
+    @Test
+    @DisplayName("Should return existing conversation from the read model when creating a chat")
+    void testCreateChatWithFriend_ExistingConversation() {
+        // Arrange
+        Conversation conversation = Conversation.builder()
+                .id(12L)
+                .user1(alice)
+                .user2(bob)
+                .lastMessageId(50L)
+                .lastMessagePreview("old news")
+                .user1UnreadCount(3)
+                .build();
+
+        when(userService.findById(bob.getId())).thenReturn(bob);
+        when(userService.areFriends(alice.getId(), bob.getId())).thenReturn(true);
+        when(conversationRepository.findByParticipants(1L, 2L)).thenReturn(Optional.of(conversation));
+
+        // Act
+        ConversationDTO result = chatService.createChatWithFriend(alice, bob.getId());
+
+        // Assert
+        assertEquals(12L, result.getId());
+        assertEquals("old news", result.getLastMessage());
+        assertEquals(3, result.getUnreadCount());
+        verify(chatMessageRepository, never()).findConversation(any(), any());
+        verifyNoInteractions(notificationService);
+    }
+
+    @Test
+    @DisplayName("Should move the read watermark and reset unread counter when marking conversation as read")
+    void testMarkAsRead_MovesWatermark() {
+        // Arrange
+        Conversation conversation = Conversation.builder()
+                .id(10L)
+                .user1(alice)
+                .user2(bob)
+                .user1UnreadCount(5)
+                .build();
+
+        when(conversationRepository.findByParticipantsForUpdate(1L, 2L)).thenReturn(Optional.of(conversation));
+        when(conversationRepository.findSeq(10L)).thenReturn(4L);
+
+        // Act
+        chatService.markAsRead(alice, bob.getId());
+
+        // Assert - a single-row write, no per-message UPDATE
+        verify(conversationRepository).markRead(10L, alice.getId());
+        verify(chatSyncLog).record(conversation, 4L);
+        verify(chatUnreadCounterRepository).decrement(alice.getId(), 5);
+        verifyNoInteractions(chatMessageRepository);
+    }
+
+    @Test
+    @DisplayName("Should also flip is_read rows when legacy column sync is enabled")
+    void testMarkAsRead_LegacyColumnSync() {
+        // Arrange
+        ReflectionTestUtils.setField(chatService, "legacyReadColumnSync", true);
+        when(conversationRepository.findByParticipantsForUpdate(1L, 2L)).thenReturn(Optional.empty());
+        when(userService.getReference(bob.getId())).thenReturn(bob);
+        when(userService.getReference(alice.getId())).thenReturn(alice);
+
+        // Act
+        chatService.markAsRead(alice, bob.getId());
+
+        // Assert
+        verify(chatMessageRepository).markAsRead(bob, alice);
+    }
+
+    @Test
+    @DisplayName("Should skip counter updates when nothing is unread")
+    void testMarkAsRead_NothingUnread() {
+        // Arrange
+        Conversation conversation = Conversation.builder()
+                .id(10L)
+                .user1(alice)
+                .user2(bob)
+                .user2UnreadCount(2)
+                .build();
+
+        when(conversationRepository.findByParticipantsForUpdate(1L, 2L)).thenReturn(Optional.of(conversation));
+
+        // Act
+        chatService.markAsRead(alice, bob.getId());
+
+        // Assert
+        verify(conversationRepository, never()).markRead(anyLong(), anyLong());
+        verifyNoInteractions(chatUnreadCounterRepository, chatMessageRepository);
+    }
+
+    @Test
+    @DisplayName("Should serve unread badge from the maintained counter")
+    void testGetUnreadCount_ReadsCounter() {
+        // Arrange
+        when(chatUnreadCounterRepository.findById(alice.getId()))
+                .thenReturn(Optional.of(ChatUnreadCounter.builder().userId(alice.getId()).unreadCount(7).build()));
+
+        // Act & Assert
+        assertEquals(7, chatService.getUnreadCount(alice));
+        verifyNoInteractions(chatMessageRepository);
+    }
+
+    @Test
+    @DisplayName("Should report zero unread when user has no counter row")
+    void testGetUnreadCount_NoCounter() {
+        // Arrange
+        when(chatUnreadCounterRepository.findById(carol.getId())).thenReturn(Optional.empty());
+
+        // Act & Assert
+        assertEquals(0, chatService.getUnreadCount(carol));
+    }
+
+    @Test
+    @DisplayName("Should page conversation history with a keyset cursor")
+    void testGetConversationPage_UsesCursor() {
+        // Arrange
+        Conversation conversation = Conversation.builder()
+                .id(10L)
+                .user1(alice)
+                .user2(bob)
+                .user2LastReadId(40L)
+                .build();
+
+        ChatMessage newer = ChatMessage.builder().id(41L).sender(bob).receiver(alice).content("newer").build();
+        ChatMessage older = ChatMessage.builder().id(40L).sender(alice).receiver(bob).content("older").build();
+
+        when(conversationRepository.findByParticipants(1L, 2L)).thenReturn(Optional.of(conversation));
+        when(chatMessageRepository.findInConversationBefore(eq(10L), eq(42L), any()))
+                .thenReturn(List.of(newer, older));
+
+        // Act
+        List<ChatMessageDTO> result = chatService.getConversationPage(alice, bob.getId(), 42L, 2);
+
+        // Assert - page is returned oldest first so the first id is the next cursor
+        assertEquals(2, result.size());
+        assertEquals(40L, result.get(0).getId());
+        assertEquals(41L, result.get(1).getId());
+        verify(chatMessageRepository, never()).findConversation(any(), any());
+
+        // Read state comes from each receiver's watermark
+        assertTrue(result.get(0).isRead());
+        assertFalse(result.get(1).isRead());
+    }
+
+    @Test
+    @DisplayName("Should return empty page when no conversation exists")
+    void testGetConversationPage_NoConversation() {
+        // Arrange
+        when(conversationRepository.findByParticipants(1L, 3L)).thenReturn(Optional.empty());
+
+        // Act
+        List<ChatMessageDTO> result = chatService.getConversationPage(alice, carol.getId(), null, 20);
+
+        // Assert
+        assertTrue(result.isEmpty());
+        verifyNoInteractions(chatMessageRepository);
+    }
+
+    @Test
+    @DisplayName("Should persist a write-behind batch with one summary update per conversation")
+    void testPersistBatch_GroupsByConversation() {
+        // Arrange
+        Conversation existing = Conversation.builder()
+                .id(10L)
+                .user1(alice)
+                .user2(bob)
+                .lastMessageId(99L)
+                .build();
+        Conversation fresh = Conversation.builder()
+                .id(11L)
+                .user1(alice)
+                .user2(carol)
+                .build();
+
+        LocalDateTime now = LocalDateTime.now();
+        List<PendingChatMessage> batch = List.of(
+                pending("a1", alice, bob, "one", now),
+                pending("b1", bob, alice, "two", now),
+                pending("a2", alice, bob, "three", now),
+                pending("a3", alice, carol, "hey carol", now)
+        );
+
+        when(conversationRepository.findByParticipants(1L, 2L)).thenReturn(Optional.of(existing));
+        when(conversationRepository.findByParticipants(1L, 3L)).thenReturn(Optional.of(fresh));
+        when(conversationRepository.findSeq(10L)).thenReturn(8L);
+        when(conversationRepository.findSeq(11L)).thenReturn(1L);
+        when(chatBatchRepository.insertMessages(batch)).thenReturn(List.of(100L, 101L, 102L, 103L));
+
+        // Act
+        List<Long> ids = chatService.persistBatch(batch);
+
+        // Assert
+        assertEquals(List.of(100L, 101L, 102L, 103L), ids);
+        verify(conversationRepository).advanceSeq(10L, 3);
+        verify(conversationRepository).advanceSeq(11L, 1);
+        assertEquals(List.of(6L, 7L, 8L, 1L), batch.stream().map(PendingChatMessage::getSeq).toList());
+        verify(chatSyncLog).record(List.of(existing, fresh), Map.of(10L, 6L, 11L, 1L));
+        verify(conversationRepository).recordMessages(eq(10L), eq(102L), eq("three"), eq(now), eq(1), eq(2));
+        verify(conversationRepository).recordMessages(eq(11L), eq(103L), eq("hey carol"), eq(now), eq(0), eq(1));
+        verify(chatUnreadCounterRepository).increment(bob.getId(), 2);
+        verify(chatUnreadCounterRepository).increment(alice.getId(), 1);
+        verify(chatUnreadCounterRepository).increment(carol.getId(), 1);
+        verify(conversationSearchIndex).conversationStarted(UserSnapshot.of(alice), UserSnapshot.of(carol));
+        verify(conversationSearchIndex, never()).conversationStarted(UserSnapshot.of(alice), UserSnapshot.of(bob));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Notification>> captor = ArgumentCaptor.forClass(List.class);
+        verify(chatBatchRepository).insertNotifications(captor.capture());
+        List<Notification> notifications = captor.getValue();
+        assertEquals(4, notifications.stream()
+                .filter(n -> n.getType() == Notification.NotificationType.NEW_MESSAGE).count());
+        assertEquals(1, notifications.stream()
+                .filter(n -> n.getType() == Notification.NotificationType.NEW_CHAT).count());
+        verifyNoInteractions(notificationService);
+    }
+
+    @Test
+    @DisplayName("Should return only conversations and messages changed since the sync token")
+    void testSync_ReturnsDelta() {
+        // Arrange
+        Conversation changed = Conversation.builder().id(11L).user1(alice).user2(carol).seq(7L).user2LastReadId(60L).build();
+
+        ChatMessage newest = ChatMessage.builder().id(61L).seq(7L).sender(carol).receiver(alice).content("newest").build();
+        ChatMessage older = ChatMessage.builder().id(60L).seq(6L).sender(alice).receiver(carol).content("older").build();
+
+        when(chatSyncLog.position(alice.getId())).thenReturn(9L);
+        when(chatSyncLog.changesSince(alice.getId(), 7L, 9L)).thenReturn(Optional.of(Map.of(11L, 6L)));
+        when(conversationRepository.findAllWithParticipants(Set.of(11L))).thenReturn(List.of(changed));
+        when(chatMessageRepository.findInConversationSince(eq(11L), eq(5L), eq(7L), any()))
+                .thenReturn(List.of(newest, older));
+
+        // Act
+        ChatSyncDTO result = chatService.sync(alice, ChatSyncToken.encode(7L));
+
+        // Assert - only the logged conversation is read, the inbox is not
+        assertEquals(1, result.getConversations().size());
+        assertEquals(11L, result.getConversations().get(0).getId());
+        assertEquals(60L, result.getConversations().get(0).getPartnerLastReadId());
+        assertEquals(List.of(60L, 61L), result.getMessages().stream().map(ChatMessageDTO::getId).toList());
+        assertTrue(result.getMessages().get(0).isRead());
+        assertTrue(result.getTruncatedConversationIds().isEmpty());
+        assertEquals(9L, ChatSyncToken.decode(result.getToken()));
+        verify(conversationRepository, never()).findInbox(anyLong());
+    }
+
+    @Test
+    @DisplayName("Should return summaries without messages when no sync token is given")
+    void testSync_NoToken() {
+        // Arrange
+        Conversation conversation = Conversation.builder().id(10L).user1(alice).user2(bob).seq(3L).build();
+        when(chatSyncLog.position(alice.getId())).thenReturn(4L);
+        when(conversationRepository.findInbox(alice.getId())).thenReturn(List.of(conversation));
+
+        // Act
+        ChatSyncDTO result = chatService.sync(alice, null);
+
+        // Assert
+        assertEquals(1, result.getConversations().size());
+        assertTrue(result.getMessages().isEmpty());
+        assertTrue(result.getTruncatedConversationIds().isEmpty());
+        assertEquals(4L, ChatSyncToken.decode(result.getToken()));
+        verifyNoInteractions(chatMessageRepository);
+    }
+
+    @Test
+    @DisplayName("Should resync every conversation when the token is older than the change log")
+    void testSync_ExpiredToken() {
+        // Arrange
+        Conversation conversation = Conversation.builder().id(10L).user1(alice).user2(bob).seq(3L).build();
+        when(chatSyncLog.position(alice.getId())).thenReturn(5000L);
+        when(chatSyncLog.changesSince(alice.getId(), 2L, 5000L)).thenReturn(Optional.empty());
+        when(conversationRepository.findInbox(alice.getId())).thenReturn(List.of(conversation));
+
+        // Act
+        ChatSyncDTO result = chatService.sync(alice, ChatSyncToken.encode(2L));
+
+        // Assert
+        assertEquals(List.of(10L), result.getTruncatedConversationIds());
+        assertTrue(result.getMessages().isEmpty());
+        verifyNoInteractions(chatMessageRepository);
+    }
+
+    @Test
+    @DisplayName("Should reject a malformed sync token")
+    void testSync_InvalidToken() {
+        // Act & Assert
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> chatService.sync(alice, "not a token"));
+        assertEquals("Invalid sync token", exception.getMessage());
+    }
+
+    @Test
+    @DisplayName("Should load search hits from the database in index order")
+    void testSearchMessages_HydratesHitsInOrder() {
+        // Arrange
+        Conversation conversation = Conversation.builder().id(10L).user1(alice).user2(bob).user1LastReadId(70L).build();
+        ChatMessage first = ChatMessage.builder().id(70L).conversation(conversation).sender(bob).receiver(alice).content("pizza tonight?").build();
+        ChatMessage second = ChatMessage.builder().id(71L).conversation(conversation).sender(alice).receiver(bob).content("pizza yes").build();
+
+        when(chatSearchIndex.search(alice.getId(), bob.getId(), "pizza", 20)).thenReturn(List.of(71L, 70L, 72L));
+        when(chatMessageRepository.findAllWithParticipants(List.of(71L, 70L, 72L))).thenReturn(List.of(first, second));
+
+        // Act
+        List<ChatMessageDTO> result = chatService.searchMessages(alice, "pizza", bob.getId(), 20);
+
+        // Assert - best match first, hits missing from the database are skipped
+        assertEquals(List.of(71L, 70L), result.stream().map(ChatMessageDTO::getId).toList());
+        assertTrue(result.get(1).isRead());
+        verify(chatMessageRepository, never()).findConversation(any(), any());
+    }
+
+    @Test
+    @DisplayName("Should search conversations from the partner index without touching chat tables")
+    void testSearchConversations_UsesPartnerIndex() {
+        // Arrange
+        when(conversationSearchIndex.search(alice.getId(), "bo", 50)).thenReturn(List.of(UserSnapshot.of(bob)));
+        when(presenceService.isOnline(bob.getId(), bob.getUsername())).thenReturn(true);
+
+        // Act
+        List<ConversationDTO> result = chatService.searchConversations(alice, "bo");
+
+        // Assert
+        assertEquals(1, result.size());
+        assertEquals(bob.getId(), result.get(0).getPartnerId());
+        assertTrue(result.get(0).isPartnerOnline());
+        verifyNoInteractions(conversationRepository, chatMessageRepository, userService);
+    }
+
+    @Test
+    @DisplayName("Should page friends without a conversation straight from the anti-join query")
+    void testGetFriendsWithoutChat_UsesAntiJoin() {
+        // Arrange
+        PageRequest pageable = PageRequest.of(0, 20);
+        UserSummary summary = new UserSummary(bob.getId(), bob.getUsername(), bob.getEmail(), null, null);
+        UserDTO dto = UserDTO.builder().id(bob.getId()).username(bob.getUsername()).build();
+        when(userRepository.findFriendsWithoutConversation(alice.getId(), pageable))
+                .thenReturn(new PageImpl<>(List.of(summary), pageable, 1));
+        when(userService.toDTO(summary)).thenReturn(dto);
+
+        // Act
+        Page<UserDTO> result = chatService.getFriendsWithoutChat(alice, pageable);
+
+        // Assert
+        assertEquals(List.of(dto), result.getContent());
+        assertEquals(1, result.getTotalElements());
+        verifyNoInteractions(chatMessageRepository, conversationRepository);
+    }
+
+    private PendingChatMessage pending(String clientId, User from, User to, String content, LocalDateTime createdAt) {
+        return PendingChatMessage.builder()
+                .clientMessageId(clientId)
+                .senderId(from.getId())
+                .senderUsername(from.getUsername())
+                .receiverId(to.getId())
+                .content(content)
+                .createdAt(createdAt)
+                .build();
+    }
+}
@@ -0,0 +1,87 @@
+package org.gwozdz1uu.heyobackend.service;
+
+import org.gwozdz1uu.heyobackend.model.Conversation;
+import org.gwozdz1uu.heyobackend.model.User;
+import org.gwozdz1uu.heyobackend.repository.ChatSyncCursorRepository;
+import org.gwozdz1uu.heyobackend.repository.ChatSyncLogRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Chat Sync Log Tests")
+class ChatSyncLogTest {
+
+    @Mock
+    private ChatSyncCursorRepository chatSyncCursorRepository;
+
+    @Mock
+    private ChatSyncLogRepository chatSyncLogRepository;
+
+    @InjectMocks
+    private ChatSyncLog chatSyncLog;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(chatSyncLog, "retention", 100L);
+    }
+
+    @Test
+    @DisplayName("Should log a change for both participants, taking user cursors in id order")
+    void testRecord_LogsEveryParticipantInIdOrder() {
+        // Arrange
+        Conversation aliceCarol = conversation(11L, 1L, 3L);
+        Conversation bobCarol = conversation(12L, 2L, 3L);
+        when(chatSyncCursorRepository.findSeq(1L)).thenReturn(Optional.of(5L));
+        when(chatSyncCursorRepository.findSeq(2L)).thenReturn(Optional.of(1L));
+        when(chatSyncCursorRepository.findSeq(3L)).thenReturn(Optional.of(150L));
+
+        // Act
+        chatSyncLog.record(List.of(aliceCarol, bobCarol), Map.of(11L, 4L, 12L, 9L));
+
+        // Assert
+        InOrder inOrder = inOrder(chatSyncCursorRepository);
+        inOrder.verify(chatSyncCursorRepository).advance(1L, 1);
+        inOrder.verify(chatSyncCursorRepository).advance(2L, 1);
+        inOrder.verify(chatSyncCursorRepository).advance(3L, 2);
+        verify(chatSyncLogRepository).insert(1L, 5L, 11L, 4L);
+        verify(chatSyncLogRepository).insert(2L, 1L, 12L, 9L);
+        verify(chatSyncLogRepository).insert(3L, 149L, 11L, 4L);
+        verify(chatSyncLogRepository).insert(3L, 150L, 12L, 9L);
+
+        // Only the user past the retention window is pruned
+        verify(chatSyncLogRepository).deleteUpTo(3L, 50L);
+        verify(chatSyncLogRepository, times(1)).deleteUpTo(anyLong(), anyLong());
+    }
+
+    @Test
+    @DisplayName("Should not replay a position the log no longer covers")
+    void testChangesSince_ExpiredPosition() {
+        // Act & Assert
+        assertTrue(chatSyncLog.changesSince(1L, 399L, 500L).isEmpty());
+        assertTrue(chatSyncLog.changesSince(1L, 501L, 500L).isEmpty());
+        verifyNoInteractions(chatSyncLogRepository);
+    }
+
+    private Conversation conversation(Long id, Long user1Id, Long user2Id) {
+        return Conversation.builder()
+                .id(id)
+                .user1(User.builder().id(user1Id).build())
+                .user2(User.builder().id(user2Id).build())
+                .build();
+    }
+}
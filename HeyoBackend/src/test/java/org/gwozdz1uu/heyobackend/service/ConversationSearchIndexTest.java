@@ -0,0 +1,151 @@
+package org.gwozdz1uu.heyobackend.service;
+
+import org.gwozdz1uu.heyobackend.dto.UserSnapshot;
+import org.gwozdz1uu.heyobackend.repository.ConversationRepository;
+import org.gwozdz1uu.heyobackend.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Conversation Search Index Tests")
+class ConversationSearchIndexTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private ConversationRepository conversationRepository;
+
+    @InjectMocks
+    private ConversationSearchIndex conversationSearchIndex;
+
+    private final UserSnapshot alice = new UserSnapshot(1L, "alice", null);
+    private final UserSnapshot bob = new UserSnapshot(2L, "Bob", null);
+    private final UserSnapshot bobby = new UserSnapshot(3L, "bobby", null);
+    private final UserSnapshot carol = new UserSnapshot(4L, "carol", null);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(conversationSearchIndex, "maxUsers", 100);
+    }
+
+    @Test
+    @DisplayName("Should match partners by case-insensitive username prefix")
+    void testSearch_MatchesPrefix() {
+        // Arrange - carol is an ex-friend with a conversation, bob is both
+        when(userRepository.findFriendSnapshots(1L)).thenReturn(List.of(bobby, bob));
+        when(conversationRepository.findPartnerSnapshots(1L)).thenReturn(List.of(bob, carol));
+
+        // Act & Assert
+        assertEquals(List.of(bob, bobby), conversationSearchIndex.search(1L, "BO", 10));
+        assertEquals(List.of(bob), conversationSearchIndex.search(1L, "bo", 1));
+        assertEquals(List.of(carol), conversationSearchIndex.search(1L, " c", 10));
+        assertTrue(conversationSearchIndex.search(1L, "x", 10).isEmpty());
+
+        // Loaded once, then served from memory
+        verify(userRepository, times(1)).findFriendSnapshots(1L);
+        verify(conversationRepository, times(1)).findPartnerSnapshots(1L);
+    }
+
+    @Test
+    @DisplayName("Should add a new friend to both cached indexes without reloading")
+    void testFriendshipAdded_UpdatesInPlace() {
+        // Arrange
+        when(userRepository.findFriendSnapshots(1L)).thenReturn(List.of(bob));
+        when(conversationRepository.findPartnerSnapshots(1L)).thenReturn(List.of());
+        conversationSearchIndex.search(1L, "", 10);
+
+        // Act
+        conversationSearchIndex.onFriendshipChanged(new FriendshipChangedEvent(carol, alice, true));
+
+        // Assert
+        assertEquals(List.of(carol), conversationSearchIndex.search(1L, "ca", 10));
+        verify(userRepository, times(1)).findFriendSnapshots(1L);
+        // Carol was never searched, so nothing is cached or loaded for her
+        verify(userRepository, never()).findFriendSnapshots(4L);
+    }
+
+    @Test
+    @DisplayName("Should reload after a friendship ends")
+    void testFriendshipRemoved_Reloads() {
+        // Arrange
+        when(userRepository.findFriendSnapshots(1L)).thenReturn(List.of(bob), List.of());
+        when(conversationRepository.findPartnerSnapshots(1L)).thenReturn(List.of());
+        conversationSearchIndex.search(1L, "", 10);
+
+        // Act
+        conversationSearchIndex.onFriendshipChanged(new FriendshipChangedEvent(alice, bob, false));
+
+        // Assert
+        assertTrue(conversationSearchIndex.search(1L, "bo", 10).isEmpty());
+        verify(userRepository, times(2)).findFriendSnapshots(1L);
+    }
+
+    @Test
+    @DisplayName("Should follow username changes of listed partners")
+    void testProfileChanged_Renames() {
+        // Arrange
+        when(userRepository.findFriendSnapshots(1L)).thenReturn(List.of(bob));
+        when(conversationRepository.findPartnerSnapshots(1L)).thenReturn(List.of());
+        conversationSearchIndex.search(1L, "", 10);
+
+        // Act
+        conversationSearchIndex.onProfileChanged(new UserProfileChangedEvent(new UserSnapshot(2L, "robert", "avatar.png")));
+
+        // Assert
+        assertTrue(conversationSearchIndex.search(1L, "bob", 10).isEmpty());
+        assertEquals("avatar.png", conversationSearchIndex.search(1L, "rob", 10).get(0).getAvatarUrl());
+    }
+
+    @Test
+    @DisplayName("Should leave users who do not list the changed partner untouched")
+    void testProfileChanged_OnlyTouchesListingUsers() {
+        // Arrange - alice lists bob, carol only lists bobby
+        when(userRepository.findFriendSnapshots(1L)).thenReturn(List.of(bob));
+        when(userRepository.findFriendSnapshots(4L)).thenReturn(List.of(bobby));
+        when(conversationRepository.findPartnerSnapshots(anyLong())).thenReturn(List.of());
+        conversationSearchIndex.search(1L, "", 10);
+        conversationSearchIndex.search(4L, "", 10);
+
+        // Act
+        conversationSearchIndex.onProfileChanged(new UserProfileChangedEvent(new UserSnapshot(2L, "robert", null)));
+
+        // Assert
+        assertEquals(List.of(bobby), conversationSearchIndex.search(4L, "bo", 10));
+        assertEquals("robert", conversationSearchIndex.search(1L, "", 10).get(0).getUsername());
+        verify(userRepository, times(1)).findFriendSnapshots(1L);
+        verify(userRepository, times(1)).findFriendSnapshots(4L);
+    }
+
+    @Test
+    @DisplayName("Should evict the least recently searching users once over the limit")
+    void testSearch_EvictsLeastRecentlySearching() {
+        // Arrange
+        ReflectionTestUtils.setField(conversationSearchIndex, "maxUsers", 2);
+        when(userRepository.findFriendSnapshots(anyLong())).thenReturn(List.of());
+        when(conversationRepository.findPartnerSnapshots(anyLong())).thenReturn(List.of());
+        conversationSearchIndex.search(1L, "", 10);
+        conversationSearchIndex.search(2L, "", 10);
+        conversationSearchIndex.search(1L, "", 10);
+
+        // Act
+        conversationSearchIndex.search(3L, "", 10);
+        conversationSearchIndex.search(1L, "", 10);
+        conversationSearchIndex.search(2L, "", 10);
+
+        // Assert - user 2 was the least recent when user 3 arrived
+        verify(userRepository, times(1)).findFriendSnapshots(1L);
+        verify(userRepository, times(2)).findFriendSnapshots(2L);
+    }
+}
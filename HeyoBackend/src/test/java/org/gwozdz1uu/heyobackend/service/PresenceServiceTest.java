@@ -0,0 +1,170 @@
+package org.gwozdz1uu.heyobackend.service;
+
+import org.gwozdz1uu.heyobackend.dto.UserSnapshot;
+import org.gwozdz1uu.heyobackend.repository.UserPresenceRepository;
+import org.gwozdz1uu.heyobackend.service.PresenceService.PresenceUpdate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Presence Service Tests")
+class PresenceServiceTest {
+
+    @Mock
+    private UserPresenceRepository userPresenceRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private SimpUserRegistry simpUserRegistry;
+
+    private PresenceService presenceService;
+
+    private final UserSnapshot alice = new UserSnapshot(1L, "alice", null);
+    private final UserSnapshot bob = new UserSnapshot(2L, "bob", null);
+
+    @BeforeEach
+    void setUp() {
+        presenceService = new PresenceService(userPresenceRepository, eventPublisher,
+                new StaticListableBeanFactory(Map.of("simpUserRegistry", simpUserRegistry)).getBeanProvider(SimpUserRegistry.class));
+        ReflectionTestUtils.setField(presenceService, "nodeId", "node-1");
+        ReflectionTestUtils.setField(presenceService, "nodeTtlMs", 30000L);
+    }
+
+    @Test
+    @DisplayName("Should publish online once for several tabs and offline after the last one")
+    void testSessions_ReferenceCounted() {
+        // Act
+        presenceService.sessionStarted("tab-1", alice);
+        presenceService.sessionStarted("tab-2", alice);
+        presenceService.sessionEnded("tab-1");
+
+        // Assert
+        assertTrue(presenceService.isOnline(1L, "alice"));
+        verify(eventPublisher, times(1)).publishEvent(new PresenceChangedEvent(1L, "alice", true));
+
+        presenceService.sessionEnded("tab-2");
+        assertFalse(presenceService.isOnline(1L, "alice"));
+        verify(eventPublisher).publishEvent(new PresenceChangedEvent(1L, "alice", false));
+    }
+
+    @Test
+    @DisplayName("Should ignore repeated connect and disconnect for the same session")
+    void testSessions_Idempotent() {
+        // Act
+        presenceService.sessionStarted("tab-1", alice);
+        presenceService.sessionStarted("tab-1", alice);
+        presenceService.sessionEnded("tab-1");
+        presenceService.sessionEnded("tab-1");
+        presenceService.sessionEnded("unknown");
+
+        // Assert
+        assertFalse(presenceService.isOnline(1L, "alice"));
+        verify(eventPublisher, times(2)).publishEvent(any(PresenceChangedEvent.class));
+    }
+
+    @Test
+    @DisplayName("Should report users connected to another node as online")
+    void testIsOnline_SessionOnOtherNode() {
+        // Arrange - the relay broker's registry lists sessions of all nodes
+        when(simpUserRegistry.getUser("alice")).thenReturn(mock(SimpUser.class));
+
+        // Act & Assert
+        assertTrue(presenceService.isOnline(1L, "alice"));
+        assertFalse(presenceService.isOnline(2L, "bob"));
+    }
+
+    @Test
+    @DisplayName("Should fall back to other nodes' stored sessions before announcing offline")
+    void testIsOnlineOnAnyNode_ChecksOtherNodes() {
+        // Arrange - not yet in the broadcast registry, but stored by another node
+        when(userPresenceRepository.isOnlineOnOtherNode(1L, "node-1")).thenReturn(true);
+
+        // Act & Assert
+        assertTrue(presenceService.isOnlineOnAnyNode(1L, "alice"));
+        assertFalse(presenceService.isOnlineOnAnyNode(2L, "bob"));
+    }
+
+    @Test
+    @DisplayName("Should flush only the latest state per user in one batch")
+    void testFlush_BatchesLatestState() {
+        // Arrange
+        presenceService.sessionStarted("a", alice);
+        presenceService.sessionEnded("a");
+        presenceService.sessionStarted("b", bob);
+
+        // Act
+        presenceService.flush();
+        presenceService.flush();
+
+        // Assert
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<PresenceUpdate>> captor = ArgumentCaptor.forClass(List.class);
+        verify(userPresenceRepository, times(1)).updatePresence(eq("node-1"), captor.capture());
+        List<PresenceUpdate> updates = captor.getValue();
+        assertEquals(2, updates.size());
+        assertTrue(updates.stream().anyMatch(u -> u.getUserId().equals(1L) && !u.isOnline() && u.getAt() != null));
+        assertTrue(updates.stream().anyMatch(u -> u.getUserId().equals(2L) && u.isOnline()));
+    }
+
+    @Test
+    @DisplayName("Should keep updates for the next flush when the write fails")
+    void testFlush_RetriesAfterFailure() {
+        // Arrange
+        presenceService.sessionStarted("a", alice);
+        doThrow(new RuntimeException("database down")).doNothing()
+                .when(userPresenceRepository).updatePresence(anyString(), anyList());
+
+        // Act
+        presenceService.flush();
+        presenceService.flush();
+
+        // Assert
+        verify(userPresenceRepository, times(2)).updatePresence(eq("node-1"), argThat(updates -> updates.size() == 1));
+    }
+
+    @Test
+    @DisplayName("Should clear only this node's stale online flags on startup")
+    void testResetStalePresence_ScopedToNode() {
+        // Act
+        presenceService.resetStalePresence();
+
+        // Assert
+        verify(userPresenceRepository).removeNode("node-1");
+        verify(userPresenceRepository, times(1)).removeNode(anyString());
+        verify(userPresenceRepository).heartbeat("node-1");
+    }
+
+    @Test
+    @DisplayName("Should clear the users of nodes that stopped sending heartbeats")
+    void testHeartbeat_RemovesExpiredNodes() {
+        // Arrange
+        when(userPresenceRepository.findExpiredNodes(any())).thenReturn(List.of("node-2"));
+
+        // Act
+        presenceService.heartbeat();
+
+        // Assert
+        verify(userPresenceRepository).heartbeat("node-1");
+        verify(userPresenceRepository).removeNode("node-2");
+        verify(userPresenceRepository, never()).removeNode("node-1");
+    }
+}
@@ -13,6 +13,7 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.time.LocalDateTime;
 import java.util.*;
@@ -34,6 +35,12 @@ class UserServiceFriendRequestTest {
     @Mock
     private NotificationService notificationService;
 
+    @Mock
+    private PresenceService presenceService;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @InjectMocks
     private UserService userService;
 
@@ -149,6 +156,7 @@ class UserServiceFriendRequestTest {
         // Assert - verify friendship was added
         assertTrue(receiver.getFriends().contains(sender));
         assertTrue(sender.getFriends().contains(receiver));
+        verify(userRepository).incrementFriendsCount(List.of(receiver.getId(), sender.getId()), 1);
 
         // Verify acceptance notification was sent
         ArgumentCaptor<User> notificationUserCaptor = ArgumentCaptor.forClass(User.class);
@@ -169,6 +177,12 @@ class UserServiceFriendRequestTest {
 
         // Verify friend request notification was deleted
         verify(notificationRepository).delete(friendRequestNotification);
+
+        // Verify the new friendship was announced
+        ArgumentCaptor<FriendshipChangedEvent> eventCaptor = ArgumentCaptor.forClass(FriendshipChangedEvent.class);
+        verify(eventPublisher).publishEvent(eventCaptor.capture());
+        assertTrue(eventCaptor.getValue().isFriends());
+        assertEquals(sender.getId(), eventCaptor.getValue().getFriend().getId());
     }
 
     @Test
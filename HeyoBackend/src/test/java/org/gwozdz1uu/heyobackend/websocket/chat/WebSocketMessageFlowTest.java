@@ -1,10 +1,20 @@
 package org.gwozdz1uu.heyobackend.websocket.chat;
 
 import org.gwozdz1uu.heyobackend.dto.ChatMessageDTO;
+import org.gwozdz1uu.heyobackend.dto.UserSnapshot;
 import org.gwozdz1uu.heyobackend.model.User;
+import org.gwozdz1uu.heyobackend.repository.UserPresenceRepository;
 import org.gwozdz1uu.heyobackend.service.ChatService;
+import org.gwozdz1uu.heyobackend.service.PresenceChangedEvent;
+import org.gwozdz1uu.heyobackend.service.PresenceService;
 import org.gwozdz1uu.heyobackend.service.UserService;
+import org.gwozdz1uu.heyobackend.websocket.chat.service.ChatUserDirectory;
+import org.gwozdz1uu.heyobackend.websocket.chat.service.PresenceBroadcaster;
+import org.gwozdz1uu.heyobackend.websocket.chat.service.ChatWriteBehindService;
+import org.gwozdz1uu.heyobackend.websocket.chat.service.TypingCoalescer;
+import org.gwozdz1uu.heyobackend.websocket.chat.service.UserDestinationSender;
 import org.gwozdz1uu.heyobackend.websocket.chat.controller.ChatWebSocketController;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -12,13 +22,25 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.security.Principal;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ScheduledFuture;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -37,16 +59,57 @@ class WebSocketMessageFlowTest {
     @Mock
     private UserService userService;
 
+    @Mock
+    private ChatWriteBehindService chatWriteBehindService;
+
+    @Mock
+    private ChatUserDirectory chatUserDirectory;
+
     @Mock
     private Principal principal;
 
+    @Mock
+    private UserPresenceRepository userPresenceRepository;
+
+    @Mock
+    private TaskScheduler taskScheduler;
+
+    @Mock
+    private SimpUserRegistry simpUserRegistry;
+
+    private TypingCoalescer typingCoalescer;
+
+    private PresenceService presenceService;
+
     private ChatWebSocketController controller;
 
     private User user1;
+    private UserSnapshot user1Snapshot;
 
     @BeforeEach
     void setUp() {
-        controller = new ChatWebSocketController(messagingTemplate, chatService, userService);
+        UserDestinationSender userDestinationSender = new UserDestinationSender(messagingTemplate);
+        typingCoalescer = new TypingCoalescer(userDestinationSender);
+        ReflectionTestUtils.setField(typingCoalescer, "windowMs", 2000L);
+        // Presence transitions go straight to the broadcaster, as the application event would
+        PresenceBroadcaster[] broadcaster = new PresenceBroadcaster[1];
+        presenceService = new PresenceService(userPresenceRepository,
+                event -> broadcaster[0].onPresenceChanged((PresenceChangedEvent) event),
+                new StaticListableBeanFactory(Map.of("simpUserRegistry", simpUserRegistry)).getBeanProvider(SimpUserRegistry.class));
+        broadcaster[0] = new PresenceBroadcaster(userDestinationSender, userService,
+                presenceService, taskScheduler, simpUserRegistry, chatUserDirectory);
+        // Broker converter as configured by Spring Boot, with java.time support
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+        converter.setObjectMapper(new ObjectMapper().findAndRegisterModules());
+        lenient().when(messagingTemplate.getMessageConverter()).thenReturn(converter);
+        lenient().when(messagingTemplate.getUserDestinationPrefix()).thenReturn("/user/");
+        // Announce offline right away instead of after the grace period
+        lenient().doAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(0)).run();
+            return mock(ScheduledFuture.class);
+        }).when(taskScheduler).schedule(any(Runnable.class), any(Instant.class));
+        controller = new ChatWebSocketController(userDestinationSender, chatService,
+                chatWriteBehindService, chatUserDirectory, typingCoalescer, presenceService, simpUserRegistry);
 
         user1 = User.builder()
                 .id(1L)
@@ -55,7 +118,7 @@ class WebSocketMessageFlowTest {
                 .password("password")
                 .friends(new HashSet<>())
                 .build();
-
+        user1Snapshot = UserSnapshot.of(user1);
     }
 
     @Test
@@ -63,7 +126,8 @@ class WebSocketMessageFlowTest {
     void testCompleteMessageSendFlow() {
         // Arrange
         when(principal.getName()).thenReturn("user1");
-        when(userService.findByUsername("user1")).thenReturn(user1);
+        when(chatUserDirectory.getByUsername("user1")).thenReturn(user1Snapshot);
+        when(chatUserDirectory.getById(2L)).thenReturn(new UserSnapshot(2L, "user2", null));
 
         Map<String, Object> payload = new HashMap<>();
         payload.put("receiverId", 2L);
@@ -79,105 +143,115 @@ class WebSocketMessageFlowTest {
                 .createdAt(LocalDateTime.now())
                 .build();
 
-        when(chatService.sendMessage(user1, 2L, "Test message")).thenReturn(messageDTO);
+        when(chatService.sendMessage(1L, 2L, "Test message")).thenReturn(messageDTO);
 
         // Act
         controller.sendMessage(payload, principal);
 
         // Assert
-        verify(userService).findByUsername("user1");
-        verify(chatService).sendMessage(user1, 2L, "Test message");
-        verify(messagingTemplate, times(2)).convertAndSendToUser(
-                anyString(),
-                eq("/queue/messages"),
-                eq(messageDTO)
-        );
+        verify(chatService).sendMessage(1L, 2L, "Test message");
+        ArgumentCaptor<Message<?>> receiverCaptor = ArgumentCaptor.forClass(Message.class);
+        ArgumentCaptor<Message<?>> senderCaptor = ArgumentCaptor.forClass(Message.class);
+        verify(messagingTemplate).send(eq("/user/user2/queue/messages"), receiverCaptor.capture());
+        verify(messagingTemplate).send(eq("/user/user1/queue/messages"), senderCaptor.capture());
+
+        // Converted once - both recipients share the encoded payload
+        assertSame(receiverCaptor.getValue().getPayload(), senderCaptor.getValue().getPayload());
     }
 
     @Test
     @DisplayName("Should handle typing indicator flow")
-    void testTypingIndicatorFlow() {
+    void testTypingIndicatorFlow() throws Exception {
         // Arrange
         when(principal.getName()).thenReturn("user1");
-        when(userService.findByUsername("user1")).thenReturn(user1);
+        when(chatUserDirectory.getByUsername("user1")).thenReturn(user1Snapshot);
+        when(chatUserDirectory.findKnown(2L)).thenReturn(Optional.of(new UserSnapshot(2L, "user2", null)));
+        when(simpUserRegistry.getUser("user2")).thenReturn(mock(SimpUser.class));
 
         Map<String, Object> payload = new HashMap<>();
         payload.put("receiverId", 2L);
 
-        // Act
+        // Act - a burst of keystrokes within one window
+        controller.typing(payload, principal);
+        controller.typing(payload, principal);
         controller.typing(payload, principal);
 
-        // Assert
-        ArgumentCaptor<String> destinationCaptor = ArgumentCaptor.forClass(String.class);
-        ArgumentCaptor<String> queueCaptor = ArgumentCaptor.forClass(String.class);
-        @SuppressWarnings("unchecked")
-        ArgumentCaptor<Map<String, Object>> dataCaptor = ArgumentCaptor.forClass(Map.class);
-
-        verify(messagingTemplate).convertAndSendToUser(
-                destinationCaptor.capture(),
-                queueCaptor.capture(),
-                dataCaptor.capture()
-        );
-
-        assertEquals("2", destinationCaptor.getValue());
-        assertEquals("/queue/typing", queueCaptor.getValue());
-        assertEquals(1L, dataCaptor.getValue().get("userId"));
-        assertEquals("user1", dataCaptor.getValue().get("username"));
+        // Assert - coalesced into a single event
+        ArgumentCaptor<Message<?>> captor = ArgumentCaptor.forClass(Message.class);
+        verify(messagingTemplate).send(eq("/user/user2/queue/typing"), captor.capture());
+
+        Map<?, ?> data = new ObjectMapper().readValue((byte[]) captor.getValue().getPayload(), Map.class);
+        assertEquals(1, data.get("userId"));
+        assertEquals("user1", data.get("username"));
+        assertEquals(true, data.get("typing"));
+        // Droppable for slow clients
+        assertEquals("typing.1", SimpMessageHeaderAccessor.wrap(captor.getValue())
+                .getFirstNativeHeader(UserDestinationSender.COALESCE_KEY_HEADER));
     }
 
     @Test
     @DisplayName("Should handle online status flow with multiple friends")
     void testOnlineStatusFlowWithMultipleFriends() {
         // Arrange
-        User friend1 = User.builder().id(3L).username("friend1").build();
-        User friend2 = User.builder().id(4L).username("friend2").build();
-        user1.getFriends().add(friend1);
-        user1.getFriends().add(friend2);
-
         when(principal.getName()).thenReturn("user1");
-        when(userService.findByUsername("user1")).thenReturn(user1);
+        when(chatUserDirectory.getByUsername("user1")).thenReturn(user1Snapshot);
+        when(userService.getFriendSnapshots(1L)).thenReturn(List.of(
+                new UserSnapshot(3L, "friend1", null),
+                new UserSnapshot(4L, "friend2", null)));
+        when(simpUserRegistry.getUser(anyString())).thenReturn(mock(SimpUser.class));
 
         // Act
-        controller.setOnline(principal);
+        controller.setOnline(principal, "session-1");
 
         // Assert
-        verify(userService).setOnlineStatus(user1, true);
-        verify(messagingTemplate, times(2)).convertAndSendToUser(
-                anyString(),
-                eq("/queue/status"),
-                any(Map.class)
-        );
+        assertTrue(presenceService.isOnline(1L, "user1"));
+        verify(messagingTemplate).send(eq("/user/friend1/queue/status"), any(Message.class));
+        verify(messagingTemplate).send(eq("/user/friend2/queue/status"), any(Message.class));
     }
 
     @Test
     @DisplayName("Should handle offline status flow")
-    void testOfflineStatusFlow() {
+    void testOfflineStatusFlow() throws Exception {
         // Arrange
-        User friend = User.builder().id(3L).username("friend").build();
-        user1.getFriends().add(friend);
-
         when(principal.getName()).thenReturn("user1");
-        when(userService.findByUsername("user1")).thenReturn(user1);
+        when(chatUserDirectory.getByUsername("user1")).thenReturn(user1Snapshot);
+        when(userService.getFriendSnapshots(1L)).thenReturn(List.of(new UserSnapshot(3L, "friend", null)));
+        when(simpUserRegistry.getUser("friend")).thenReturn(mock(SimpUser.class));
+        controller.setOnline(principal, "session-1");
+        clearInvocations(messagingTemplate);
 
         // Act
-        controller.setOffline(principal);
+        controller.setOffline(principal, "session-1");
 
         // Assert
-        @SuppressWarnings("unchecked")
-        ArgumentCaptor<Map<String, Object>> captor = ArgumentCaptor.forClass(Map.class);
+        ArgumentCaptor<Message<?>> captor = ArgumentCaptor.forClass(Message.class);
         
-        verify(userService).setOnlineStatus(user1, false);
-        verify(messagingTemplate).convertAndSendToUser(
-                eq("3"),
-                eq("/queue/status"),
-                captor.capture()
-        );
-
-        Map<String, Object> statusData = captor.getValue();
-        assertEquals(1L, statusData.get("userId"));
+        assertFalse(presenceService.isOnline(1L, "user1"));
+        verify(messagingTemplate).send(eq("/user/friend/queue/status"), captor.capture());
+
+        Map<?, ?> statusData = new ObjectMapper().readValue((byte[]) captor.getValue().getPayload(), Map.class);
+        assertEquals(1, statusData.get("userId"));
         assertEquals(false, statusData.get("online"));
     }
 
+    @Test
+    @DisplayName("Should stay online while another tab is open")
+    void testMultiTabPresenceFlow() {
+        // Arrange
+        when(principal.getName()).thenReturn("user1");
+        when(chatUserDirectory.getByUsername("user1")).thenReturn(user1Snapshot);
+        when(userService.getFriendSnapshots(1L)).thenReturn(List.of());
+        controller.setOnline(principal, "tab-1");
+        controller.setOnline(principal, "tab-2");
+
+        // Act
+        controller.setOffline(principal, "tab-1");
+
+        // Assert
+        assertTrue(presenceService.isOnline(1L, "user1"));
+        verify(userService, times(1)).getFriendSnapshots(1L);
+    }
+
     @Test
     @DisplayName("Should verify all message mappings are correctly annotated")
     void testMessageMappingAnnotations() {
@@ -192,15 +266,15 @@ class WebSocketMessageFlowTest {
     @DisplayName("Should handle empty friends list gracefully")
     void testEmptyFriendsListHandling() {
         // Arrange
-        user1.setFriends(new HashSet<>());
         when(principal.getName()).thenReturn("user1");
-        when(userService.findByUsername("user1")).thenReturn(user1);
+        when(chatUserDirectory.getByUsername("user1")).thenReturn(user1Snapshot);
+        when(userService.getFriendSnapshots(1L)).thenReturn(List.of());
 
         // Act
-        controller.setOnline(principal);
+        controller.setOnline(principal, "session-1");
 
         // Assert
-        verify(userService).setOnlineStatus(user1, true);
-        verify(messagingTemplate, never()).convertAndSendToUser(anyString(), anyString(), any());
+        assertTrue(presenceService.isOnline(1L, "user1"));
+        verify(messagingTemplate, never()).send(anyString(), any(Message.class));
     }
 }
@@ -1,9 +1,13 @@
 package org.gwozdz1uu.heyobackend.websocket.chat.controller;
 
 import org.gwozdz1uu.heyobackend.dto.ChatMessageDTO;
-import org.gwozdz1uu.heyobackend.model.User;
+import org.gwozdz1uu.heyobackend.dto.UserSnapshot;
 import org.gwozdz1uu.heyobackend.service.ChatService;
-import org.gwozdz1uu.heyobackend.service.UserService;
+import org.gwozdz1uu.heyobackend.service.PresenceService;
+import org.gwozdz1uu.heyobackend.websocket.chat.service.ChatUserDirectory;
+import org.gwozdz1uu.heyobackend.websocket.chat.service.ChatWriteBehindService;
+import org.gwozdz1uu.heyobackend.websocket.chat.service.TypingCoalescer;
+import org.gwozdz1uu.heyobackend.websocket.chat.service.UserDestinationSender;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -11,7 +15,8 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
 
 import java.security.Principal;
 import java.time.LocalDateTime;
@@ -25,13 +30,25 @@ import static org.mockito.Mockito.*;
 class ChatWebSocketControllerTest {
 
     @Mock
-    private SimpMessagingTemplate messagingTemplate;
+    private UserDestinationSender userDestinationSender;
 
     @Mock
     private ChatService chatService;
 
     @Mock
-    private UserService userService;
+    private ChatWriteBehindService chatWriteBehindService;
+
+    @Mock
+    private ChatUserDirectory chatUserDirectory;
+
+    @Mock
+    private TypingCoalescer typingCoalescer;
+
+    @Mock
+    private PresenceService presenceService;
+
+    @Mock
+    private SimpUserRegistry simpUserRegistry;
 
     @Mock
     private Principal principal;
@@ -39,38 +56,26 @@ class ChatWebSocketControllerTest {
     @InjectMocks
     private ChatWebSocketController chatWebSocketController;
 
-    private User sender;
-    private User friend;
+    private UserSnapshot senderSnapshot;
+    private UserSnapshot receiverSnapshot;
 
     @BeforeEach
     void setUp() {
-        sender = User.builder()
-                .id(1L)
-                .username("sender")
-                .email("sender@test.com")
-                .password("password")
-                .friends(new HashSet<>())
-                .build();
-
-        friend = User.builder()
-                .id(3L)
-                .username("friend")
-                .email("friend@test.com")
-                .password("password")
-                .build();
-
-        sender.getFriends().add(friend);
+        senderSnapshot = new UserSnapshot(1L, "sender", null);
+        receiverSnapshot = new UserSnapshot(2L, "receiver", null);
     }
 
     @Test
     void testSendMessage_ShouldSendToReceiverAndSender() {
         // Arrange
         when(principal.getName()).thenReturn("sender");
-        when(userService.findByUsername("sender")).thenReturn(sender);
+        when(chatUserDirectory.getByUsername("sender")).thenReturn(senderSnapshot);
+        when(chatUserDirectory.getById(2L)).thenReturn(receiverSnapshot);
 
         Map<String, Object> payload = new HashMap<>();
         payload.put("receiverId", 2L);
         payload.put("content", "Hello, receiver!");
+        payload.put("clientMessageId", "c-1");
 
         ChatMessageDTO messageDTO = ChatMessageDTO.builder()
                 .id(1L)
@@ -82,144 +87,159 @@ class ChatWebSocketControllerTest {
                 .createdAt(LocalDateTime.now())
                 .build();
 
-        when(chatService.sendMessage(sender, 2L, "Hello, receiver!")).thenReturn(messageDTO);
+        when(chatService.sendMessage(1L, 2L, "Hello, receiver!")).thenReturn(messageDTO);
 
         // Act
         chatWebSocketController.sendMessage(payload, principal);
 
         // Assert
-        verify(userService).findByUsername("sender");
-        verify(chatService).sendMessage(sender, 2L, "Hello, receiver!");
-        
-        // Verify message sent to receiver
-        verify(messagingTemplate).convertAndSendToUser(
-                eq("2"),
-                eq("/queue/messages"),
-                eq(messageDTO)
-        );
+        verify(chatService).sendMessage(1L, 2L, "Hello, receiver!");
         
-        // Verify confirmation sent to sender
-        verify(messagingTemplate).convertAndSendToUser(
-                eq("1"),
+        // Verify one delivery to receiver and sender echo, carrying the client's id
+        verify(userDestinationSender).send(
+                eq(List.of("receiver", "sender")),
                 eq("/queue/messages"),
                 eq(messageDTO)
         );
+        assertEquals("c-1", messageDTO.getClientMessageId());
     }
 
     @Test
-    void testTyping_ShouldNotifyReceiver() {
+    void testSendMessage_WriteBehind_ShouldEnqueueWithSnapshots() {
         // Arrange
         when(principal.getName()).thenReturn("sender");
-        when(userService.findByUsername("sender")).thenReturn(sender);
+        when(chatUserDirectory.getByUsername("sender")).thenReturn(senderSnapshot);
+        when(chatUserDirectory.getById(2L)).thenReturn(receiverSnapshot);
+        when(chatWriteBehindService.isEnabled()).thenReturn(true);
 
         Map<String, Object> payload = new HashMap<>();
         payload.put("receiverId", 2L);
-
-        @SuppressWarnings("unchecked")
-        ArgumentCaptor<Map<String, Object>> captor = ArgumentCaptor.forClass(Map.class);
+        payload.put("content", "Hi");
+        payload.put("clientMessageId", "c-1");
 
         // Act
-        chatWebSocketController.typing(payload, principal);
-
-        // Assert
-        verify(userService).findByUsername("sender");
-        
-        verify(messagingTemplate).convertAndSendToUser(
-                eq("2"),
-                eq("/queue/typing"),
-                captor.capture()
-        );
+        chatWebSocketController.sendMessage(payload, principal);
 
-        Map<String, Object> sentData = captor.getValue();
-        assertEquals(1L, sentData.get("userId"));
-        assertEquals("sender", sentData.get("username"));
+        // Assert - delivery is left to the writer, after the batch is committed
+        verify(chatWriteBehindService).enqueue(senderSnapshot, receiverSnapshot, "Hi", "c-1");
+        verifyNoInteractions(chatService, userDestinationSender);
     }
 
     @Test
-    void testSetOnline_ShouldUpdateStatusAndNotifyFriends() {
+    void testSendMessage_Error_ShouldEchoClientMessageId() {
         // Arrange
         when(principal.getName()).thenReturn("sender");
-        when(userService.findByUsername("sender")).thenReturn(sender);
+        when(chatUserDirectory.getByUsername("sender")).thenReturn(senderSnapshot);
+        when(chatUserDirectory.getById(2L)).thenReturn(receiverSnapshot);
+        when(chatService.sendMessage(1L, 2L, "Hi")).thenThrow(new RuntimeException("You can only message your friends"));
 
-        @SuppressWarnings("unchecked")
-        ArgumentCaptor<Map<String, Object>> captor = ArgumentCaptor.forClass(Map.class);
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("receiverId", 2L);
+        payload.put("content", "Hi");
+        payload.put("clientMessageId", "c-1");
 
         // Act
-        chatWebSocketController.setOnline(principal);
+        chatWebSocketController.sendMessage(payload, principal);
 
-        // Assert
-        verify(userService).findByUsername("sender");
-        verify(userService).setOnlineStatus(sender, true);
-        
-        // Verify notification sent to friend
-        verify(messagingTemplate).convertAndSendToUser(
-                eq("3"),
-                eq("/queue/status"),
-                captor.capture()
+        // Assert - the client can match the error to its send and retry it
+        verify(userDestinationSender).send(
+                eq("sender"),
+                eq("/queue/errors"),
+                argThat((Map<String, Object> error) -> "c-1".equals(error.get("clientMessageId"))
+                        && "MESSAGE_ERROR".equals(error.get("type")))
         );
-
-        Map<String, Object> sentData = captor.getValue();
-        assertEquals(1L, sentData.get("userId"));
-        assertEquals(true, sentData.get("online"));
     }
 
     @Test
-    void testSetOffline_ShouldUpdateStatusAndNotifyFriends() {
+    void testTyping_ShouldPassToCoalescer() {
         // Arrange
         when(principal.getName()).thenReturn("sender");
-        when(userService.findByUsername("sender")).thenReturn(sender);
+        when(chatUserDirectory.getByUsername("sender")).thenReturn(senderSnapshot);
+        when(chatUserDirectory.findKnown(2L)).thenReturn(Optional.of(receiverSnapshot));
+        when(simpUserRegistry.getUser("receiver")).thenReturn(mock(SimpUser.class));
+
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("receiverId", 2L);
 
-        @SuppressWarnings("unchecked")
-        ArgumentCaptor<Map<String, Object>> captor = ArgumentCaptor.forClass(Map.class);
+        // Act
+        chatWebSocketController.typing(payload, principal);
+
+        // Assert
+        verify(typingCoalescer).typing(senderSnapshot, receiverSnapshot);
+        verifyNoInteractions(userDestinationSender);
+    }
+
+    @Test
+    void testTyping_ReceiverNotConnected_ShouldSendNothing() {
+        // Arrange - no session for the receiver on any node
+        when(chatUserDirectory.findKnown(2L)).thenReturn(Optional.of(receiverSnapshot));
+        when(simpUserRegistry.getUser("receiver")).thenReturn(null);
+
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("receiverId", 2L);
 
         // Act
-        chatWebSocketController.setOffline(principal);
+        chatWebSocketController.typing(payload, principal);
 
         // Assert
-        verify(userService).findByUsername("sender");
-        verify(userService).setOnlineStatus(sender, false);
-        
-        // Verify notification sent to friend
-        verify(messagingTemplate).convertAndSendToUser(
-                eq("3"),
-                eq("/queue/status"),
-                captor.capture()
-        );
+        verifyNoInteractions(typingCoalescer, userDestinationSender);
+    }
+
+    @Test
+    void testTyping_UnknownReceiver_ShouldNotQueryDatabase() {
+        // Arrange - receiver never seen on this node
+        when(chatUserDirectory.findKnown(2L)).thenReturn(Optional.empty());
 
-        Map<String, Object> sentData = captor.getValue();
-        assertEquals(1L, sentData.get("userId"));
-        assertEquals(false, sentData.get("online"));
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("receiverId", 2L);
+
+        // Act
+        chatWebSocketController.typing(payload, principal);
+
+        // Assert
+        verify(chatUserDirectory, never()).getById(anyLong());
+        verifyNoInteractions(typingCoalescer, simpUserRegistry);
     }
 
     @Test
-    void testSetOnline_WithNoFriends_ShouldNotSendNotifications() {
+    void testSetOnline_ShouldMarkSessionOnline() {
         // Arrange
-        sender.setFriends(new HashSet<>());
         when(principal.getName()).thenReturn("sender");
-        when(userService.findByUsername("sender")).thenReturn(sender);
+        when(chatUserDirectory.getByUsername("sender")).thenReturn(senderSnapshot);
+
+        // Act
+        chatWebSocketController.setOnline(principal, "session-1");
 
+        // Assert
+        verify(presenceService).sessionStarted("session-1", senderSnapshot);
+        verifyNoInteractions(userDestinationSender);
+    }
+
+    @Test
+    void testSetOffline_ShouldEndSession() {
         // Act
-        chatWebSocketController.setOnline(principal);
+        chatWebSocketController.setOffline(principal, "session-1");
 
         // Assert
-        verify(userService).findByUsername("sender");
-        verify(userService).setOnlineStatus(sender, true);
-        verify(messagingTemplate, never()).convertAndSendToUser(anyString(), anyString(), any());
+        verify(presenceService).sessionEnded("session-1");
+        verifyNoInteractions(userDestinationSender);
     }
 
     @Test
-    void testSendMessage_WithInvalidPayload_ShouldHandleGracefully() {
+    void testSendMessage_WithInvalidPayload_ShouldReportError() {
         // Arrange
         when(principal.getName()).thenReturn("sender");
-        when(userService.findByUsername("sender")).thenReturn(sender);
+        when(chatUserDirectory.getByUsername("sender")).thenReturn(senderSnapshot);
 
         Map<String, Object> payload = new HashMap<>();
         payload.put("receiverId", "invalid");
         payload.put("content", "Hello!");
 
-        // Act & Assert
-        assertThrows(NumberFormatException.class, () -> {
-            chatWebSocketController.sendMessage(payload, principal);
-        });
+        // Act
+        chatWebSocketController.sendMessage(payload, principal);
+
+        // Assert
+        verifyNoInteractions(chatService);
+        verify(userDestinationSender).send(eq("sender"), eq("/queue/errors"), any(Object.class));
     }
 }
@@ -0,0 +1,121 @@
+package org.gwozdz1uu.heyobackend.websocket.chat.service;
+
+import org.gwozdz1uu.heyobackend.dto.UserSnapshot;
+import org.gwozdz1uu.heyobackend.model.User;
+import org.gwozdz1uu.heyobackend.service.UserProfileChangedEvent;
+import org.gwozdz1uu.heyobackend.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Chat User Directory Tests")
+class ChatUserDirectoryTest {
+
+    @Mock
+    private UserService userService;
+
+    @InjectMocks
+    private ChatUserDirectory directory;
+
+    private User alice;
+
+    @BeforeEach
+    void setUp() {
+        alice = User.builder().id(1L).username("alice").avatarUrl("a.png").build();
+        ReflectionTestUtils.setField(directory, "maxKnownUsers", 2);
+    }
+
+    @Test
+    @DisplayName("Should serve registered users without touching the database")
+    void testRegister_ServesSnapshot() {
+        // Arrange
+        Map<String, Object> attributes = new HashMap<>();
+
+        // Act
+        UserSnapshot snapshot = directory.register(alice, attributes);
+
+        // Assert
+        assertEquals(snapshot, attributes.get(ChatUserDirectory.SESSION_ATTRIBUTE));
+        assertEquals(snapshot, directory.getByUsername("alice"));
+        assertEquals(snapshot, directory.getById(1L));
+        assertEquals("a.png", directory.getById(1L).getAvatarUrl());
+        verifyNoInteractions(userService);
+    }
+
+    @Test
+    @DisplayName("Should keep the snapshot until the last session disconnects")
+    void testUnregister_CountsSessions() {
+        // Arrange
+        directory.register(alice, new HashMap<>());
+        directory.register(alice, new HashMap<>());
+
+        // Act & Assert
+        directory.unregister(1L);
+        assertTrue(directory.isConnected(1L));
+
+        directory.unregister(1L);
+        assertFalse(directory.isConnected(1L));
+        assertTrue(directory.findConnected(1L).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should fall back to the database for users without a session")
+    void testGetById_FallsBackToDatabase() {
+        // Arrange
+        when(userService.findById(1L)).thenReturn(alice);
+
+        // Act
+        UserSnapshot snapshot = directory.getById(1L);
+
+        // Assert
+        assertEquals("alice", snapshot.getUsername());
+        assertFalse(directory.isConnected(1L));
+    }
+
+    @Test
+    @DisplayName("Should follow username changes of connected users")
+    void testRefresh_ReplacesUsername() {
+        // Arrange
+        directory.register(alice, new HashMap<>());
+        UserSnapshot renamed = new UserSnapshot(1L, "alicia", "b.png");
+
+        // Act
+        directory.onProfileChanged(new UserProfileChangedEvent(renamed));
+
+        // Assert
+        assertEquals("b.png", directory.getByUsername("alicia").getAvatarUrl());
+        when(userService.findByUsername("alice")).thenThrow(new RuntimeException("User not found"));
+        assertThrows(RuntimeException.class, () -> directory.getByUsername("alice"));
+    }
+
+    @Test
+    @DisplayName("Should keep disconnected users addressable without a query, within the bound")
+    void testFindKnown_NeverQueriesDatabase() {
+        // Arrange
+        directory.register(alice, new HashMap<>());
+        directory.unregister(1L);
+        directory.remember(new UserSnapshot(2L, "bob", null));
+
+        // Act & Assert
+        assertEquals("alice", directory.findKnown(1L).orElseThrow().getUsername());
+        assertEquals("bob", directory.findKnown(2L).orElseThrow().getUsername());
+        assertTrue(directory.findKnown(3L).isEmpty());
+
+        directory.remember(new UserSnapshot(3L, "carol", null));
+        assertTrue(directory.findKnown(1L).isEmpty());
+        assertEquals("carol", directory.findKnown(3L).orElseThrow().getUsername());
+        verifyNoInteractions(userService);
+    }
+}
@@ -0,0 +1,152 @@
+package org.gwozdz1uu.heyobackend.websocket.chat.service;
+
+import org.gwozdz1uu.heyobackend.dto.ChatMessageDTO;
+import org.gwozdz1uu.heyobackend.dto.PendingChatMessage;
+import org.gwozdz1uu.heyobackend.dto.UserSnapshot;
+import org.gwozdz1uu.heyobackend.service.ChatService;
+import org.gwozdz1uu.heyobackend.service.UserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Chat Write-Behind Tests")
+class ChatWriteBehindServiceTest {
+
+    @Mock
+    private ChatService chatService;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private UserDestinationSender userDestinationSender;
+
+    @InjectMocks
+    private ChatWriteBehindService writeBehindService;
+
+    private UserSnapshot sender;
+    private UserSnapshot receiver;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(writeBehindService, "enabled", true);
+        ReflectionTestUtils.setField(writeBehindService, "queueCapacity", 10);
+        ReflectionTestUtils.setField(writeBehindService, "batchSize", 5);
+        ReflectionTestUtils.setField(writeBehindService, "maxRetryBackoffMs", 200L);
+        ReflectionTestUtils.setField(writeBehindService, "enqueueTimeoutMs", 10L);
+        writeBehindService.start();
+
+        sender = new UserSnapshot(1L, "sender", null);
+        receiver = new UserSnapshot(2L, "receiver", null);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        writeBehindService.stop();
+    }
+
+    @Test
+    @DisplayName("Should deliver a message to both users only after its batch is persisted")
+    void testEnqueue_PersistsThenDelivers() {
+        // Arrange
+        when(userService.areFriends(1L, 2L)).thenReturn(true);
+        when(chatService.persistBatch(anyList())).thenReturn(List.of(500L));
+
+        // Act
+        writeBehindService.enqueue(sender, receiver, "Hello", "c-1");
+
+        // Assert - the client's id is echoed on the stored message
+        verify(chatService, timeout(2000)).persistBatch(argThat(batch ->
+                batch.size() == 1 && batch.get(0).getClientMessageId().equals("c-1")));
+        verify(userDestinationSender, timeout(2000)).send(
+                eq(List.of("receiver", "sender")),
+                eq("/queue/messages"),
+                argThat((ChatMessageDTO dto) -> dto.getId().equals(500L)
+                        && "c-1".equals(dto.getClientMessageId())
+                        && "Hello".equals(dto.getContent()))
+        );
+    }
+
+    @Test
+    @DisplayName("Should reject messages to non-friends without queueing")
+    void testEnqueue_RejectsNonFriend() {
+        // Arrange
+        when(userService.areFriends(1L, 2L)).thenReturn(false);
+
+        // Act & Assert
+        assertThrows(RuntimeException.class, () -> writeBehindService.enqueue(sender, receiver, "Hello", "c-1"));
+        verify(chatService, after(300).never()).persistBatch(anyList());
+    }
+
+    @Test
+    @DisplayName("Should keep retrying a batch while the database is unavailable until it commits")
+    void testFlush_RetriesUntilCommitted() {
+        // Arrange
+        when(userService.areFriends(1L, 2L)).thenReturn(true);
+        DataAccessResourceFailureException down = new DataAccessResourceFailureException("database down");
+        when(chatService.persistBatch(anyList()))
+                .thenThrow(down, down, down, down, down, down)
+                .thenReturn(List.of(500L));
+
+        // Act
+        writeBehindService.enqueue(sender, receiver, "Hello", "c-1");
+
+        // Assert - more attempts than any fixed retry budget, then delivered
+        verify(userDestinationSender, timeout(5000)).send(
+                eq(List.of("receiver", "sender")),
+                eq("/queue/messages"),
+                argThat((ChatMessageDTO dto) -> "c-1".equals(dto.getClientMessageId())));
+        verify(chatService, times(7)).persistBatch(anyList());
+        verify(userDestinationSender, never()).send(anyString(), eq("/queue/errors"), any());
+    }
+
+    @Test
+    @DisplayName("Should drop only the message that cannot be stored and report it with its clientMessageId")
+    void testFlush_DropsPermanentFailure() {
+        // Arrange
+        when(userService.areFriends(1L, 2L)).thenReturn(true);
+        when(chatService.persistBatch(anyList())).thenAnswer(invocation -> {
+            List<PendingChatMessage> batch = invocation.getArgument(0);
+            if (batch.stream().anyMatch(message -> message.getContent().equals("bad"))) {
+                throw new DataIntegrityViolationException("constraint violated");
+            }
+            return batch.stream().map(message -> 500L).toList();
+        });
+
+        // Act
+        writeBehindService.enqueue(sender, receiver, "Hello", "c-1");
+        writeBehindService.enqueue(sender, receiver, "bad", "c-2");
+
+        // Assert
+        verify(userDestinationSender, timeout(3000)).send(
+                eq("sender"),
+                eq("/queue/errors"),
+                argThat((Map<String, Object> error) -> "c-2".equals(error.get("clientMessageId"))
+                        && "MESSAGE_PERSIST_ERROR".equals(error.get("type")))
+        );
+        verify(userDestinationSender, timeout(3000)).send(
+                eq(List.of("receiver", "sender")),
+                eq("/queue/messages"),
+                argThat((ChatMessageDTO dto) -> "c-1".equals(dto.getClientMessageId())));
+        verify(userDestinationSender, never()).send(
+                eq(List.of("receiver", "sender")),
+                eq("/queue/messages"),
+                argThat((ChatMessageDTO dto) -> "c-2".equals(dto.getClientMessageId())));
+    }
+}
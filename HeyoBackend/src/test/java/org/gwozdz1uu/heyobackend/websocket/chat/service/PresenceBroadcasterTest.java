@@ -0,0 +1,142 @@
+package org.gwozdz1uu.heyobackend.websocket.chat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.gwozdz1uu.heyobackend.dto.UserSnapshot;
+import org.gwozdz1uu.heyobackend.service.PresenceChangedEvent;
+import org.gwozdz1uu.heyobackend.service.PresenceService;
+import org.gwozdz1uu.heyobackend.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Presence Broadcaster Tests")
+class PresenceBroadcasterTest {
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private PresenceService presenceService;
+
+    @Mock
+    private TaskScheduler taskScheduler;
+
+    @Mock
+    private SimpUserRegistry simpUserRegistry;
+
+    @Mock
+    private ChatUserDirectory chatUserDirectory;
+
+    @Mock
+    private ScheduledFuture<Object> scheduledOffline;
+
+    private final List<Message<?>> sent = new ArrayList<>();
+
+    private PresenceBroadcaster broadcaster;
+
+    @BeforeEach
+    void setUp() {
+        // Real template over a capturing channel, so destinations and payload bytes can be inspected
+        SimpMessagingTemplate messagingTemplate = new SimpMessagingTemplate((message, timeout) -> sent.add(message));
+        messagingTemplate.setMessageConverter(new MappingJackson2MessageConverter());
+        broadcaster = new PresenceBroadcaster(new UserDestinationSender(messagingTemplate), userService,
+                presenceService, taskScheduler, simpUserRegistry, chatUserDirectory);
+    }
+
+    @Test
+    @DisplayName("Should encode status once and send it only to friends connected to any node")
+    void testOnline_SendsSharedPayloadToConnectedFriends() throws Exception {
+        // Arrange
+        when(userService.getFriendSnapshots(1L)).thenReturn(List.of(
+                new UserSnapshot(2L, "bob", null),
+                new UserSnapshot(3L, "carol", null),
+                new UserSnapshot(4L, "dave", null)));
+        when(simpUserRegistry.getUser("bob")).thenReturn(mock(SimpUser.class));
+        when(simpUserRegistry.getUser("carol")).thenReturn(null);
+        when(simpUserRegistry.getUser("dave")).thenReturn(mock(SimpUser.class));
+
+        // Act
+        broadcaster.onPresenceChanged(new PresenceChangedEvent(1L, "alice", true));
+
+        // Assert
+        assertEquals(2, sent.size());
+        assertEquals("/user/bob/queue/status", SimpMessageHeaderAccessor.getDestination(sent.get(0).getHeaders()));
+        assertEquals("/user/dave/queue/status", SimpMessageHeaderAccessor.getDestination(sent.get(1).getHeaders()));
+        assertSame(sent.get(0).getPayload(), sent.get(1).getPayload());
+
+        Map<?, ?> status = new ObjectMapper().readValue((byte[]) sent.get(0).getPayload(), Map.class);
+        assertEquals(1, status.get("userId"));
+        assertEquals(true, status.get("online"));
+        // Friends become addressable for typing without a lookup
+        verify(chatUserDirectory).remember(new UserSnapshot(3L, "carol", null));
+    }
+
+    @Test
+    @DisplayName("Should announce offline only after the grace period")
+    void testOffline_AnnouncedAfterGrace() {
+        // Arrange
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+        doReturn(scheduledOffline).when(taskScheduler).schedule(task.capture(), any(Instant.class));
+        when(userService.getFriendSnapshots(1L)).thenReturn(List.of(new UserSnapshot(2L, "bob", null)));
+        when(simpUserRegistry.getUser("bob")).thenReturn(mock(SimpUser.class));
+
+        // Act
+        broadcaster.onPresenceChanged(new PresenceChangedEvent(1L, "alice", false));
+        assertTrue(sent.isEmpty());
+        task.getValue().run();
+
+        // Assert
+        assertEquals(1, sent.size());
+    }
+
+    @Test
+    @DisplayName("Should swallow a disconnect followed by a quick reconnect")
+    void testReconnectWithinGrace_SendsNothing() {
+        // Arrange
+        doReturn(scheduledOffline).when(taskScheduler).schedule(any(Runnable.class), any(Instant.class));
+        when(scheduledOffline.cancel(false)).thenReturn(true);
+
+        // Act
+        broadcaster.onPresenceChanged(new PresenceChangedEvent(1L, "alice", false));
+        broadcaster.onPresenceChanged(new PresenceChangedEvent(1L, "alice", true));
+
+        // Assert
+        assertTrue(sent.isEmpty());
+        verifyNoInteractions(userService);
+    }
+
+    @Test
+    @DisplayName("Should not announce offline while the user has a session on any node")
+    void testAnnounceOffline_SkipsWhenOnlineAgain() {
+        // Arrange
+        when(presenceService.isOnlineOnAnyNode(1L, "alice")).thenReturn(true);
+
+        // Act
+        broadcaster.announceOffline(1L, "alice");
+
+        // Assert
+        assertTrue(sent.isEmpty());
+    }
+}
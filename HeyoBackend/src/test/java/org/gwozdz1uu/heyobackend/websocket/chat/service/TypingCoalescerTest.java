@@ -0,0 +1,82 @@
+package org.gwozdz1uu.heyobackend.websocket.chat.service;
+
+import org.gwozdz1uu.heyobackend.dto.UserSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Typing Coalescer Tests")
+class TypingCoalescerTest {
+
+    @Mock
+    private UserDestinationSender userDestinationSender;
+
+    @InjectMocks
+    private TypingCoalescer typingCoalescer;
+
+    private UserSnapshot sender;
+    private UserSnapshot receiver;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(typingCoalescer, "windowMs", 50L);
+        sender = new UserSnapshot(1L, "sender", null);
+        receiver = new UserSnapshot(2L, "receiver", null);
+    }
+
+    @Test
+    @DisplayName("Should forward only the first typing frame within a window")
+    void testTyping_CoalescesBurst() {
+        // Act
+        for (int i = 0; i < 10; i++) {
+            typingCoalescer.typing(sender, receiver);
+        }
+
+        // Assert
+        verify(userDestinationSender, times(1)).send(
+                "receiver", "/queue/typing", Map.of("userId", 1L, "username", "sender", "typing", true), "typing.1");
+    }
+
+    @Test
+    @DisplayName("Should send one stopped event after a quiet window")
+    void testSweep_SendsStoppedOnce() throws InterruptedException {
+        // Arrange
+        typingCoalescer.typing(sender, receiver);
+        Thread.sleep(60);
+
+        // Act
+        typingCoalescer.sweep();
+        typingCoalescer.sweep();
+
+        // Assert
+        verify(userDestinationSender, times(1)).send(
+                "receiver", "/queue/typing", Map.of("userId", 1L, "username", "sender", "typing", false), "typing.1");
+    }
+
+    @Test
+    @DisplayName("Should keep pairs independent")
+    void testTyping_SeparatePairs() {
+        // Arrange
+        UserSnapshot other = new UserSnapshot(3L, "other", null);
+
+        // Act
+        typingCoalescer.typing(sender, receiver);
+        typingCoalescer.typing(sender, other);
+        typingCoalescer.sweep();
+
+        // Assert - both got typing, nobody got stopped yet
+        verify(userDestinationSender).send(eq("receiver"), eq("/queue/typing"), any(Object.class), eq("typing.1"));
+        verify(userDestinationSender).send(eq("other"), eq("/queue/typing"), any(Object.class), eq("typing.1"));
+        verifyNoMoreInteractions(userDestinationSender);
+    }
+}
@@ -0,0 +1,70 @@
+package org.gwozdz1uu.heyobackend.websocket.chat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("User Destination Sender Tests")
+class UserDestinationSenderTest {
+
+    private final List<Message<?>> sent = new ArrayList<>();
+
+    private UserDestinationSender sender;
+
+    @BeforeEach
+    void setUp() {
+        SimpMessagingTemplate messagingTemplate = new SimpMessagingTemplate((message, timeout) -> sent.add(message));
+        messagingTemplate.setMessageConverter(new MappingJackson2MessageConverter());
+        sender = new UserDestinationSender(messagingTemplate);
+    }
+
+    @Test
+    @DisplayName("Should encode once and address every user destination")
+    void testSend_SharesEncodedPayload() throws Exception {
+        // Act
+        sender.send(List.of("alice", "bob"), "/queue/messages", Map.of("content", "hi"));
+
+        // Assert
+        assertEquals(2, sent.size());
+        assertEquals("/user/alice/queue/messages", SimpMessageHeaderAccessor.getDestination(sent.get(0).getHeaders()));
+        assertEquals("/user/bob/queue/messages", SimpMessageHeaderAccessor.getDestination(sent.get(1).getHeaders()));
+        assertSame(sent.get(0).getPayload(), sent.get(1).getPayload());
+        assertEquals("hi", new ObjectMapper().readValue((byte[]) sent.get(1).getPayload(), Map.class).get("content"));
+    }
+
+    @Test
+    @DisplayName("Should encode usernames like convertAndSendToUser")
+    void testSend_EncodesSlashInUsername() {
+        // Act
+        sender.send("a/b", "/queue/typing", Map.of("typing", true));
+
+        // Assert
+        assertEquals("/user/a%2Fb/queue/typing", SimpMessageHeaderAccessor.getDestination(sent.get(0).getHeaders()));
+    }
+
+    @Test
+    @DisplayName("Should keep the shared message untouched by per-destination headers")
+    void testEncode_ImmutableMessage() {
+        // Arrange
+        Message<?> encoded = sender.encode(Map.of("online", true));
+
+        // Act
+        sender.send("alice", "/queue/status", encoded);
+        sender.send("bob", "/queue/status", encoded);
+
+        // Assert
+        assertNull(SimpMessageHeaderAccessor.getDestination(encoded.getHeaders()));
+        assertEquals("/user/bob/queue/status", SimpMessageHeaderAccessor.getDestination(sent.get(1).getHeaders()));
+    }
+}
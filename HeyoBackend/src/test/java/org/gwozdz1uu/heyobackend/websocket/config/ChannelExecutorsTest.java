@@ -0,0 +1,130 @@
+package org.gwozdz1uu.heyobackend.websocket.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Channel Executors Tests")
+class ChannelExecutorsTest {
+
+    private ChannelExecutors channelExecutors;
+
+    @BeforeEach
+    void setUp() {
+        channelExecutors = new ChannelExecutors();
+        ReflectionTestUtils.setField(channelExecutors, "mode", "platform");
+        ReflectionTestUtils.setField(channelExecutors, "keepAliveSeconds", 60);
+        ReflectionTestUtils.setField(channelExecutors, "inboundCorePoolSize", 1);
+        ReflectionTestUtils.setField(channelExecutors, "inboundMaxPoolSize", 2);
+        ReflectionTestUtils.setField(channelExecutors, "inboundQueueCapacity", 10);
+        ReflectionTestUtils.setField(channelExecutors, "outboundCorePoolSize", 1);
+        ReflectionTestUtils.setField(channelExecutors, "outboundMaxPoolSize", 1);
+        ReflectionTestUtils.setField(channelExecutors, "outboundQueueCapacity", 1);
+        ReflectionTestUtils.setField(channelExecutors, "brokerCorePoolSize", 0);
+    }
+
+    @Test
+    @DisplayName("Should size the pool from configuration and report queue depth and task timings")
+    @SuppressWarnings("unchecked")
+    void testInbound_ReportsStats() throws Exception {
+        // Arrange
+        ThreadPoolTaskExecutor executor = channelExecutors.inbound();
+        executor.initialize();
+        CountDownLatch release = new CountDownLatch(1);
+
+        try {
+            // Act - one task blocks the only core thread, the second waits in the queue
+            executor.execute(() -> awaitQuietly(release));
+            executor.execute(() -> { });
+
+            // Assert
+            assertEquals(1, executor.getCorePoolSize());
+            assertEquals(2, executor.getMaxPoolSize());
+            await().atMost(Duration.ofSeconds(5)).until(() -> executor.getQueueSize() == 1);
+            Map<String, Object> inbound = (Map<String, Object>) channelExecutors.getStats().get("inbound");
+            assertEquals(1, inbound.get("queueSize"));
+            assertEquals(1, inbound.get("activeCount"));
+
+            release.countDown();
+            await().atMost(Duration.ofSeconds(5)).until(() ->
+                    ((Map<String, Object>) channelExecutors.getStats().get("inbound")).get("tasks").equals(2L));
+            inbound = (Map<String, Object>) channelExecutors.getStats().get("inbound");
+            assertTrue((double) inbound.get("maxQueueWaitMs") > 0);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Should run outbound frames on the caller instead of dropping them when the pool is saturated")
+    @SuppressWarnings("unchecked")
+    void testOutbound_SaturatedRunsOnCaller() throws Exception {
+        // Arrange
+        ThreadPoolTaskExecutor executor = channelExecutors.outbound();
+        executor.initialize();
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger delivered = new AtomicInteger();
+        AtomicInteger deliveredOnCaller = new AtomicInteger();
+        Thread caller = Thread.currentThread();
+
+        try {
+            // Act - the only thread blocks, one frame fills the queue, the burst overflows both
+            executor.execute(() -> awaitQuietly(release));
+            await().atMost(Duration.ofSeconds(5)).until(() -> executor.getActiveCount() == 1);
+            for (int i = 0; i < 11; i++) {
+                executor.execute(() -> {
+                    delivered.incrementAndGet();
+                    if (Thread.currentThread() == caller) {
+                        deliveredOnCaller.incrementAndGet();
+                    }
+                });
+            }
+            release.countDown();
+
+            // Assert - every frame delivered, the overflow on the submitting thread
+            await().atMost(Duration.ofSeconds(5)).until(() -> delivered.get() == 11);
+            assertEquals(10, deliveredOnCaller.get());
+            Map<String, Object> outbound = (Map<String, Object>) channelExecutors.getStats().get("outbound");
+            assertEquals(10L, outbound.get("ranOnCaller"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Should keep the broker channel synchronous unless a pool size is set")
+    void testBroker_SynchronousByDefault() {
+        // Act & Assert
+        assertNull(channelExecutors.broker());
+        assertFalse(channelExecutors.getStats().containsKey("broker"));
+    }
+
+    @Test
+    @DisplayName("Should reject an unknown executor mode")
+    void testUnknownMode_Fails() {
+        // Arrange
+        ReflectionTestUtils.setField(channelExecutors, "mode", "fibers");
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> channelExecutors.inbound());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package org.gwozdz1uu.heyobackend.websocket.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@DisplayName("Priority Send Session Decorator Tests")
+class PrioritySendSessionDecoratorTest {
+
+    private ChannelExecutors channelExecutors;
+    private OutboundBackpressure backpressure;
+    private WebSocketSession session;
+    private final List<String> written = new CopyOnWriteArrayList<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        channelExecutors = new ChannelExecutors();
+        ReflectionTestUtils.setField(channelExecutors, "mode", "platform");
+        ReflectionTestUtils.setField(channelExecutors, "keepAliveSeconds", 60);
+        ReflectionTestUtils.setField(channelExecutors, "writerCorePoolSize", 2);
+        ReflectionTestUtils.setField(channelExecutors, "writerMaxPoolSize", 2);
+        ReflectionTestUtils.setField(channelExecutors, "writerQueueCapacity", 10);
+
+        backpressure = new OutboundBackpressure(channelExecutors);
+        ReflectionTestUtils.setField(backpressure, "bufferSizeLimit", 1000);
+        ReflectionTestUtils.setField(backpressure, "sendTimeLimitMs", 10_000L);
+        ReflectionTestUtils.setField(backpressure, "watchdogIntervalMs", 20L);
+        ReflectionTestUtils.setField(backpressure, "flushRetryDelayMs", 20L);
+        backpressure.start();
+
+        // The first write blocks until released, like a client on a stalled link
+        session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn("s1");
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            written.add(((TextMessage) invocation.getArgument(0)).getPayload());
+            return null;
+        }).when(session).sendMessage(any());
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        backpressure.stop();
+    }
+
+    @Test
+    @DisplayName("Should keep only the latest queued frame per coalesce key")
+    void testSendMessage_CoalescesStateUpdates() throws Exception {
+        // Arrange
+        PrioritySendSessionDecorator decorated = new PrioritySendSessionDecorator(session, backpressure);
+        decorated.sendMessage(frame("/user/queue/messages", null, "m1"));
+        await().atMost(Duration.ofSeconds(5)).until(() -> decorated.getBufferSize() == 0);
+
+        // Act - queued behind the blocked write
+        decorated.sendMessage(frame("/user/queue/typing", "typing.2", "t1"));
+        decorated.sendMessage(frame("/user/queue/messages", null, "m2"));
+        decorated.sendMessage(frame("/user/queue/typing", "typing.2", "t2"));
+        decorated.sendMessage(frame("/user/queue/typing", "typing.3", "t3"));
+        release.countDown();
+
+        // Assert - t2 replaced t1 in place
+        await().atMost(Duration.ofSeconds(5)).until(() -> written.size() == 4);
+        assertEquals(List.of("m1", "t2", "m2", "t3"), written.stream().map(PrioritySendSessionDecoratorTest::body).toList());
+        assertEquals(1L, backpressure.getStats().get("coalesced"));
+    }
+
+    @Test
+    @DisplayName("Should shed droppable frames over the buffer limit but deliver every chat message")
+    void testSendMessage_ShedsDroppableFirst() throws Exception {
+        // Arrange
+        PrioritySendSessionDecorator decorated = new PrioritySendSessionDecorator(session, backpressure);
+        decorated.sendMessage(frame("/user/queue/messages", null, "m0"));
+        await().atMost(Duration.ofSeconds(5)).until(() -> decorated.getBufferSize() == 0);
+
+        // Act - ~200 byte frames against a 1000 byte limit
+        for (int i = 0; i < 5; i++) {
+            decorated.sendMessage(frame("/user/queue/status", "status." + i, "s" + i + "x".repeat(150)));
+        }
+        for (int i = 1; i <= 4; i++) {
+            decorated.sendMessage(frame("/user/queue/messages", null, "m" + i + "x".repeat(150)));
+        }
+        release.countDown();
+
+        // Assert
+        await().atMost(Duration.ofSeconds(5)).until(() -> decorated.getBufferSize() == 0 && written.size() >= 5);
+        List<String> chat = written.stream().map(PrioritySendSessionDecoratorTest::body)
+                .filter(body -> body.startsWith("m")).map(body -> body.substring(0, 2)).toList();
+        assertEquals(List.of("m0", "m1", "m2", "m3", "m4"), chat);
+        assertTrue((long) backpressure.getStats().get("dropped") > 0);
+        verify(session, never()).close(any());
+    }
+
+    @Test
+    @DisplayName("Should disconnect a session whose write exceeds the send time limit without another send")
+    void testWatchdog_ClosesSlowSession() throws Exception {
+        // Arrange
+        ReflectionTestUtils.setField(backpressure, "sendTimeLimitMs", 50L);
+        PrioritySendSessionDecorator decorated = new PrioritySendSessionDecorator(session, backpressure);
+        backpressure.track(decorated);
+
+        // Act - the only write stalls
+        decorated.sendMessage(frame("/user/queue/messages", null, "m1"));
+
+        // Assert
+        verify(session, timeout(5000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertEquals(1L, backpressure.getStats().get("disconnectedSendTime"));
+        assertEquals(0, decorated.getBufferSize());
+    }
+
+    @Test
+    @DisplayName("Should retry a flush rejected by a full writer pool")
+    void testSendMessage_RetriesRejectedFlush() throws Exception {
+        // Arrange - one writer thread and no queue, held by a stalled session
+        backpressure.stop();
+        ReflectionTestUtils.setField(channelExecutors, "writerCorePoolSize", 1);
+        ReflectionTestUtils.setField(channelExecutors, "writerMaxPoolSize", 1);
+        ReflectionTestUtils.setField(channelExecutors, "writerQueueCapacity", 0);
+        backpressure.start();
+        PrioritySendSessionDecorator stalled = new PrioritySendSessionDecorator(session, backpressure);
+        stalled.sendMessage(frame("/user/queue/messages", null, "m1"));
+        await().atMost(Duration.ofSeconds(5)).until(() -> stalled.getBufferSize() == 0);
+
+        WebSocketSession other = mock(WebSocketSession.class);
+        when(other.getId()).thenReturn("s2");
+        PrioritySendSessionDecorator decorated = new PrioritySendSessionDecorator(other, backpressure);
+
+        // Act - rejected while the writer is busy, then the writer frees up
+        decorated.sendMessage(frame("/user/queue/messages", null, "m2"));
+        Thread.sleep(100);
+        release.countDown();
+
+        // Assert - delivered with no further send
+        verify(other, timeout(5000)).sendMessage(any());
+        assertEquals(0, decorated.getBufferSize());
+    }
+
+    @Test
+    @DisplayName("Should read the coalesce key from the STOMP headers only")
+    void testCoalesceKey_HeadersOnly() {
+        // Act & Assert
+        assertEquals("status.7", PrioritySendSessionDecorator.coalesceKey(frame("/user/queue/status", "status.7", "{}")));
+        assertNull(PrioritySendSessionDecorator.coalesceKey(frame("/user/queue/messages", null, "\ncoalesce-key:x\n")));
+        assertNull(PrioritySendSessionDecorator.coalesceKey(new TextMessage("\n")));
+    }
+
+    private static TextMessage frame(String destination, String coalesceKey, String body) {
+        return new TextMessage("MESSAGE\ndestination:" + destination + "\n"
+                + (coalesceKey != null ? "coalesce-key:" + coalesceKey + "\n" : "")
+                + "content-type:application/json\n\n" + body + "\u0000");
+    }
+
+    private static String body(String frame) {
+        return frame.substring(frame.indexOf("\n\n") + 2, frame.length() - 1);
+    }
+}
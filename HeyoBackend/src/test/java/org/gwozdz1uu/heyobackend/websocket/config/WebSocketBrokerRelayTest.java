@@ -0,0 +1,178 @@
+package org.gwozdz1uu.heyobackend.websocket.config;
+
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.ServletWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.websocket.servlet.WebSocketMessagingAutoConfiguration;
+import org.springframework.boot.autoconfigure.websocket.servlet.WebSocketServletAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two nodes in relay mode against an embedded Artemis STOMP broker, as in a multi-node deployment
+ */
+@DisplayName("WebSocket Broker Relay Tests")
+class WebSocketBrokerRelayTest {
+
+    private static EmbeddedActiveMQ broker;
+    private static ConfigurableApplicationContext nodeA;
+    private static ConfigurableApplicationContext nodeB;
+
+    @BeforeAll
+    static void startCluster() throws Exception {
+        int stompPort = freePort();
+        broker = new EmbeddedActiveMQ();
+        broker.setConfiguration(new ConfigurationImpl()
+                .setPersistenceEnabled(false)
+                .setSecurityEnabled(false)
+                .addAcceptorConfiguration("stomp",
+                        "tcp://localhost:" + stompPort + "?protocols=STOMP;anycastPrefix=/queue/;multicastPrefix=/topic/"));
+        broker.start();
+
+        nodeA = startNode(stompPort);
+        nodeB = startNode(stompPort);
+    }
+
+    @AfterAll
+    static void stopCluster() throws Exception {
+        if (nodeA != null) {
+            nodeA.close();
+        }
+        if (nodeB != null) {
+            nodeB.close();
+        }
+        if (broker != null) {
+            broker.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("Should deliver a user message sent on one node to a session on another node")
+    void testSendToUser_ReachesOtherNode() throws Exception {
+        // Arrange
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        StompSession session = connect(nodeA, "alice");
+        session.subscribe("/user/queue/messages", new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return String.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                received.add((String) payload);
+            }
+        });
+        SimpUserRegistry registryB = nodeB.getBean(SimpUserRegistry.class);
+        await().atMost(Duration.ofSeconds(30))
+                .until(() -> registryB.getUser("alice") != null && registryB.getUser("alice").hasSessions());
+
+        // Act
+        nodeB.getBean(SimpMessagingTemplate.class).convertAndSendToUser("alice", "/queue/messages", "hello from B");
+
+        // Assert
+        assertEquals("hello from B", received.poll(10, TimeUnit.SECONDS));
+        session.disconnect();
+    }
+
+    private static StompSession connect(ConfigurableApplicationContext node, String username) throws Exception {
+        WebSocketStompClient client = new WebSocketStompClient(
+                new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient()))));
+        client.setMessageConverter(new StringMessageConverter());
+        StompHeaders connectHeaders = new StompHeaders();
+        connectHeaders.setLogin(username);
+        int port = ((WebServerApplicationContext) node).getWebServer().getPort();
+        return client.connectAsync("http://localhost:" + port + "/ws", new WebSocketHttpHeaders(),
+                connectHeaders, new StompSessionHandlerAdapter() {
+                }).get(10, TimeUnit.SECONDS);
+    }
+
+    private static ConfigurableApplicationContext startNode(int stompPort) {
+        ConfigurableApplicationContext node = new SpringApplicationBuilder(RelayNode.class)
+                .web(WebApplicationType.SERVLET)
+                .run("--server.port=0",
+                        "--app.websocket.broker.mode=relay",
+                        "--app.websocket.broker.relay-port=" + stompPort);
+        AbstractBrokerMessageHandler relay = node.getBean("stompBrokerRelayMessageHandler", AbstractBrokerMessageHandler.class);
+        await().atMost(Duration.ofSeconds(10)).until(relay::isBrokerAvailable);
+        return node;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Just the web server and the STOMP configuration; CONNECT trusts the login header
+     */
+    @SpringBootConfiguration
+    @ImportAutoConfiguration({
+            ServletWebServerFactoryAutoConfiguration.class,
+            DispatcherServletAutoConfiguration.class,
+            JacksonAutoConfiguration.class,
+            WebSocketServletAutoConfiguration.class,
+            WebSocketMessagingAutoConfiguration.class
+    })
+    @Import({WebSocketConfig.class, ChannelExecutors.class, OutboundBackpressure.class, CborPayloads.class})
+    static class RelayNode {
+
+        @Bean
+        WebSocketAuthInterceptor webSocketAuthInterceptor() {
+            return new WebSocketAuthInterceptor(null, null, null) {
+                @Override
+                public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                    StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+                    if (accessor != null && StompCommand.CONNECT.equals(accessor.getCommand())) {
+                        accessor.setUser(new UsernamePasswordAuthenticationToken(accessor.getLogin(), null, List.of()));
+                    }
+                    return message;
+                }
+            };
+        }
+    }
+}
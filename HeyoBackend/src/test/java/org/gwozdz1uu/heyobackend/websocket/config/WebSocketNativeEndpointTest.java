@@ -0,0 +1,154 @@
+package org.gwozdz1uu.heyobackend.websocket.config;
+
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.WebSocketClient;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The plain WebSocket endpoint next to the SockJS one, on a single node with the simple broker
+ */
+@DisplayName("WebSocket Native Endpoint Tests")
+class WebSocketNativeEndpointTest {
+
+    private static ConfigurableApplicationContext node;
+    private static int port;
+
+    @BeforeAll
+    static void startNode() {
+        node = new SpringApplicationBuilder(WebSocketBrokerRelayTest.RelayNode.class)
+                .web(WebApplicationType.SERVLET)
+                .run("--server.port=0");
+        port = ((WebServerApplicationContext) node).getWebServer().getPort();
+    }
+
+    @AfterAll
+    static void stopNode() {
+        if (node != null) {
+            node.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Should negotiate permessage-deflate on the native endpoint")
+    void testHandshake_NegotiatesDeflate() throws Exception {
+        // Arrange
+        WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
+        headers.setSecWebSocketExtensions(List.of(new WebSocketExtension("permessage-deflate")));
+
+        // Act
+        WebSocketSession session = new StandardWebSocketClient()
+                .execute(new AbstractWebSocketHandler() { }, headers, URI.create("ws://localhost:" + port + "/ws-native"))
+                .get(10, TimeUnit.SECONDS);
+
+        // Assert
+        assertTrue(session.getExtensions().stream().anyMatch(e -> e.getName().equals("permessage-deflate")),
+                "negotiated: " + session.getExtensions());
+        session.close();
+    }
+
+    @Test
+    @DisplayName("Should send CBOR bodies to a native session that accepts them")
+    void testSendToUser_CborOnNativeEndpoint() throws Exception {
+        // Arrange
+        BlockingQueue<Object[]> received = new LinkedBlockingQueue<>();
+        StompSession session = connect(new StandardWebSocketClient(), "ws://localhost:" + port + "/ws-native", "alice", received);
+
+        // Act
+        node.getBean(SimpMessagingTemplate.class).convertAndSendToUser("alice", "/queue/messages", Map.of("content", "hi"));
+
+        // Assert
+        Object[] frame = received.poll(10, TimeUnit.SECONDS);
+        assertNotNull(frame);
+        assertEquals("application/cbor", ((StompHeaders) frame[0]).getContentType().toString());
+        assertEquals(Map.of("content", "hi"), new CBORMapper().readValue((byte[]) frame[1], Map.class));
+        session.disconnect();
+    }
+
+    @Test
+    @DisplayName("Should keep JSON bodies for a SockJS session even if it asks for CBOR")
+    void testSendToUser_JsonOverSockJs() throws Exception {
+        // Arrange
+        BlockingQueue<Object[]> received = new LinkedBlockingQueue<>();
+        SockJsClient sockJs = new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient())));
+        StompSession session = connect(sockJs, "http://localhost:" + port + "/ws", "bob", received);
+
+        // Act
+        node.getBean(SimpMessagingTemplate.class).convertAndSendToUser("bob", "/queue/messages", Map.of("content", "hi"));
+
+        // Assert
+        Object[] frame = received.poll(10, TimeUnit.SECONDS);
+        assertNotNull(frame);
+        assertEquals("application/json", ((StompHeaders) frame[0]).getContentType().toString());
+        assertEquals("{\"content\":\"hi\"}", new String((byte[]) frame[1], StandardCharsets.UTF_8));
+        session.disconnect();
+    }
+
+    private static StompSession connect(WebSocketClient transport, String url, String username,
+                                        BlockingQueue<Object[]> received) throws Exception {
+        WebSocketStompClient client = new WebSocketStompClient(transport);
+        // Raw bodies whatever their content-type
+        client.setMessageConverter(new ByteArrayMessageConverter() {
+            @Override
+            protected boolean supportsMimeType(MessageHeaders headers) {
+                return true;
+            }
+        });
+        StompHeaders connectHeaders = new StompHeaders();
+        connectHeaders.setLogin(username);
+        connectHeaders.add(CborPayloads.ACCEPT_CONTENT_TYPE_HEADER, "application/cbor");
+        StompSession session = client.connectAsync(url, new WebSocketHttpHeaders(), connectHeaders,
+                new StompSessionHandlerAdapter() {
+                }).get(10, TimeUnit.SECONDS);
+        session.subscribe("/user/queue/messages", new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return byte[].class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                received.add(new Object[]{headers, payload});
+            }
+        });
+        SimpUserRegistry registry = node.getBean(SimpUserRegistry.class);
+        await().atMost(Duration.ofSeconds(10)).until(() -> registry.getUser(username) != null
+                && registry.getUser(username).getSessions().stream().anyMatch(s -> !s.getSubscriptions().isEmpty()));
+        return session;
+    }
+}